@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the base64 strings the library deals with: the public key (decoded for every
+ * verified purchase) and the purchase signature.
+ * <b>Note</b>: {@link android.util.Base64} can't be benchmarked here as it needs the Android
+ * runtime ({@code System.arraycopy(byte[], int, byte[], int, int)}), it is compared with
+ * {@link Base64} in the unit tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Base64Benchmark {
+
+    private String mPublicKey;
+    private String mSignature;
+    private byte[] mSignatureBytes;
+    private byte[] mDecoded;
+
+    @Setup
+    public void setUp() {
+        final KeyPair keyPair = BenchmarkData.newKeyPair();
+        mPublicKey = Base64.encode(keyPair.getPublic().getEncoded());
+        mSignature = BenchmarkData.sign(keyPair.getPrivate(), BenchmarkData.newPurchasesJson(1, 1).get(0));
+        mSignatureBytes = mSignature.getBytes();
+        mDecoded = new byte[Base64.getMaxDecodedLength(mSignatureBytes.length)];
+    }
+
+    @Benchmark
+    public byte[] decodePublicKey() throws Base64DecoderException {
+        return Base64.decode(mPublicKey);
+    }
+
+    @Benchmark
+    public byte[] decodeSignature() throws Base64DecoderException {
+        return Base64.decode(mSignature);
+    }
+
+    @Benchmark
+    public int decodeSignatureToBuffer() throws Base64DecoderException {
+        return Base64.decodeTo(mSignatureBytes, 0, mSignatureBytes.length, mDecoded);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Generators of the synthetic data used in the benchmarks. All the data is derived from
+ * {@link #SEED}, i.e. every run of a benchmark gets exactly the same input.
+ */
+final class BenchmarkData {
+
+    static final long SEED = 20161018L;
+
+    private static final String PACKAGE_NAME = "org.solovyev.android.checkout.benchmarks";
+
+    private BenchmarkData() {
+        throw new AssertionError();
+    }
+
+    @Nonnull
+    static Random newRandom() {
+        return new Random(SEED);
+    }
+
+    /**
+     * Generates a purchase history: purchases of <var>skus</var> different SKUs made one after
+     * another. Most of the purchases are {@link Purchase.State#PURCHASED}, the rest are cancelled,
+     * refunded or expired, i.e. the history contains purchases which neutralize each other.
+     *
+     * @param count number of purchases
+     * @param skus  number of different SKUs
+     * @return JSONs of the purchases (the same as returned from the Billing service), earliest
+     * first
+     */
+    @Nonnull
+    static List<String> newPurchasesJson(int count, int skus) {
+        final Random random = newRandom();
+        final List<String> list = new ArrayList<>(count);
+        long time = 1400000000000L;
+        for (int i = 0; i < count; i++) {
+            time += 1 + random.nextInt(1000000);
+            final int state = random.nextInt(10);
+            list.add(newPurchaseJson(i, "sku_" + random.nextInt(skus), time, state < 7 ? 0 : state - 6));
+        }
+        return list;
+    }
+
+    @Nonnull
+    static String newPurchaseJson(int id, @Nonnull String sku, long time, int state) {
+        try {
+            final JSONObject json = new JSONObject();
+            json.put("orderId", "12999763169054705758." + (1371000000000000L + id));
+            json.put("packageName", PACKAGE_NAME);
+            json.put("productId", sku);
+            json.put("purchaseTime", time);
+            json.put("purchaseState", state);
+            json.put("developerPayload", "payload_" + id);
+            json.put("purchaseToken", "opaque-token-up-to-1000-characters-" + id + "-" + Long.toHexString(time));
+            return json.toString();
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Nonnull
+    static List<Purchase> newPurchases(int count, int skus) {
+        final List<String> jsons = newPurchasesJson(count, skus);
+        final List<Purchase> purchases = new ArrayList<>(count);
+        try {
+            for (String json : jsons) {
+                purchases.add(Purchase.fromJson(json, ""));
+            }
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+        return purchases;
+    }
+
+    /**
+     * @param count number of SKUs
+     * @return JSONs of the SKU details (the same as returned from the Billing service)
+     */
+    @Nonnull
+    static List<String> newSkusJson(int count) {
+        final Random random = newRandom();
+        final List<String> list = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                final long micros = (1 + random.nextInt(100)) * 990000L;
+                final JSONObject json = new JSONObject();
+                json.put("productId", "sku_" + i);
+                json.put("type", ProductTypes.IN_APP);
+                json.put("price", "$" + micros / 1000000 + "." + micros / 10000 % 100);
+                json.put("price_amount_micros", micros);
+                json.put("price_currency_code", "USD");
+                json.put("title", "Product #" + i + " (" + PACKAGE_NAME + ")");
+                json.put("description", "Synthetic product number " + i + " used in the benchmarks");
+                list.add(json.toString());
+            }
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+        return list;
+    }
+
+    /**
+     * @return RSA key pair, the same for every call
+     */
+    @Nonnull
+    static KeyPair newKeyPair() {
+        try {
+            final SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+            random.setSeed(SEED);
+            final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048, random);
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return base64-encoded SHA1withRSA signature of <var>data</var>, the same as Google Play
+     * provides for the purchases
+     */
+    @Nonnull
+    static String sign(@Nonnull PrivateKey key, @Nonnull String data) {
+        try {
+            final Signature signature = Signature.getInstance("SHA1withRSA");
+            signature.initSign(key);
+            signature.update(data.getBytes());
+            return Base64.encode(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
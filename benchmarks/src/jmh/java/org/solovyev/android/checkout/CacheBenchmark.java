@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations of the default cache and of the thread-safe wrapper {@link Billing} puts around it.
+ * The cache contains SKU details of the whole catalog and the purchases of each product.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CacheBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int catalogSize;
+
+    private MapCache mMapCache;
+    private ConcurrentCache mConcurrentCache;
+    private Cache.Key[] mKeys;
+    private Cache.Entry mEntry;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Billing.setLogger(null);
+        mEntry = new Cache.Entry(new Object(), Long.MAX_VALUE);
+        mKeys = new Cache.Key[catalogSize];
+        mMapCache = new MapCache();
+        mConcurrentCache = new ConcurrentCache(new MapCache());
+        for (int i = 0; i < catalogSize; i++) {
+            mKeys[i] = RequestType.GET_SKU_DETAILS.getCacheKey(ProductTypes.IN_APP + "_sku_" + i);
+            mMapCache.put(mKeys[i], mEntry);
+            mConcurrentCache.put(mKeys[i], mEntry);
+        }
+        for (String product : ProductTypes.ALL) {
+            mMapCache.put(RequestType.GET_PURCHASES.getCacheKey(product), mEntry);
+            mConcurrentCache.put(RequestType.GET_PURCHASES.getCacheKey(product), mEntry);
+        }
+        // shuffle the keys, so that the lookups don't follow the insertion order
+        final Random random = BenchmarkData.newRandom();
+        for (int i = mKeys.length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final Cache.Key key = mKeys[i];
+            mKeys[i] = mKeys[j];
+            mKeys[j] = key;
+        }
+    }
+
+    @Benchmark
+    public Cache.Entry mapCacheGet() {
+        return mMapCache.get(nextKey());
+    }
+
+    @Benchmark
+    public Cache.Entry concurrentCacheGet() {
+        return mConcurrentCache.get(nextKey());
+    }
+
+    @Benchmark
+    public Cache.Entry concurrentCacheMiss() {
+        return mConcurrentCache.get(RequestType.GET_SKU_DETAILS.getCacheKey("missing"));
+    }
+
+    @Benchmark
+    public void concurrentCachePut() {
+        mConcurrentCache.put(nextKey(), mEntry);
+    }
+
+    /**
+     * Purchases are invalidated after every purchase or consumption. As entries of all the types
+     * live in the same cache this operation depends on the catalog size
+     */
+    @Benchmark
+    public void concurrentCacheRemoveAll() {
+        mConcurrentCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+        for (String product : ProductTypes.ALL) {
+            mConcurrentCache.put(RequestType.GET_PURCHASES.getCacheKey(product), mEntry);
+        }
+    }
+
+    private Cache.Key nextKey() {
+        final Cache.Key key = mKeys[mIndex];
+        mIndex = (mIndex + 1) % mKeys.length;
+        return key;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * Operations on the queue of the requests waiting for the connection. Each benchmark fills the
+ * queue with {@link #queueSize} requests and empties it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PendingRequestsBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int queueSize;
+
+    private PendingRequests mRequests;
+    private TestRunnable[] mRunnables;
+    private final Object mTag = new Object();
+
+    @Setup
+    public void setUp() {
+        Billing.setLogger(null);
+        mRequests = new PendingRequests();
+        mRunnables = new TestRunnable[queueSize];
+        for (int i = 0; i < queueSize; i++) {
+            mRunnables[i] = new TestRunnable(i, i % 2 == 0 ? mTag : null);
+        }
+    }
+
+    private void fill() {
+        for (TestRunnable runnable : mRunnables) {
+            mRequests.add(runnable);
+        }
+    }
+
+    @Benchmark
+    public void addAndRun() {
+        fill();
+        mRequests.run();
+    }
+
+    @Benchmark
+    public void addAndPop() {
+        fill();
+        while (mRequests.pop() != null) {
+        }
+    }
+
+    @Benchmark
+    public void addAndCancelById() {
+        fill();
+        // the latest requests are the most expensive to find
+        for (int i = queueSize - 1; i >= 0; i--) {
+            mRequests.cancel(i);
+        }
+    }
+
+    @Benchmark
+    public void addAndCancelByTag() {
+        fill();
+        mRequests.cancelAll(mTag);
+        mRequests.cancelAll(null);
+    }
+
+    private static final class TestRunnable implements RequestRunnable {
+        private final int mId;
+        @Nullable
+        private final Object mTag;
+
+        TestRunnable(int id, @Nullable Object tag) {
+            mId = id;
+            mTag = tag;
+        }
+
+        @Override
+        public int getId() {
+            return mId;
+        }
+
+        @Nullable
+        @Override
+        public Object getTag() {
+            return mTag;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Nullable
+        @Override
+        public Request<?> getRequest() {
+            return null;
+        }
+
+        @Override
+        public boolean run() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the purchases' JSONs returned from the Billing service: {@link Purchase#fromJson}
+ * reads only the needed fields (see {@link JsonFields}), {@link #fromJsonObject} is the parsing
+ * via {@link org.json.JSONObject} it falls back to. See the allocation rates in the output of the
+ * GC profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PurchaseBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int historySize;
+
+    private List<String> mJsons;
+
+    @Setup
+    public void setUp() {
+        Billing.setLogger(null);
+        mJsons = BenchmarkData.newPurchasesJson(historySize, 100);
+    }
+
+    @Benchmark
+    public void fromJson(Blackhole blackhole) throws JSONException {
+        for (String json : mJsons) {
+            blackhole.consume(Purchase.fromJson(json, "signature"));
+        }
+    }
+
+    @Benchmark
+    public void fromJsonObject(Blackhole blackhole) throws JSONException {
+        for (String json : mJsons) {
+            blackhole.consume(new Purchase(json, "signature"));
+        }
+    }
+}
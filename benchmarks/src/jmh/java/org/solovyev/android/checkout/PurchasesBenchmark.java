@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing of the purchase history: parsing of the Billing service's response and removal of
+ * the purchases which neutralize each other
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PurchasesBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int historySize;
+
+    @Param({"10", "100"})
+    public int catalogSize;
+
+    private List<String> mDatas;
+    private List<String> mSignatures;
+    private List<Purchase> mPurchases;
+
+    @Setup
+    public void setUp() {
+        Billing.setLogger(null);
+        mDatas = BenchmarkData.newPurchasesJson(historySize, catalogSize);
+        mSignatures = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            mSignatures.add("signature_" + i);
+        }
+        mPurchases = BenchmarkData.newPurchases(historySize, catalogSize);
+    }
+
+    /**
+     * Same as {@link Purchases#getListFromBundle} without {@link android.os.Bundle} which can't be
+     * used outside of Android
+     */
+    @Benchmark
+    public List<Purchase> getList() throws JSONException {
+        return Purchases.getList(mDatas, mSignatures);
+    }
+
+    @Benchmark
+    public List<Purchase> neutralize() {
+        return Purchases.neutralize(mPurchases);
+    }
+}
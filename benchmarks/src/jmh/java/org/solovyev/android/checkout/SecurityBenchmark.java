@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Verification of the purchases' signatures: a single signature check and the verification of
+ * the whole history as done by the default {@link PurchaseVerifier} compared to the
+ * verification which parses the public key for every purchase ({@link Security})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SecurityBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int historySize;
+
+    private String mPublicKey;
+    private PublicKey mKey;
+    private List<Purchase> mPurchases;
+    private PurchaseVerifier mVerifier;
+    private SignatureVerifier mSignatureVerifier;
+    private PurchaseVerifier mSerialVerifier;
+    private PurchaseVerifier mParallelVerifier;
+    private final ResultListener mListener = new ResultListener();
+
+    @Setup
+    public void setUp() throws Exception {
+        Billing.setLogger(null);
+        final KeyPair keyPair = BenchmarkData.newKeyPair();
+        mKey = keyPair.getPublic();
+        mPublicKey = Base64.encode(mKey.getEncoded());
+        final List<String> jsons = BenchmarkData.newPurchasesJson(historySize, 100);
+        mPurchases = new ArrayList<>(historySize);
+        for (String json : jsons) {
+            mPurchases.add(Purchase.fromJson(json, BenchmarkData.sign(keyPair.getPrivate(), json)));
+        }
+        mVerifier = Billing.newPurchaseVerifier(mPublicKey);
+        mSignatureVerifier = new SignatureVerifier(mPublicKey);
+        // memo of one entry is useless for a history of different purchases => every purchase
+        // is verified with RSA
+        mSerialVerifier = new DefaultPurchaseVerifier(new SignatureVerifier(mPublicKey, 1), null, 1);
+        mParallelVerifier = new DefaultPurchaseVerifier(new SignatureVerifier(mPublicKey, 1), null, Runtime.getRuntime().availableProcessors());
+        // make sure the signatures are valid, otherwise the failure path is measured
+        mVerifier.verify(mPurchases, mListener);
+        if (mListener.mVerified != historySize) {
+            throw new AssertionError("Only " + mListener.mVerified + " purchases are verified");
+        }
+    }
+
+    @Benchmark
+    public boolean verify() {
+        final Purchase purchase = mPurchases.get(0);
+        return Security.verify(mKey, purchase.data, purchase.signature);
+    }
+
+    @Benchmark
+    public boolean verifyPurchase() {
+        final Purchase purchase = mPurchases.get(0);
+        return Security.verifyPurchase(mPublicKey, purchase.data, purchase.signature);
+    }
+
+    @Benchmark
+    public boolean verifyWithSignatureVerifier() {
+        final Purchase purchase = mPurchases.get(0);
+        return mSignatureVerifier.verify(purchase.data, purchase.signature);
+    }
+
+    /**
+     * Outcomes are remembered by the default verifier => all but the first invocation measure
+     * the lookups in the memo
+     */
+    @Benchmark
+    public int verifyHistory() {
+        mVerifier.verify(mPurchases, mListener);
+        return mListener.mVerified;
+    }
+
+    @Benchmark
+    public int verifyHistorySerial() {
+        mSerialVerifier.verify(mPurchases, mListener);
+        return mListener.mVerified;
+    }
+
+    @Benchmark
+    public int verifyHistoryParallel() {
+        mParallelVerifier.verify(mPurchases, mListener);
+        return mListener.mVerified;
+    }
+
+    @Benchmark
+    public int verifyHistoryWithSecurity() {
+        int verified = 0;
+        for (Purchase purchase : mPurchases) {
+            if (Security.verifyPurchase(mPublicKey, purchase.data, purchase.signature)) {
+                verified++;
+            }
+        }
+        return verified;
+    }
+
+    private static final class ResultListener implements RequestListener<List<Purchase>> {
+        private int mVerified;
+
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> result) {
+            mVerified = result.size();
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            mVerified = -1;
+        }
+    }
+}
@@ -236,7 +236,9 @@ public final class ActivityCheckout extends Checkout {
     public boolean onActivityResult(int requestCode, int resultCode, Intent data) {
         final PurchaseFlow flow = mFlows.get(requestCode);
         if (flow == null) {
-            Billing.warning("Purchase flow doesn't exist for requestCode=" + requestCode + ". Have you forgotten to create it?");
+            if (Billing.isWarningLoggable()) {
+                Billing.warning("Purchase flow doesn't exist for requestCode=" + requestCode + ". Have you forgotten to create it?");
+            }
             return false;
         }
         flow.onActivityResult(requestCode, resultCode, data);
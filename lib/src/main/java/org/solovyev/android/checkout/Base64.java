@@ -349,64 +349,6 @@ final class Base64 {
     /* ********  D E C O D I N G   M E T H O D S  ******** */
 
 
-    /**
-     * Decodes four bytes from array <var>source</var>
-     * and writes the resulting bytes (up to three of them)
-     * to <var>destination</var>.
-     * The source and destination arrays can be manipulated
-     * anywhere along their length by specifying
-     * <var>srcOffset</var> and <var>destOffset</var>.
-     * This method does not check to make sure your arrays
-     * are large enough to accommodate <var>srcOffset</var> + 4 for
-     * the <var>source</var> array or <var>destOffset</var> + 3 for
-     * the <var>destination</var> array.
-     * This method returns the actual number of bytes that
-     * were converted from the Base64 encoding.
-     *
-     * @param source      the array to convert
-     * @param srcOffset   the index where conversion begins
-     * @param destination the array to hold the conversion
-     * @param destOffset  the index where output will be put
-     * @param decodabet   the decodabet for decoding Base64 content
-     * @return the number of decoded bytes converted
-     * @since 1.3
-     */
-    private static int decode4to3(byte[] source, int srcOffset,
-                                  byte[] destination, int destOffset, byte[] decodabet) {
-        // Example: Dk==
-        if (source[srcOffset + 2] == EQUALS_SIGN) {
-            int outBuff =
-                    ((decodabet[source[srcOffset]] << 24) >>> 6)
-                            | ((decodabet[source[srcOffset + 1]] << 24) >>> 12);
-
-            destination[destOffset] = (byte) (outBuff >>> 16);
-            return 1;
-        } else if (source[srcOffset + 3] == EQUALS_SIGN) {
-            // Example: DkL=
-            int outBuff =
-                    ((decodabet[source[srcOffset]] << 24) >>> 6)
-                            | ((decodabet[source[srcOffset + 1]] << 24) >>> 12)
-                            | ((decodabet[source[srcOffset + 2]] << 24) >>> 18);
-
-            destination[destOffset] = (byte) (outBuff >>> 16);
-            destination[destOffset + 1] = (byte) (outBuff >>> 8);
-            return 2;
-        } else {
-            // Example: DkLE
-            int outBuff =
-                    ((decodabet[source[srcOffset]] << 24) >>> 6)
-                            | ((decodabet[source[srcOffset + 1]] << 24) >>> 12)
-                            | ((decodabet[source[srcOffset + 2]] << 24) >>> 18)
-                            | ((decodabet[source[srcOffset + 3]] << 24) >>> 24);
-
-            destination[destOffset] = (byte) (outBuff >> 16);
-            destination[destOffset + 1] = (byte) (outBuff >> 8);
-            destination[destOffset + 2] = (byte) (outBuff);
-            return 3;
-        }
-    } // end decodeToBytes
-
-
     /**
      * Decodes data from Base64 notation.
      *
@@ -415,8 +357,7 @@ final class Base64 {
      * @since 1.4
      */
     public static byte[] decode(String s) throws Base64DecoderException {
-        byte[] bytes = s.getBytes();
-        return decode(bytes, 0, bytes.length);
+        return decode(s, DECODABET);
     }
 
     /**
@@ -427,8 +368,30 @@ final class Base64 {
      * @return the decoded data
      */
     public static byte[] decodeWebSafe(String s) throws Base64DecoderException {
-        byte[] bytes = s.getBytes();
-        return decodeWebSafe(bytes, 0, bytes.length);
+        return decode(s, WEBSAFE_DECODABET);
+    }
+
+    private static byte[] decode(String s, byte[] decodabet) throws Base64DecoderException {
+        final int len = s.length();
+        final Buffers buffers = Buffers.get(len);
+        if (buffers == null) {
+            final byte[] encoded = new byte[len];
+            toBytes(s, encoded);
+            return decode(encoded, 0, len, decodabet);
+        }
+        toBytes(s, buffers.mEncoded);
+        final int decodedLength = decode(buffers.mEncoded, 0, len, decodabet, buffers.mDecoded);
+        return copyOf(buffers.mDecoded, decodedLength);
+    }
+
+    private static void toBytes(String s, byte[] encoded) {
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            // non-ASCII characters are not valid in Base64 => they are mapped to an invalid byte
+            // (String#getBytes() might produce valid characters after the 7-bit masking)
+            encoded[i] = c < 0x80 ? (byte) c : (byte) 0x80;
+        }
     }
 
     /**
@@ -498,70 +461,171 @@ final class Base64 {
      */
     public static byte[] decode(byte[] source, int off, int len, byte[] decodabet)
             throws Base64DecoderException {
-        int len34 = len * 3 / 4;
-        byte[] outBuff = new byte[2 + len34]; // Upper limit on size of output
-        int outBuffPosn = 0;
-
-        byte[] b4 = new byte[4];
-        int b4Posn = 0;
-        int i = 0;
-        byte sbiCrop = 0;
-        byte sbiDecode = 0;
-        for (i = 0; i < len; i++) {
-            sbiCrop = (byte) (source[i + off] & 0x7f); // Only the low seven bits
-            sbiDecode = decodabet[sbiCrop];
-
-            if (sbiDecode >= WHITE_SPACE_ENC) { // White space Equals sign or better
-                if (sbiDecode >= EQUALS_SIGN_ENC) {
-                    // An equals sign (for padding) must not occur at position 0 or 1
-                    // and must be the last byte[s] in the encoded value
-                    if (sbiCrop == EQUALS_SIGN) {
-                        int bytesLeft = len - i;
-                        byte lastByte = (byte) (source[len - 1 + off] & 0x7f);
-                        if (b4Posn == 0 || b4Posn == 1) {
-                            throw new Base64DecoderException(
-                                    "invalid padding byte '=' at byte offset " + i);
-                        } else if ((b4Posn == 3 && bytesLeft > 2)
-                                || (b4Posn == 4 && bytesLeft > 1)) {
-                            throw new Base64DecoderException(
-                                    "padding byte '=' falsely signals end of encoded value "
-                                            + "at offset " + i);
-                        } else if (lastByte != EQUALS_SIGN && lastByte != NEW_LINE) {
-                            throw new Base64DecoderException(
-                                    "encoded value has invalid trailing byte");
-                        }
+        final Buffers buffers = Buffers.get(len);
+        final byte[] outBuff = buffers != null ? buffers.mDecoded : new byte[getMaxDecodedLength(len)];
+        final int outBuffPosn = decode(source, off, len, decodabet, outBuff);
+        return copyOf(outBuff, outBuffPosn);
+    }
+
+    private static byte[] copyOf(byte[] source, int len) {
+        final byte[] out = new byte[len];
+        System.arraycopy(source, 0, out, 0, len);
+        return out;
+    }
+
+    /**
+     * @param len the length of Base64 content
+     * @return upper limit on size of the decoded data
+     */
+    static int getMaxDecodedLength(int len) {
+        return 2 + len * 3 / 4;
+    }
+
+    /**
+     * Same as {@link #decode(byte[], int, int, byte[], byte[])} with the default decodabet
+     */
+    static int decodeTo(byte[] source, int off, int len, byte[] destination)
+            throws Base64DecoderException {
+        return decode(source, off, len, DECODABET, destination);
+    }
+
+    /**
+     * Same as {@link #decode(byte[], int, int, byte[], byte[])} with the web safe decodabet
+     */
+    static int decodeWebSafeTo(byte[] source, int off, int len, byte[] destination)
+            throws Base64DecoderException {
+        return decode(source, off, len, WEBSAFE_DECODABET, destination);
+    }
+
+    /**
+     * Decodes Base64 content using the supplied decodabet into the given array. This method does
+     * not check that <var>destination</var> is large enough, see
+     * {@link #getMaxDecodedLength(int)}.
+     *
+     * @param source      the Base64 encoded data
+     * @param off         the offset of where to begin decoding
+     * @param len         the length of characters to decode
+     * @param decodabet   the decodabet for decoding Base64 content
+     * @param destination the array to hold the decoded data
+     * @return the number of decoded bytes
+     */
+    static int decode(byte[] source, int off, int len, byte[] decodabet, byte[] destination)
+            throws Base64DecoderException {
+        final int end = off + len;
+        int out = 0;
+        // 6-bit values of the current quartet and their number
+        int bits = 0;
+        int count = 0;
+        int i = off;
+        while (i < end) {
+            if (count == 0) {
+                // fast path: four valid characters in a row are decoded at once, whitespace and
+                // padding are handled one by one below
+                final int fastEnd = end - 3;
+                while (i < fastEnd) {
+                    final int b0 = decodabet[source[i] & 0x7f];
+                    final int b1 = decodabet[source[i + 1] & 0x7f];
+                    final int b2 = decodabet[source[i + 2] & 0x7f];
+                    final int b3 = decodabet[source[i + 3] & 0x7f];
+                    if ((b0 | b1 | b2 | b3) < 0) {
                         break;
                     }
-
-                    b4[b4Posn++] = sbiCrop;
-                    if (b4Posn == 4) {
-                        outBuffPosn += decode4to3(b4, 0, outBuff, outBuffPosn, decodabet);
-                        b4Posn = 0;
+                    final int quartet = (b0 << 18) | (b1 << 12) | (b2 << 6) | b3;
+                    destination[out] = (byte) (quartet >> 16);
+                    destination[out + 1] = (byte) (quartet >> 8);
+                    destination[out + 2] = (byte) quartet;
+                    out += 3;
+                    i += 4;
+                }
+                if (i == end) {
+                    break;
+                }
+            }
+            final byte sbiCrop = (byte) (source[i] & 0x7f); // Only the low seven bits
+            final byte sbiDecode = decodabet[sbiCrop];
+            if (sbiDecode < WHITE_SPACE_ENC) {
+                throw new Base64DecoderException("Bad Base64 input character at " + (i - off)
+                        + ": " + source[i] + "(decimal)");
+            }
+            if (sbiDecode >= EQUALS_SIGN_ENC) {
+                // An equals sign (for padding) must not occur at position 0 or 1
+                // and must be the last byte[s] in the encoded value
+                if (sbiCrop == EQUALS_SIGN) {
+                    int bytesLeft = end - i;
+                    byte lastByte = (byte) (source[end - 1] & 0x7f);
+                    if (count == 0 || count == 1) {
+                        throw new Base64DecoderException(
+                                "invalid padding byte '=' at byte offset " + (i - off));
+                    } else if (count == 3 && bytesLeft > 2) {
+                        throw new Base64DecoderException(
+                                "padding byte '=' falsely signals end of encoded value "
+                                        + "at offset " + (i - off));
+                    } else if (lastByte != EQUALS_SIGN && lastByte != NEW_LINE) {
+                        throw new Base64DecoderException(
+                                "encoded value has invalid trailing byte");
                     }
+                    break;
+                }
+                bits = (bits << 6) | sbiDecode;
+                count++;
+                if (count == 4) {
+                    destination[out] = (byte) (bits >> 16);
+                    destination[out + 1] = (byte) (bits >> 8);
+                    destination[out + 2] = (byte) bits;
+                    out += 3;
+                    bits = 0;
+                    count = 0;
                 }
-            } else {
-                throw new Base64DecoderException("Bad Base64 input character at " + i
-                        + ": " + source[i + off] + "(decimal)");
             }
+            i++;
         }
 
-        // Because web safe encoding allows non padding base64 encodes, we
-        // need to pad the rest of the b4 buffer with equal signs when
-        // b4Posn != 0.  There can be at most 2 equal signs at the end of
-        // four characters, so the b4 buffer must have two or three
-        // characters.  This also catches the case where the input is
-        // padded with EQUALS_SIGN
-        if (b4Posn != 0) {
-            if (b4Posn == 1) {
+        // Because web safe encoding allows non padding base64 encodes, the
+        // last quartet might have two or three characters (the same as if it
+        // was padded with EQUALS_SIGN)
+        switch (count) {
+            case 0:
+                break;
+            case 1:
                 throw new Base64DecoderException("single trailing character at offset "
                         + (len - 1));
-            }
-            b4[b4Posn++] = EQUALS_SIGN;
-            outBuffPosn += decode4to3(b4, 0, outBuff, outBuffPosn, decodabet);
+            case 2:
+                destination[out] = (byte) (bits >> 4);
+                out += 1;
+                break;
+            case 3:
+                destination[out] = (byte) (bits >> 10);
+                destination[out + 1] = (byte) (bits >> 2);
+                out += 2;
+                break;
         }
-
-        byte[] out = new byte[outBuffPosn];
-        System.arraycopy(outBuff, 0, out, 0, outBuffPosn);
         return out;
     }
+
+    /**
+     * Buffers of the decoding methods which return a new array, one per thread
+     */
+    private static final class Buffers {
+        /**
+         * Longer content is decoded without the buffers so that big arrays are not retained
+         */
+        private static final int MAX_LENGTH = 4 * 1024;
+        private static final ThreadLocal<Buffers> sInstances = new ThreadLocal<Buffers>() {
+            @Override
+            protected Buffers initialValue() {
+                return new Buffers();
+            }
+        };
+
+        private final byte[] mEncoded = new byte[MAX_LENGTH];
+        private final byte[] mDecoded = new byte[getMaxDecodedLength(MAX_LENGTH)];
+
+        /**
+         * @return buffers of the current thread, null if content of the given length doesn't
+         * fit into them
+         */
+        static Buffers get(int len) {
+            return len <= MAX_LENGTH ? sInstances.get() : null;
+        }
+    }
 }
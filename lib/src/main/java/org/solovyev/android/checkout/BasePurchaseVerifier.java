@@ -27,47 +27,72 @@ import android.os.Looper;
 
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
 /**
  * Common base class of common implementation for {@link PurchaseVerifier} that verifies purchases
- * on a background thread.
+ * on a background thread. Unless an executor is passed to the constructor the verification is
+ * done on the threads shared by all the verifiers which are stopped when not used, see
+ * {@link Billing#setVerificationExecutor(Executor)}.
  */
 public abstract class BasePurchaseVerifier implements PurchaseVerifier {
 
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
     @Nonnull
     private final Executor mBackground;
     @Nonnull
     private final MainThread mMainThread;
 
+    /**
+     * @see #BasePurchaseVerifier(Handler)
+     */
     protected BasePurchaseVerifier() {
         this(new Handler(Looper.getMainLooper()));
     }
 
+    /**
+     * Creates a verifier which runs {@link #doVerify(List, RequestListener)} on the threads shared
+     * with {@link DefaultPurchaseVerifier} (there are only max(2, number of cores) of them). This
+     * suits CPU-bound verification only: a subclass which blocks on the network (f.e. verifies
+     * the purchases on a server) would hold the shared threads and delay the local verification,
+     * it should pass its own executor to {@link #BasePurchaseVerifier(Handler, Executor)} instead.
+     *
+     * @param handler handler of the main thread
+     */
     protected BasePurchaseVerifier(@Nonnull Handler handler) {
-        this(handler, 2, defaultThreadFactory());
+        this(handler, VerifierExecutor.INSTANCE);
     }
 
-    protected BasePurchaseVerifier(@Nonnull Handler handler, int threadCount, @Nonnull ThreadFactory threadFactory) {
+    /**
+     * @param handler  handler of the main thread
+     * @param executor executor on which {@link #doVerify(List, RequestListener)} is called
+     */
+    protected BasePurchaseVerifier(@Nonnull Handler handler, @Nonnull Executor executor) {
         mMainThread = new MainThread(handler);
-        mBackground = Executors.newFixedThreadPool(threadCount, threadFactory);
+        mBackground = executor;
+    }
+
+    /**
+     * Creates a verifier with its own pool of <var>threadCount</var> threads. The threads are
+     * stopped when idle, but, unlike the shared threads, they are not bounded by the number of
+     * the verifiers.
+     */
+    protected BasePurchaseVerifier(@Nonnull Handler handler, int threadCount, @Nonnull ThreadFactory threadFactory) {
+        this(handler, newPool(threadCount, threadFactory));
     }
 
     @Nonnull
-    private static ThreadFactory defaultThreadFactory() {
-        return new ThreadFactory() {
-            @Nonnull
-            private final AtomicInteger mCount = new AtomicInteger();
-
-            @Override
-            public Thread newThread(@Nonnull Runnable r) {
-                return new Thread(r, "PurchaseVerifierThread #" + mCount.getAndIncrement());
-            }
-        };
+    static Executor newPool(int threadCount, @Nonnull ThreadFactory threadFactory) {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
     }
 
     @Override
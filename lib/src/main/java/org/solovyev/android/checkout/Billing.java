@@ -34,20 +34,23 @@ import android.content.ServiceConnection;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.RemoteException;
+import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 
-import static java.lang.System.currentTimeMillis;
-import static org.solovyev.android.checkout.ResponseCodes.ITEM_ALREADY_OWNED;
-import static org.solovyev.android.checkout.ResponseCodes.ITEM_NOT_OWNED;
 
 /**
  * A core class of the Checkout's implementation of Android's Billing API.
@@ -88,19 +91,65 @@ public final class Billing {
     private final StaticConfiguration mConfiguration;
     @Nonnull
     private final ConcurrentCache mCache;
+    @Nullable
+    private volatile Metrics mMetrics;
+    @Nullable
+    private volatile RequestTracer mTracer;
+    /**
+     * See {@link #setSignatureCacheEnabled(boolean)}
+     */
+    private volatile boolean mSignatureCacheEnabled;
     @Nonnull
     private final PendingRequests mPendingRequests = new PendingRequests();
     @Nonnull
     private final BillingRequests mRequests = newRequestsBuilder().withTag(null).onBackgroundThread().create();
+    @Nonnull
+    private final BillingSupportedSnapshot mBillingSupported = new BillingSupportedSnapshot(RequestType.BILLING_SUPPORTED.expiresIn);
+    /**
+     * Requests used to fill {@link #mBillingSupported}, tagged with it so that they are not
+     * cancelled together with the requests of a {@link Checkout}
+     */
+    @Nonnull
+    private final BillingRequests mBillingSupportedRequests = newRequestsBuilder().withTag(mBillingSupported).onBackgroundThread().create();
+    @Nonnull
+    private final ObservableInventory mInventory = new ObservableInventory(this);
+    @Nonnull
+    private final InventoryStore mInventoryStore;
+    /**
+     * Notifies {@link #mInventory} and {@link #mInventoryStore} that the purchases might have
+     * changed
+     */
+    @Nonnull
+    private final Runnable mOnPurchasesChanged = new Runnable() {
+        @Override
+        public void run() {
+            // invalidated first: the products reloaded for mInventory are stored as fresh
+            mInventoryStore.invalidate();
+            mInventory.onPurchasesChanged();
+        }
+    };
     @GuardedBy("mLock")
     @Nullable
     private IInAppBillingService mService;
     @GuardedBy("mLock")
     @Nonnull
     private State mState = State.INITIAL;
+    /**
+     * Time (see {@link System#nanoTime()}) when the last connection was requested, used only if
+     * {@link #mMetrics} is set
+     */
+    @GuardedBy("mLock")
+    private long mConnectingSince;
+    /**
+     * True if this instance is a user of {@link VerifierExecutor#INSTANCE}, i.e. is connected
+     */
+    @GuardedBy("mLock")
+    private boolean mVerifierAcquired;
     @Nonnull
     private CancellableExecutor mMainThread;
     @Nonnull
+    private CancellableExecutor mCoalescingMainThread;
+    @Nonnull
     private Executor mBackground = Executors.newSingleThreadExecutor(new ThreadFactory() {
         @Override
         public Thread newThread(@Nonnull Runnable r) {
@@ -130,11 +179,37 @@ public final class Billing {
         } else {
             mContext = context.getApplicationContext();
         }
-        mMainThread = new MainThread(handler);
+        final MainThread mainThread = new MainThread(handler);
+        mMainThread = mainThread;
+        // drains must be posted: a drain started inline from another drain is not bounded
+        mCoalescingMainThread = new CoalescingExecutor(mainThread.posting());
+        mInventoryStore = new InventoryStore(this, handler);
         mConfiguration = new StaticConfiguration(configuration);
         Check.isNotEmpty(mConfiguration.getPublicKey());
         final Cache cache = configuration.getCache();
         mCache = new ConcurrentCache(cache == null ? null : new SafeCache(cache));
+        onPurchaseVerifierChanged(mConfiguration.getPurchaseVerifier());
+    }
+
+    private void onPurchaseVerifierChanged(@Nonnull PurchaseVerifier verifier) {
+        if (verifier instanceof DefaultPurchaseVerifier) {
+            // outcomes of the verification are stored together with the purchases
+            ((DefaultPurchaseVerifier) verifier).setCache(mSignatureCacheEnabled && mCache.hasCache() ? mCache : null);
+        }
+    }
+
+    /**
+     * Makes the default purchase verifier (see {@link #newPurchaseVerifier(String)}) store the
+     * digests of the verified purchases in the cache (see {@link Configuration#getCache()}), so
+     * that the purchases are not verified again after the application restarts. This is worth
+     * enabling only for a persistent cache, the entry is stored under a
+     * {@link Cache.Key#TYPE_SIGNATURES} key. Disabled by default.
+     *
+     * @param enabled true if the verified purchases should be stored in the cache
+     */
+    public void setSignatureCacheEnabled(boolean enabled) {
+        mSignatureCacheEnabled = enabled;
+        onPurchaseVerifierChanged(mConfiguration.getPurchaseVerifier());
     }
 
     /**
@@ -156,15 +231,50 @@ public final class Billing {
         return sEmptyListener;
     }
 
+    /**
+     * Log messages are often built from several parts and building them is not free. One of
+     * {@link #isDebugLoggable()}, {@link #isWarningLoggable()} and {@link #isErrorLoggable()}
+     * should be checked before building such messages.
+     *
+     * @param level level of the message, see {@link LevelLogger#isLoggable(int)}
+     * @return false if nothing would be logged with the current {@link Logger}
+     */
+    static boolean isLoggable(int level) {
+        final Logger logger = sLogger;
+        if (logger instanceof LevelLogger) {
+            return ((LevelLogger) logger).isLoggable(level);
+        }
+        return true;
+    }
+
+    static boolean isDebugLoggable() {
+        return isLoggable(Log.DEBUG);
+    }
+
+    static boolean isWarningLoggable() {
+        return isLoggable(Log.WARN);
+    }
+
+    static boolean isErrorLoggable() {
+        return isLoggable(Log.ERROR);
+    }
+
     static void error(@Nonnull String message) {
-        sLogger.e(TAG, message);
+        if (isErrorLoggable()) {
+            sLogger.e(TAG, message);
+        }
     }
 
     static void error(@Nonnull Exception e) {
-        error(e.getMessage(), e);
+        if (isErrorLoggable()) {
+            error(e.getMessage(), e);
+        }
     }
 
     static void error(@Nonnull String message, @Nonnull Exception e) {
+        if (!isErrorLoggable()) {
+            return;
+        }
         if (e instanceof BillingException) {
             final BillingException be = (BillingException) e;
             switch (be.getResponse()) {
@@ -182,21 +292,44 @@ public final class Billing {
     }
 
     static void debug(@Nonnull String subTag, @Nonnull String message) {
-        sLogger.d(TAG + "/" + subTag, message);
+        if (isDebugLoggable()) {
+            sLogger.d(TAG + "/" + subTag, message);
+        }
     }
 
     static void debug(@Nonnull String message) {
-        sLogger.d(TAG, message);
+        if (isDebugLoggable()) {
+            sLogger.d(TAG, message);
+        }
     }
 
     static void warning(@Nonnull String message) {
-        sLogger.w(TAG, message);
+        if (isWarningLoggable()) {
+            sLogger.w(TAG, message);
+        }
     }
 
     public static void setLogger(@Nullable Logger logger) {
         Billing.sLogger = logger == null ? new EmptyLogger() : logger;
     }
 
+    /**
+     * Sets an executor on which the purchases are verified by the verifiers which don't have
+     * their own executor (see {@link BasePurchaseVerifier} and {@link DefaultPurchaseVerifier}).
+     * By default, the verification threads are shared by all the verifiers, are started on demand
+     * and are stopped when idle or when the last {@link Billing} disconnects.
+     * <p/>
+     * Verifiers which block on the network (f.e. subclasses of {@link BasePurchaseVerifier}
+     * calling a server) should not use these threads: they should pass their own executor to
+     * {@link BasePurchaseVerifier#BasePurchaseVerifier(Handler, Executor)}, otherwise a slow
+     * server delays the local verification of the purchases.
+     *
+     * @param executor application's executor, null to use the default threads
+     */
+    public static void setVerificationExecutor(@Nullable Executor executor) {
+        VerifierExecutor.INSTANCE.setExecutor(executor);
+    }
+
     /**
      * @return default cache implementation
      */
@@ -205,6 +338,14 @@ public final class Billing {
         return new MapCache();
     }
 
+    /**
+     * @return default metrics implementation
+     */
+    @Nonnull
+    public static MemoryMetrics newMetrics() {
+        return new MemoryMetrics();
+    }
+
     /**
      * @return default purchase verifier
      */
@@ -260,6 +401,12 @@ public final class Billing {
                     // preserve initial state
                     return;
                 }
+                if (mState == State.CONNECTING) {
+                    // notification about the previous connection: the result of the current one
+                    // is still to come and, if the state changes now, it would be ignored leaving
+                    // the pending requests unprocessed
+                    return;
+                }
                 // service might be disconnected abruptly
                 newState = State.DISCONNECTED;
             }
@@ -268,16 +415,39 @@ public final class Billing {
         }
     }
 
+    /**
+     * Installs a tracer which receives the lifecycle events of all the requests executed after
+     * this call
+     *
+     * @param tracer tracer to be installed, null to stop tracing
+     */
+    public void setRequestTracer(@Nullable RequestTracer tracer) {
+        mTracer = tracer;
+    }
+
+    /**
+     * Installs metrics which receive the measurements of the requests' latencies and of the cache
+     * efficiency. Measuring is disabled by default.
+     *
+     * @param metrics metrics to be used for the measurements, null to stop measuring
+     * @see #newMetrics()
+     */
+    public void setMetrics(@Nullable Metrics metrics) {
+        mMetrics = metrics;
+    }
+
     void setBackground(@Nonnull Executor background) {
         mBackground = background;
     }
 
     void setMainThread(@Nonnull CancellableExecutor mainThread) {
         mMainThread = mainThread;
+        mCoalescingMainThread = new CoalescingExecutor(mainThread);
     }
 
     void setPurchaseVerifier(@Nonnull PurchaseVerifier purchaseVerifier) {
         mConfiguration.setPurchaseVerifier(purchaseVerifier);
+        onPurchaseVerifierChanged(purchaseVerifier);
     }
 
     private void executePendingRequests() {
@@ -296,12 +466,19 @@ public final class Billing {
             if (mState == newState) {
                 return;
             }
+            final State oldState = mState;
             mState = newState;
+            final Metrics metrics = mMetrics;
+            if (metrics != null) {
+                onStateChanged(metrics, oldState, newState);
+            }
+            onVerifierUsageChanged(newState == State.CONNECTED);
             switch (mState) {
                 case CONNECTED:
                     executePendingRequests();
                     break;
                 case FAILED:
+                    mBillingSupported.invalidate();
                     mMainThread.execute(new Runnable() {
                         @Override
                         public void run() {
@@ -313,6 +490,28 @@ public final class Billing {
         }
     }
 
+    private void onVerifierUsageChanged(boolean used) {
+        Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+        if (mVerifierAcquired == used) {
+            return;
+        }
+        mVerifierAcquired = used;
+        if (used) {
+            VerifierExecutor.INSTANCE.acquire();
+        } else {
+            VerifierExecutor.INSTANCE.release();
+        }
+    }
+
+    private void onStateChanged(@Nonnull Metrics metrics, @Nonnull State oldState, @Nonnull State newState) {
+        Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+        if (newState == State.CONNECTING) {
+            mConnectingSince = System.nanoTime();
+        } else if (oldState == State.CONNECTING && (newState == State.CONNECTED || newState == State.FAILED)) {
+            metrics.onConnection(newState == State.CONNECTED, System.nanoTime() - mConnectingSince);
+        }
+    }
+
     /**
      * Connects to the Billing service. Called automatically when first request is done,
      * Use {@link #disconnect()} to disconnect.
@@ -382,16 +581,30 @@ public final class Billing {
     }
 
     <R> int runWhenConnected(@Nonnull Request<R> request, @Nullable RequestListener<R> listener, @Nullable Object tag) {
+        return runWhenConnected(request, listener, null, tag);
+    }
+
+    /**
+     * @param executor executor on which <var>listener</var> is called, null to call it on the
+     *                 thread where the request finishes
+     */
+    private <R> int runWhenConnected(@Nonnull Request<R> request, @Nullable RequestListener<R> listener,
+                                     @Nullable CancellableExecutor executor, @Nullable Object tag) {
+        request.setTracer(mTracer);
         if (listener != null) {
-            if (mCache.hasCache()) {
-                listener = new CachingRequestListener<>(request, listener);
-            }
-            request.setListener(listener);
+            request.setListener(newDispatcher(request, listener, executor));
         }
         if (tag != null) {
             request.setTag(tag);
         }
 
+        // a drain running on the background thread might start the request as soon as it is
+        // added => it is reported before
+        request.trace(RequestTracer.Event.ENQUEUED);
+        final Metrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onQueued(request.getType(), mPendingRequests.size() + 1);
+        }
         mPendingRequests.add(onConnectedService(request));
         connect();
 
@@ -414,6 +627,122 @@ public final class Billing {
         mPendingRequests.cancelAll();
     }
 
+    /**
+     * Executes the <var>request</var> and blocks the calling thread until the result is available.
+     * If the service is already connected the request is started directly on the calling thread,
+     * otherwise it is queued and executed as soon as the connection is established.
+     * In the former case the request has finished when {@link Request#start} returns, so the
+     * timeout only applies to the queued requests: a slow service call on the calling thread can't
+     * be bounded (binder calls can't be interrupted).
+     *
+     * @param request       request to be executed
+     * @param timeoutMillis maximum time to wait for the connection and the queued request
+     * @return result of the request
+     * @throws BillingException if the request fails, times out or the calling thread is interrupted
+     */
+    @Nonnull
+    <R> R runBlocking(@Nonnull Request<R> request, long timeoutMillis) throws BillingException {
+        Check.isNotMainThread();
+        final BlockingRequestListener<R> listener = new BlockingRequestListener<>();
+        final IInAppBillingService service;
+        synchronized (mLock) {
+            service = mState == State.CONNECTED ? mService : null;
+        }
+        if (service != null) {
+            request.setTracer(mTracer);
+            request.setListener(newDispatcher(request, listener, null));
+            if (!checkCache(request)) {
+                startRequest(request, service);
+            }
+        } else {
+            runWhenConnected(request, listener, null);
+        }
+        if (!listener.await(timeoutMillis)) {
+            mPendingRequests.cancel(request.getId());
+            request.cancel();
+            throw new BillingException(ResponseCodes.TIMEOUT);
+        }
+        return listener.getResult();
+    }
+
+    @Nonnull
+    private <R> RequestListener<R> newDispatcher(@Nonnull Request<R> request, @Nonnull RequestListener<R> listener,
+                                                 @Nullable CancellableExecutor executor) {
+        final boolean cache = mCache.hasCache();
+        // only the requests changing the purchases need to notify the inventories
+        final boolean observed = RequestDispatcher.changesPurchases(request.getType())
+                && (mInventory.isObserved() || !mInventoryStore.isEmpty());
+        if (!cache && executor == null && !request.isTraced() && !observed) {
+            // nothing to do in between
+            return listener;
+        }
+        return new RequestDispatcher<>(request, listener, executor, cache ? mCache : null, mMetrics, observed ? mOnPurchasesChanged : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R> boolean checkCache(@Nonnull Request<R> request) {
+        if (!mCache.hasCache()) {
+            return false;
+        }
+        final Cache.Key key = request.getCacheEntryKey();
+        if (key == null) {
+            return false;
+        }
+        final Cache.Entry entry = mCache.get(key);
+        final Metrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.onCache(request.getType(), entry != null);
+        }
+        if (entry == null) {
+            return false;
+        }
+        request.trace(RequestTracer.Event.CACHE_HIT);
+        request.onSuccess((R) entry.data);
+        return true;
+    }
+
+    private void startRequest(@Nonnull Request<?> request, @Nonnull IInAppBillingService service) {
+        final Metrics metrics = mMetrics;
+        final long start = metrics != null ? System.nanoTime() : 0;
+        request.trace(RequestTracer.Event.STARTED);
+        try {
+            request.start(service, mContext.getPackageName());
+        } catch (RemoteException | RuntimeException | RequestException e) {
+            request.onError(e);
+        }
+        if (metrics != null) {
+            metrics.onTiming(request.getType(), Metrics.Timing.EXECUTION, System.nanoTime() - start);
+        }
+        if (request instanceof ConsumePurchasesRequest && request.isCancelled() && ((ConsumePurchasesRequest) request).isConsumed()) {
+            // the request was cancelled after some purchases had been consumed: the listener
+            // which invalidates the purchases (see RequestDispatcher) is not called
+            onPurchasesChanged();
+        }
+    }
+
+    /**
+     * Invalidates the cached purchases and notifies the inventories that the purchases might have
+     * changed
+     */
+    private void onPurchasesChanged() {
+        if (mCache.hasCache()) {
+            mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+        }
+        mOnPurchasesChanged.run();
+    }
+
+    /**
+     * @param type type of the request in which the verifier is used
+     * @return purchase verifier from the configuration, wrapped to measure the verification time
+     * if {@link #mMetrics} is set
+     */
+    @Nonnull
+    PurchaseVerifier getPurchaseVerifier(@Nonnull RequestType type) {
+        final PurchaseVerifier verifier = mConfiguration.getPurchaseVerifier();
+        final Metrics metrics = mMetrics;
+        return metrics == null ? verifier : new MetricsPurchaseVerifier(verifier, metrics, type);
+    }
+
     @Nonnull
     private RequestRunnable onConnectedService(@Nonnull final Request request) {
         return new OnConnectedServiceRunnable(request);
@@ -455,6 +784,39 @@ public final class Billing {
         return new RequestsBuilder().withTag(service).onMainThread().create();
     }
 
+    /**
+     * A factory method of {@link BlockingBillingRequests}. Methods of the constructed object block
+     * the calling thread and, thus, must not be called on the main application thread.
+     *
+     * @param timeout maximum time to wait for the result of each call. The billing service calls
+     *                made on the calling thread are not interrupted when the timeout elapses, see
+     *                {@link BlockingBillingRequests}
+     * @param unit    time unit of the <var>timeout</var> argument
+     * @return blocking requests
+     */
+    @Nonnull
+    public BlockingBillingRequests newBlockingRequests(long timeout, @Nonnull TimeUnit unit) {
+        Check.isTrue(timeout > 0, "Timeout must be positive");
+        return new BlockingRequests(this, unit.toMillis(timeout));
+    }
+
+    /**
+     * @return inventory shared by all the users of this {@link Billing} which notifies its
+     * subscribers about the changes of the purchases and SKUs
+     */
+    @Nonnull
+    public ObservableInventory getObservableInventory() {
+        return mInventory;
+    }
+
+    /**
+     * @return process-wide store of the loaded inventories, see {@link InventoryStore}
+     */
+    @Nonnull
+    public InventoryStore getInventoryStore() {
+        return mInventoryStore;
+    }
+
     /**
      * @return default requests object associated with this {@link Billing} class. All methods of
      * {@link RequestListener} used in it are called on the main application thread.
@@ -478,21 +840,43 @@ public final class Billing {
 
     @Nonnull
     PurchaseFlow createPurchaseFlow(@Nonnull Activity activity, int requestCode, @Nonnull RequestListener<Purchase> listener) {
-        if (mCache.hasCache()) {
-            listener = new RequestListenerWrapper<Purchase>(listener) {
-                @Override
-                public void onSuccess(@Nonnull Purchase result) {
-                    mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
-                    super.onSuccess(result);
-                }
-            };
-        }
-        return new PurchaseFlow(activity, requestCode, listener, mConfiguration.getPurchaseVerifier());
+        listener = new RequestListenerWrapper<Purchase>(listener) {
+            @Override
+            public void onSuccess(@Nonnull Purchase result) {
+                onPurchasesChanged();
+                super.onSuccess(result);
+            }
+        };
+        return new PurchaseFlow(activity, requestCode, listener, getPurchaseVerifier(RequestType.PURCHASE));
+    }
+
+    @Nonnull
+    CancellableExecutor getMainThread(boolean coalesce) {
+        return coalesce ? mCoalescingMainThread : mMainThread;
     }
 
+    /**
+     * Returns the known results of the "is billing supported" checks. Checks that are missing or
+     * expired are done asynchronously (at most one per product regardless of the number of
+     * listeners waiting for it) and their results are delivered to all the subscribed listeners
+     * on a background thread.
+     *
+     * @param listener listener to be notified about the missing products, must be removed via
+     *                 {@link #removeBillingSupportedListener(BillingSupportedSnapshot.Listener)}
+     *                 when no more updates are needed
+     * @return known results (product to "billing supported" flag)
+     */
     @Nonnull
-    private <R> RequestListener<R> onMainThread(@Nonnull final RequestListener<R> listener) {
-        return new MainThreadRequestListener<>(mMainThread, listener);
+    Map<String, Boolean> whenBillingSupported(@Nonnull BillingSupportedSnapshot.Listener listener) {
+        final Map<String, Boolean> known = new HashMap<>();
+        for (String product : mBillingSupported.subscribe(listener, known)) {
+            mBillingSupportedRequests.isBillingSupported(product, new BillingSupportedListener(product));
+        }
+        return known;
+    }
+
+    void removeBillingSupportedListener(@Nonnull BillingSupportedSnapshot.Listener listener) {
+        mBillingSupported.unsubscribe(listener);
     }
 
     public void onCheckoutStarted() {
@@ -712,20 +1096,32 @@ public final class Billing {
         @GuardedBy("this")
         @Nullable
         private Request mRequest;
+        /**
+         * Metrics installed when the request was queued
+         */
+        @Nullable
+        private final Metrics mQueueMetrics;
+        private final long mQueuedAt;
 
         public OnConnectedServiceRunnable(@Nonnull Request request) {
             mRequest = request;
+            mQueueMetrics = mMetrics;
+            mQueuedAt = mQueueMetrics != null ? System.nanoTime() : 0;
         }
 
         @Override
         public boolean run() {
-            final Request localRequest = getRequest();
+            final Request<?> localRequest = getRequest();
             if (localRequest == null) {
                 // request was cancelled => finish here
                 return true;
             }
+            final long runAt = mQueueMetrics != null ? System.nanoTime() : 0;
 
-            if (checkCache(localRequest)) return true;
+            if (checkCache(localRequest)) {
+                onDequeued(localRequest, runAt);
+                return true;
+            }
 
             // request is alive, let's check the service state
             final State localState;
@@ -737,11 +1133,7 @@ public final class Billing {
             if (localState == State.CONNECTED) {
                 Check.isNotNull(localService);
                 // service is connected, let's start request
-                try {
-                    localRequest.start(localService, mContext.getPackageName());
-                } catch (RemoteException | RuntimeException | RequestException e) {
-                    localRequest.onError(e);
-                }
+                startRequest(localRequest, localService);
             } else {
                 // service is not connected, let's check why
                 if (localState != State.FAILED) {
@@ -754,23 +1146,14 @@ public final class Billing {
                 }
             }
 
+            onDequeued(localRequest, runAt);
             return true;
         }
 
-        private boolean checkCache(@Nonnull Request request) {
-            if (!mCache.hasCache()) {
-                return false;
-            }
-            final String key = request.getCacheKey();
-            if (key == null) {
-                return false;
-            }
-            final Cache.Entry entry = mCache.get(request.getType().getCacheKey(key));
-            if (entry == null) {
-                return false;
+        private void onDequeued(@Nonnull Request<?> request, long runAt) {
+            if (mQueueMetrics != null) {
+                mQueueMetrics.onTiming(request.getType(), Metrics.Timing.QUEUE, runAt - mQueuedAt);
             }
-            request.onSuccess(entry.data);
-            return true;
         }
 
         @Override
@@ -784,7 +1167,9 @@ public final class Billing {
         public void cancel() {
             synchronized (this) {
                 if (mRequest != null) {
-                    Billing.debug("Cancelling request: " + mRequest);
+                    if (Billing.isDebugLoggable()) {
+                        Billing.debug("Cancelling request: " + mRequest);
+                    }
                     mRequest.cancel();
                 }
                 mRequest = null;
@@ -821,6 +1206,7 @@ public final class Billing {
         private Object mTag;
         @Nullable
         private Boolean mOnMainThread;
+        private boolean mCoalesce;
 
         private RequestsBuilder() {
         }
@@ -862,9 +1248,25 @@ public final class Billing {
             return this;
         }
 
+        /**
+         * Same as {@link #onMainThread()} but the results are delivered in batches: all the
+         * results which arrive before the main application thread gets to them are delivered
+         * within one main thread message (the order of the results is preserved). This mode
+         * reduces the number of the main thread messages when many requests finish at once
+         * (for example, while loading an {@link Inventory}).
+         *
+         * @return this builder
+         */
+        @Nonnull
+        public RequestsBuilder onMainThreadCoalesced() {
+            onMainThread();
+            mCoalesce = true;
+            return this;
+        }
+
         @Nonnull
         public BillingRequests create() {
-            return new Requests(mTag, mOnMainThread == null ? true : mOnMainThread);
+            return new Requests(mTag, mOnMainThread == null ? true : mOnMainThread, mCoalesce);
         }
     }
 
@@ -875,9 +1277,12 @@ public final class Billing {
 
         private final boolean mOnMainThread;
 
-        private Requests(@Nullable Object tag, boolean onMainThread) {
+        private final boolean mCoalesce;
+
+        private Requests(@Nullable Object tag, boolean onMainThread, boolean coalesce) {
             mTag = tag;
             mOnMainThread = onMainThread;
+            mCoalesce = coalesce;
         }
 
         @Override
@@ -894,7 +1299,7 @@ public final class Billing {
         public int isBillingSupported(@Nonnull String product, int apiVersion,
                                       @Nonnull RequestListener<Object> listener) {
             Check.isNotEmpty(product);
-            return runWhenConnected(new BillingSupportedRequest(product, apiVersion), wrapListener(listener), mTag);
+            return execute(new BillingSupportedRequest(product, apiVersion), listener);
         }
 
         @Override
@@ -902,52 +1307,60 @@ public final class Billing {
             return isBillingSupported(product, V3, listener);
         }
 
-        @Nonnull
-        private <R> RequestListener<R> wrapListener(@Nonnull RequestListener<R> listener) {
-            return mOnMainThread ? onMainThread(listener) : listener;
+        private <R> int execute(@Nonnull Request<R> request, @Nonnull RequestListener<R> listener) {
+            return runWhenConnected(request, listener, mOnMainThread ? getMainThread(mCoalesce) : null, mTag);
         }
 
         @Nonnull
         Executor getDeliveryExecutor() {
-            return mOnMainThread ? mMainThread : SameThreadExecutor.INSTANCE;
+            return mOnMainThread ? getMainThread(mCoalesce) : SameThreadExecutor.INSTANCE;
         }
 
         @Override
         public int getPurchases(@Nonnull final String product, @Nullable final String continuationToken, @Nonnull RequestListener<Purchases> listener) {
             Check.isNotEmpty(product);
-            return runWhenConnected(new GetPurchasesRequest(product, continuationToken, mConfiguration.getPurchaseVerifier()), wrapListener(listener), mTag);
+            return execute(new GetPurchasesRequest(product, continuationToken, getPurchaseVerifier(RequestType.GET_PURCHASES)), listener);
         }
 
         @Override
         public int getAllPurchases(@Nonnull String product, @Nonnull RequestListener<Purchases> listener) {
             Check.isNotEmpty(product);
             final GetAllPurchasesListener getAllPurchasesListener = new GetAllPurchasesListener(listener);
-            final GetPurchasesRequest request = new GetPurchasesRequest(product, null, mConfiguration.getPurchaseVerifier());
+            final GetPurchasesRequest request = new GetPurchasesRequest(product, null, getPurchaseVerifier(RequestType.GET_PURCHASES));
             getAllPurchasesListener.mRequest = request;
-            return runWhenConnected(request, wrapListener(getAllPurchasesListener), mTag);
+            return execute(request, getAllPurchasesListener);
         }
 
         @Override
         public int isPurchased(@Nonnull final String product, @Nonnull final String sku, @Nonnull final RequestListener<Boolean> listener) {
             Check.isNotEmpty(sku);
             final IsPurchasedListener isPurchasedListener = new IsPurchasedListener(sku, listener);
-            final GetPurchasesRequest request = new GetPurchasesRequest(product, null, mConfiguration.getPurchaseVerifier());
+            final GetPurchasesRequest request = new GetPurchasesRequest(product, null, getPurchaseVerifier(RequestType.GET_PURCHASES));
             isPurchasedListener.mRequest = request;
-            return runWhenConnected(request, wrapListener(isPurchasedListener), mTag);
+            return execute(request, isPurchasedListener);
+        }
+
+        @Override
+        public int arePurchased(@Nonnull String product, @Nonnull Collection<String> skus, @Nonnull RequestListener<Map<String, Boolean>> listener) {
+            Check.isNotEmpty(skus);
+            final ArePurchasedListener arePurchasedListener = new ArePurchasedListener(skus, listener);
+            final GetPurchasesRequest request = new GetPurchasesRequest(product, null, getPurchaseVerifier(RequestType.GET_PURCHASES));
+            arePurchasedListener.mRequest = request;
+            return execute(request, arePurchasedListener);
         }
 
         @Override
         public int getSkus(@Nonnull String product, @Nonnull List<String> skus, @Nonnull RequestListener<Skus> listener) {
             Check.isNotEmpty(product);
             Check.isNotEmpty(skus);
-            return runWhenConnected(new GetSkuDetailsRequest(product, skus), wrapListener(listener), mTag);
+            return execute(new GetSkuDetailsRequest(product, skus), listener);
         }
 
         @Override
         public int purchase(@Nonnull String product, @Nonnull String sku, @Nullable String payload, @Nonnull PurchaseFlow purchaseFlow) {
             Check.isNotEmpty(product);
             Check.isNotEmpty(sku);
-            return runWhenConnected(new PurchaseRequest(product, sku, payload), wrapListener(purchaseFlow), mTag);
+            return execute(new PurchaseRequest(product, sku, payload), purchaseFlow);
         }
 
         @Override
@@ -956,9 +1369,9 @@ public final class Billing {
                                       @Nonnull PurchaseFlow purchaseFlow) {
             Check.isNotEmpty(oldSkus);
             Check.isNotEmpty(newSku);
-            return runWhenConnected(
+            return execute(
                     new ChangePurchaseRequest(ProductTypes.SUBSCRIPTION, oldSkus, newSku, payload),
-                    wrapListener(purchaseFlow), mTag);
+                    purchaseFlow);
         }
 
         @Override
@@ -986,7 +1399,13 @@ public final class Billing {
         @Override
         public int consume(@Nonnull String token, @Nonnull RequestListener<Object> listener) {
             Check.isNotEmpty(token);
-            return runWhenConnected(new ConsumePurchaseRequest(token), wrapListener(listener), mTag);
+            return execute(new ConsumePurchaseRequest(token), listener);
+        }
+
+        @Override
+        public int consume(@Nonnull List<String> tokens, @Nonnull RequestListener<Map<String, Integer>> listener) {
+            Check.isNotEmpty(tokens);
+            return execute(new ConsumePurchasesRequest(tokens), listener);
         }
 
         @Override
@@ -1046,6 +1465,47 @@ public final class Billing {
             }
         }
 
+        /**
+         * Same as {@link IsPurchasedListener} but for several SKUs: each page of purchases is
+         * scanned once and no more pages are requested as soon as all the SKUs are found.
+         */
+        private final class ArePurchasedListener implements CancellableRequestListener<Purchases> {
+            @Nonnull
+            private final Collection<String> mSkus;
+            @Nonnull
+            private final Map<String, Boolean> mPurchased;
+            @Nonnull
+            private final RequestListener<Map<String, Boolean>> mListener;
+            @Nonnull
+            private GetPurchasesRequest mRequest;
+
+            public ArePurchasedListener(@Nonnull Collection<String> skus, @Nonnull RequestListener<Map<String, Boolean>> listener) {
+                mSkus = new LinkedHashSet<>(skus);
+                mPurchased = new HashMap<>(mSkus.size());
+                mListener = listener;
+            }
+
+            @Override
+            public void onSuccess(@Nonnull Purchases purchases) {
+                if (purchases.collectPurchased(mSkus, mPurchased) || purchases.continuationToken == null) {
+                    mListener.onSuccess(Purchases.toPurchased(mSkus, mPurchased));
+                    return;
+                }
+                mRequest = new GetPurchasesRequest(mRequest, purchases.continuationToken);
+                runWhenConnected(mRequest, mTag);
+            }
+
+            @Override
+            public void onError(int response, @Nonnull Exception e) {
+                mListener.onError(response, e);
+            }
+
+            @Override
+            public void cancel() {
+                Billing.cancel(mListener);
+            }
+        }
+
         private final class GetAllPurchasesListener implements CancellableRequestListener<Purchases> {
             @Nonnull
             private final RequestListener<Purchases> mListener;
@@ -1083,56 +1543,28 @@ public final class Billing {
 
     }
 
-    private class CachingRequestListener<R> extends RequestListenerWrapper<R> {
+    private final class BillingSupportedListener implements CancellableRequestListener<Object> {
         @Nonnull
-        private final Request<R> mRequest;
+        private final String mProduct;
 
-        public CachingRequestListener(@Nonnull Request<R> request, @Nonnull RequestListener<R> listener) {
-            super(listener);
-            Check.isTrue(mCache.hasCache(), "Cache must exist");
-            this.mRequest = request;
+        BillingSupportedListener(@Nonnull String product) {
+            mProduct = product;
         }
 
         @Override
-        public void onSuccess(@Nonnull R result) {
-            final String key = mRequest.getCacheKey();
-            final RequestType type = mRequest.getType();
-            if (key != null) {
-                final long now = currentTimeMillis();
-                final Cache.Entry entry = new Cache.Entry(result, now + type.expiresIn);
-                mCache.putIfNotExist(type.getCacheKey(key), entry);
-            }
-            switch (type) {
-                case PURCHASE:
-                case CHANGE_PURCHASE:
-                case CONSUME_PURCHASE:
-                    // these requests might affect the state of purchases => we need to invalidate caches.
-                    // see Billing#onPurchaseFinished() also
-                    mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
-                    break;
-            }
-            super.onSuccess(result);
+        public void onSuccess(@Nonnull Object result) {
+            mBillingSupported.onLoaded(mProduct, true, true);
         }
 
         @Override
         public void onError(int response, @Nonnull Exception e) {
-            final RequestType type = mRequest.getType();
-            // sometimes it is possible that cached data is not synchronized with data on Google Play => we can
-            // clear caches if such situation occurs
-            switch (type) {
-                case PURCHASE:
-                case CHANGE_PURCHASE:
-                    if (response == ITEM_ALREADY_OWNED) {
-                        mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
-                    }
-                    break;
-                case CONSUME_PURCHASE:
-                    if (response == ITEM_NOT_OWNED) {
-                        mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
-                    }
-                    break;
-            }
-            super.onError(response, e);
+            // only "billing unavailable" is a definite answer, other errors might be temporary
+            mBillingSupported.onLoaded(mProduct, false, response == ResponseCodes.BILLING_UNAVAILABLE);
+        }
+
+        @Override
+        public void cancel() {
+            mBillingSupported.onCancelled(mProduct);
         }
     }
 
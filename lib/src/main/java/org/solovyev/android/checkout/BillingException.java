@@ -22,6 +22,8 @@
 
 package org.solovyev.android.checkout;
 
+import javax.annotation.Nonnull;
+
 /**
  * An exception that is passed in {@link RequestListener#onError(int, Exception)} if any error
  * occur. A response error code can be obtained through {@link #getResponse()} method.
@@ -34,6 +36,11 @@ public final class BillingException extends Exception {
         mResponse = response;
     }
 
+    BillingException(int response, @Nonnull Throwable cause) {
+        super(cause);
+        mResponse = response;
+    }
+
     /**
      * @return error code for which this exception was created
      * @see ResponseCodes
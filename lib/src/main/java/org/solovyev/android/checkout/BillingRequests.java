@@ -22,7 +22,9 @@
 
 package org.solovyev.android.checkout;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -112,6 +114,20 @@ public interface BillingRequests {
      */
     int isPurchased(@Nonnull String product, @Nonnull String sku, @Nonnull RequestListener<Boolean> listener);
 
+    /**
+     * Same as {@link #isPurchased(String, String, RequestListener)} but for several SKUs at once.
+     * The purchases are loaded only once and loading stops as soon as all the <var>skus</var> are
+     * found.
+     *
+     * @param product  product type, see {@link ProductTypes}
+     * @param skus     SKUs of items
+     * @param listener request listener, called asynchronously. The result contains an entry for
+     *                 each SKU (in the same order as <var>skus</var>), the value of which is true
+     *                 if the item is purchased
+     * @return request id
+     */
+    int arePurchased(@Nonnull String product, @Nonnull Collection<String> skus, @Nonnull RequestListener<Map<String, Boolean>> listener);
+
     /**
      * Requests a list of available SKUs of a <var>product</var> type.
      * See <a href="http://developer.android.com/google/play/billing/billing_integrate.html#QueryDetails">Querying
@@ -188,6 +204,21 @@ public interface BillingRequests {
      */
     int consume(@Nonnull String token, @Nonnull RequestListener<Object> listener);
 
+    /**
+     * Consumes several previously purchased items. The items are consumed one after another
+     * within one request and the result is delivered once for all of them. The request doesn't
+     * fail if some of the items can't be consumed: the passed map contains a response code for
+     * every token (in the same order as <var>tokens</var>), see {@link ResponseCodes}. If the
+     * connection to the billing service is lost the remaining items are not consumed and get
+     * {@link ResponseCodes#SERVICE_NOT_CONNECTED}.
+     *
+     * @param tokens   tokens which were provided with purchases, see {@link Purchase#token}, each
+     *                 token must be passed once
+     * @param listener request listener, called asynchronously
+     * @return request id
+     */
+    int consume(@Nonnull List<String> tokens, @Nonnull RequestListener<Map<String, Integer>> listener);
+
     /**
      * Cancels all pending requests created by this {@link BillingRequests} instance.
      */
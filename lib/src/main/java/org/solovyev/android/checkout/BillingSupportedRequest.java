@@ -48,6 +48,7 @@ final class BillingSupportedRequest extends Request<Object> {
     @Override
     public void start(@Nonnull IInAppBillingService service, @Nonnull String packageName) throws RemoteException {
         final int response = service.isBillingSupported(mApiVersion, packageName, mProduct);
+        trace(RequestTracer.Event.BINDER_RETURNED);
         if (!handleError(response)) {
             onSuccess(new Object());
         }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Keeps the results of the "is billing supported" checks shared by all {@link Checkout} objects
+ * of one {@link Billing} instance. Only definite answers of the billing service are remembered:
+ * any other error (for example, a connection failure) is delivered to the listeners waiting at
+ * that moment but is not stored, so the next subscriber triggers a new check.
+ */
+final class BillingSupportedSnapshot {
+
+    private final long mTimeToLive;
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    @GuardedBy("this")
+    @Nonnull
+    private final Set<String> mLoading = new HashSet<>();
+    @GuardedBy("this")
+    @Nonnull
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    BillingSupportedSnapshot(long timeToLive) {
+        mTimeToLive = timeToLive;
+    }
+
+    /**
+     * Copies all valid entries to <var>known</var>. If some products are missing the
+     * <var>listener</var> is subscribed to the further updates and the products which are not
+     * being loaded yet are returned (and marked as loading).
+     *
+     * @param listener listener to be notified about the missing products
+     * @param known    map to be filled with the known results
+     * @return products to be loaded by the caller
+     */
+    @Nonnull
+    synchronized List<String> subscribe(@Nonnull Listener listener, @Nonnull Map<String, Boolean> known) {
+        final List<String> toLoad = new ArrayList<>();
+        final long now = currentTimeMillis();
+        for (String product : ProductTypes.ALL) {
+            final Entry entry = mEntries.get(product);
+            if (entry != null && entry.mExpiresAt > now) {
+                known.put(product, entry.mSupported);
+            } else if (mLoading.add(product)) {
+                toLoad.add(product);
+            }
+        }
+        if (known.size() < ProductTypes.ALL.size() && !mListeners.contains(listener)) {
+            mListeners.add(listener);
+        }
+        return toLoad;
+    }
+
+    synchronized void unsubscribe(@Nonnull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @param product   product for which the check was done
+     * @param supported result of the check
+     * @param definite  true if the result was returned by the billing service and should be
+     *                  remembered
+     */
+    void onLoaded(@Nonnull String product, boolean supported, boolean definite) {
+        final List<Listener> listeners;
+        synchronized (this) {
+            mLoading.remove(product);
+            if (definite) {
+                mEntries.put(product, new Entry(supported, currentTimeMillis() + mTimeToLive));
+            }
+            listeners = new ArrayList<>(mListeners);
+        }
+        // listeners are called without holding the lock as they might acquire their own locks
+        for (Listener listener : listeners) {
+            listener.onBillingSupported(product, supported);
+        }
+    }
+
+    /**
+     * Should be called if the check was cancelled and no result is available.
+     */
+    synchronized void onCancelled(@Nonnull String product) {
+        mLoading.remove(product);
+    }
+
+    synchronized void invalidate() {
+        mEntries.clear();
+    }
+
+    interface Listener {
+        void onBillingSupported(@Nonnull String product, boolean supported);
+    }
+
+    private static final class Entry {
+        private final boolean mSupported;
+        private final long mExpiresAt;
+
+        private Entry(boolean supported, long expiresAt) {
+            mSupported = supported;
+            mExpiresAt = expiresAt;
+        }
+    }
+}
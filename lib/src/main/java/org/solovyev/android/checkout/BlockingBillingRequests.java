@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Synchronous counterpart of {@link BillingRequests}. Each method blocks the calling thread until
+ * the result is available or the timeout (passed to
+ * {@link Billing#newBlockingRequests(long, java.util.concurrent.TimeUnit)}) elapses. If the
+ * billing service is already connected the underlying request is executed directly on the calling
+ * thread, i.e. neither the request queue nor the result delivery executor are involved.
+ * <p>
+ * <b>Note</b>: the timeout bounds only the waiting for the connection and for the queued
+ * requests. A call to the billing service made on the calling thread can't be interrupted and
+ * is not limited by the timeout: the timeout is checked only between such calls (for example,
+ * between the pages of {@link #getAllPurchases(String)}).
+ * <p>
+ * Methods of this interface must not be called on the main application thread.
+ * Any error is reported via {@link BillingException}, see {@link BillingException#getResponse()}
+ * for the error code. {@link ResponseCodes#TIMEOUT} is used if the request doesn't finish in time.
+ */
+public interface BlockingBillingRequests {
+
+    /**
+     * Checks if billing v3 for the specified <var>product</var> is supported
+     *
+     * @param product product type, see {@link ProductTypes}
+     * @return true if billing is supported, false if the billing service reported
+     * {@link ResponseCodes#BILLING_UNAVAILABLE}
+     * @throws BillingException if any other error occurs
+     */
+    boolean isBillingSupported(@Nonnull String product) throws BillingException;
+
+    /**
+     * Same as {@link #isBillingSupported(String)} but with the explicit API version argument.
+     *
+     * @param apiVersion API version to check
+     */
+    boolean isBillingSupported(@Nonnull String product, int apiVersion) throws BillingException;
+
+    /**
+     * @see BillingRequests#getPurchases(String, String, RequestListener)
+     */
+    @Nonnull
+    Purchases getPurchases(@Nonnull String product, @Nullable String continuationToken) throws BillingException;
+
+    /**
+     * Same as {@link #getPurchases(String, String)} but loads all the purchases passing
+     * "continuationToken" until there are more items to load. The timeout is applied to the
+     * whole call and not to each page.
+     */
+    @Nonnull
+    Purchases getAllPurchases(@Nonnull String product) throws BillingException;
+
+    /**
+     * @see BillingRequests#isPurchased(String, String, RequestListener)
+     */
+    boolean isPurchased(@Nonnull String product, @Nonnull String sku) throws BillingException;
+
+    /**
+     * @see BillingRequests#arePurchased(String, Collection, RequestListener)
+     */
+    @Nonnull
+    Map<String, Boolean> arePurchased(@Nonnull String product, @Nonnull Collection<String> skus) throws BillingException;
+
+    /**
+     * @see BillingRequests#getSkus(String, List, RequestListener)
+     */
+    @Nonnull
+    Skus getSkus(@Nonnull String product, @Nonnull List<String> skus) throws BillingException;
+
+    /**
+     * @see BillingRequests#consume(String, RequestListener)
+     */
+    void consume(@Nonnull String token) throws BillingException;
+
+    /**
+     * @see BillingRequests#consume(List, RequestListener)
+     */
+    @Nonnull
+    Map<String, Integer> consume(@Nonnull List<String> tokens) throws BillingException;
+}
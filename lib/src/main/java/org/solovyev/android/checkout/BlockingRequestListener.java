@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Listener which allows a thread to wait for the result of a request, see
+ * {@link Billing#runBlocking(Request, long)}.
+ */
+final class BlockingRequestListener<R> implements CancellableRequestListener<R> {
+
+    @Nonnull
+    private final CountDownLatch mLatch = new CountDownLatch(1);
+    @GuardedBy("this")
+    @Nullable
+    private R mResult;
+    @GuardedBy("this")
+    private int mResponse;
+    @GuardedBy("this")
+    @Nullable
+    private Exception mException;
+
+    @Override
+    public synchronized void onSuccess(@Nonnull R result) {
+        if (mLatch.getCount() == 0) {
+            return;
+        }
+        mResult = result;
+        mLatch.countDown();
+    }
+
+    @Override
+    public synchronized void onError(int response, @Nonnull Exception e) {
+        if (mLatch.getCount() == 0) {
+            return;
+        }
+        mResponse = response;
+        mException = e;
+        mLatch.countDown();
+    }
+
+    @Override
+    public void cancel() {
+        // request might be cancelled, for example, if Billing is disconnected. The waiting thread
+        // should not wait for the timeout in such case
+        onError(ResponseCodes.EXCEPTION, new CancellationException("Request was cancelled"));
+    }
+
+    /**
+     * @return true if the result is available, false if the timeout elapsed
+     */
+    boolean await(long timeoutMillis) throws BillingException {
+        try {
+            return mLatch.await(timeoutMillis, MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BillingException(ResponseCodes.EXCEPTION, e);
+        }
+    }
+
+    @Nonnull
+    synchronized R getResult() throws BillingException {
+        Check.equals(0L, mLatch.getCount());
+        if (mException != null) {
+            if (mException instanceof BillingException) {
+                throw (BillingException) mException;
+            }
+            throw new BillingException(mResponse, mException);
+        }
+        Check.isNotNull(mResult);
+        return mResult;
+    }
+}
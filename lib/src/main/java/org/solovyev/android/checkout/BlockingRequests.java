@@ -0,0 +1,177 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * {@link BlockingBillingRequests} implementation which executes requests via
+ * {@link Billing#runBlocking(Request, long)}. Methods issuing several requests (for example,
+ * {@link #getAllPurchases(String)}) share the same deadline.
+ */
+final class BlockingRequests implements BlockingBillingRequests {
+
+    @Nonnull
+    private final Billing mBilling;
+    private final long mTimeout;
+
+    BlockingRequests(@Nonnull Billing billing, long timeout) {
+        mBilling = billing;
+        mTimeout = timeout;
+    }
+
+    @Override
+    public boolean isBillingSupported(@Nonnull String product) throws BillingException {
+        return isBillingSupported(product, Billing.V3);
+    }
+
+    @Override
+    public boolean isBillingSupported(@Nonnull String product, int apiVersion) throws BillingException {
+        Check.isNotEmpty(product);
+        try {
+            mBilling.runBlocking(new BillingSupportedRequest(product, apiVersion), mTimeout);
+            return true;
+        } catch (BillingException e) {
+            if (e.getResponse() == ResponseCodes.BILLING_UNAVAILABLE) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Purchases getPurchases(@Nonnull String product, @Nullable String continuationToken) throws BillingException {
+        Check.isNotEmpty(product);
+        return mBilling.runBlocking(newGetPurchasesRequest(product, continuationToken), mTimeout);
+    }
+
+    @Nonnull
+    @Override
+    public Purchases getAllPurchases(@Nonnull String product) throws BillingException {
+        Check.isNotEmpty(product);
+        final long deadline = newDeadline();
+        final List<Purchase> list = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            final Purchases purchases = mBilling.runBlocking(newGetPurchasesRequest(product, continuationToken), timeLeft(deadline));
+            list.addAll(purchases.list);
+            continuationToken = purchases.continuationToken;
+        } while (continuationToken != null);
+        return new Purchases(product, list, null);
+    }
+
+    @Override
+    public boolean isPurchased(@Nonnull String product, @Nonnull String sku) throws BillingException {
+        Check.isNotEmpty(product);
+        Check.isNotEmpty(sku);
+        final long deadline = newDeadline();
+        String continuationToken = null;
+        do {
+            final Purchases purchases = mBilling.runBlocking(newGetPurchasesRequest(product, continuationToken), timeLeft(deadline));
+            final Purchase purchase = purchases.getPurchase(sku);
+            if (purchase != null) {
+                return purchase.state == Purchase.State.PURCHASED;
+            }
+            continuationToken = purchases.continuationToken;
+        } while (continuationToken != null);
+        return false;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Boolean> arePurchased(@Nonnull String product, @Nonnull Collection<String> skus) throws BillingException {
+        Check.isNotEmpty(product);
+        Check.isNotEmpty(skus);
+        final long deadline = newDeadline();
+        final Collection<String> uniqueSkus = new LinkedHashSet<>(skus);
+        final Map<String, Boolean> purchased = new HashMap<>(uniqueSkus.size());
+        String continuationToken = null;
+        do {
+            final Purchases purchases = mBilling.runBlocking(newGetPurchasesRequest(product, continuationToken), timeLeft(deadline));
+            if (purchases.collectPurchased(uniqueSkus, purchased)) {
+                break;
+            }
+            continuationToken = purchases.continuationToken;
+        } while (continuationToken != null);
+        return Purchases.toPurchased(uniqueSkus, purchased);
+    }
+
+    @Nonnull
+    @Override
+    public Skus getSkus(@Nonnull String product, @Nonnull List<String> skus) throws BillingException {
+        Check.isNotEmpty(product);
+        Check.isNotEmpty(skus);
+        return mBilling.runBlocking(new GetSkuDetailsRequest(product, skus), mTimeout);
+    }
+
+    @Override
+    public void consume(@Nonnull String token) throws BillingException {
+        Check.isNotEmpty(token);
+        mBilling.runBlocking(new ConsumePurchaseRequest(token), mTimeout);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Integer> consume(@Nonnull List<String> tokens) throws BillingException {
+        Check.isNotEmpty(tokens);
+        return mBilling.runBlocking(new ConsumePurchasesRequest(tokens), mTimeout);
+    }
+
+    @Nonnull
+    private GetPurchasesRequest newGetPurchasesRequest(@Nonnull String product, @Nullable String continuationToken) {
+        return new GetPurchasesRequest(product, continuationToken, mBilling.getPurchaseVerifier(RequestType.GET_PURCHASES));
+    }
+
+    /**
+     * @return deadline of a call in terms of {@link System#nanoTime()} which, unlike the wall
+     * clock, doesn't jump when the time is changed
+     */
+    private long newDeadline() {
+        return nanoTime() + MILLISECONDS.toNanos(mTimeout);
+    }
+
+    /**
+     * @param deadline deadline returned from {@link #newDeadline()}
+     * @return milliseconds left until <var>deadline</var> (rounded up)
+     * @throws BillingException with {@link ResponseCodes#TIMEOUT} if the deadline has passed
+     */
+    private static long timeLeft(long deadline) throws BillingException {
+        final long timeLeft = deadline - nanoTime();
+        if (timeLeft <= 0) {
+            throw new BillingException(ResponseCodes.TIMEOUT);
+        }
+        return (timeLeft + MILLISECONDS.toNanos(1) - 1) / MILLISECONDS.toNanos(1);
+    }
+}
@@ -30,6 +30,9 @@ import javax.annotation.Nullable;
  * A {@link Billing} instance can be configured to use a concrete cache (or no cache) via
  * {@link Billing.Configuration#getCache()} method. The default cache implementation is created
  * in {@link Billing#newCache()} factory method.
+ * <p/>
+ * If {@link Billing#setSignatureCacheEnabled(boolean)} is enabled the cache also receives an
+ * entry of {@link Key#TYPE_SIGNATURES} type.
  *
  * @see Billing.Configuration#getCache()
  */
@@ -82,6 +85,17 @@ public interface Cache {
      * identifies the request's parameters (f.e. list of SKUs, product type, etc).
      */
     final class Key {
+        /**
+         * Type of the key of the verified purchases (see
+         * {@link Billing#setSignatureCacheEnabled(boolean)}). It doesn't match any request type,
+         * thus, the entry is not removed together with the cached purchases. The entry's data is
+         * a Base64 {@link String} of up to 43 000 characters.
+         */
+        public static final int TYPE_SIGNATURES = -1;
+
+        /**
+         * Type of the request which result is cached or {@link #TYPE_SIGNATURES}
+         */
         public final int type;
         @Nonnull
         public final String key;
@@ -113,7 +127,8 @@ public interface Cache {
 
         @Override
         public String toString() {
-            return RequestType.getCacheKeyName(type) + "_" + key;
+            final String name = type == TYPE_SIGNATURES ? "signatures" : RequestType.getCacheKeyName(type);
+            return name + "_" + key;
         }
     }
 
@@ -39,6 +39,7 @@ final class ChangePurchaseRequest extends Request<PendingIntent> {
     void start(@Nonnull IInAppBillingService service, @Nonnull String packageName) throws
             RemoteException, RequestException {
         final Bundle bundle = service.getBuyIntentToReplaceSkus(mApiVersion, packageName, mOldSkus, mNewSku, mProduct, mPayload == null ? "" : mPayload);
+        trace(RequestTracer.Event.BINDER_RETURNED);
         if (handleError(bundle)) {
             return;
         }
@@ -53,6 +53,12 @@ final class Check {
         }
     }
 
+    static void isNotMainThread() {
+        if (!sJunit && MainThread.isMainThread()) {
+            throw new AssertionException("Should not be called on the main thread");
+        }
+    }
+
     static void isNotNull(@Nullable Object o) {
         isNotNull(o, "Object should not be null");
     }
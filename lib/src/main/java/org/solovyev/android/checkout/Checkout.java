@@ -112,6 +112,26 @@ public class Checkout {
     private final Listeners mListeners = new Listeners();
     @Nonnull
     private final OnLoadExecutor mOnLoadExecutor = new OnLoadExecutor();
+    @Nonnull
+    private final BillingSupportedSnapshot.Listener mBillingSupportedListener = new BillingSupportedSnapshot.Listener() {
+        @Override
+        public void onBillingSupported(@Nonnull final String product, final boolean supported) {
+            final Executor executor;
+            synchronized (mLock) {
+                executor = mRequests != null ? mRequests.getDeliveryExecutor() : null;
+            }
+            if (executor == null) {
+                // checkout was stopped
+                return;
+            }
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Checkout.this.onBillingSupported(product, supported);
+                }
+            });
+        }
+    };
     @GuardedBy("mLock")
     private Billing.Requests mRequests;
     @GuardedBy("mLock")
@@ -152,7 +172,9 @@ public class Checkout {
 
     /**
      * Starts this {@link Checkout} and sends an initial request that checks whether billing is
-     * supported for each product available in the Billing API.
+     * supported for each product available in the Billing API. The results of such checks are
+     * shared between all {@link Checkout}s of the same {@link Billing}: if they are already
+     * known the <var>listener</var> is notified synchronously and no requests are sent.
      *
      * @param listener initial request listener
      */
@@ -168,18 +190,11 @@ public class Checkout {
             if (listener != null) {
                 mListeners.add(listener);
             }
-            for (final String product : ProductTypes.ALL) {
-                mRequests.isBillingSupported(product, new RequestListener<Object>() {
-                    @Override
-                    public void onSuccess(@Nonnull Object result) {
-                        onBillingSupported(product, true);
-                    }
-
-                    @Override
-                    public void onError(int response, @Nonnull Exception e) {
-                        onBillingSupported(product, false);
-                    }
-                });
+            // results shared by all the checkouts are applied immediately, the missing ones are
+            // loaded by Billing and delivered to mBillingSupportedListener
+            final Map<String, Boolean> known = mBilling.whenBillingSupported(mBillingSupportedListener);
+            for (Map.Entry<String, Boolean> entry : known.entrySet()) {
+                onBillingSupported(entry.getKey(), entry.getValue());
             }
         }
     }
@@ -223,9 +238,13 @@ public class Checkout {
 
     private void onBillingSupported(@Nonnull String product, boolean supported) {
         synchronized (mLock) {
+            if (mState != State.STARTED || mSupportedProducts.containsKey(product)) {
+                return;
+            }
             mSupportedProducts.put(product, supported);
             mListeners.onReady(mRequests, product, supported);
             if (isReady()) {
+                mBilling.removeBillingSupportedListener(mBillingSupportedListener);
                 mListeners.onReady(mRequests);
                 mListeners.clear();
             }
@@ -281,6 +300,7 @@ public class Checkout {
         Check.isMainThread();
 
         synchronized (mLock) {
+            mBilling.removeBillingSupportedListener(mBillingSupportedListener);
             mSupportedProducts.clear();
             mListeners.clear();
             if (mState != State.INITIAL) {
@@ -112,8 +112,10 @@ final class CheckoutInventory extends BaseInventory {
         private void loadSkus(@Nonnull BillingRequests requests, @Nonnull final Product product) {
             final List<String> skuIds = mTask.getRequest().getSkus(product.id);
             if (skuIds.isEmpty()) {
-                Billing.warning("There are no SKUs for \"" + product.id
-                        + "\" product. No SKU information will be loaded");
+                if (Billing.isWarningLoggable()) {
+                    Billing.warning("There are no SKUs for \"" + product.id
+                            + "\" product. No SKU information will be loaded");
+                }
                 synchronized (mLock) {
                     countDown();
                 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Executor which batches runnables passed to it: instead of posting every runnable separately
+ * only one runnable (draining the queue of the pending runnables) is posted to the underlying
+ * executor. The runnables are executed in the order they were passed to {@link #execute(Runnable)}
+ * and can be cancelled via {@link #cancel(Runnable)} until they are started.
+ * Used to reduce the number of the main thread messages when many results arrive at once.
+ * The underlying executor should post the runnables (see {@link MainThread#posting()}): if it
+ * runs them on the calling thread the next drain starts inside of the current one.
+ */
+final class CoalescingExecutor implements CancellableExecutor {
+
+    @Nonnull
+    private final CancellableExecutor mExecutor;
+    @GuardedBy("mQueue")
+    @Nonnull
+    private final Queue<Runnable> mQueue = new ArrayDeque<>();
+    @GuardedBy("mQueue")
+    private boolean mScheduled;
+    @Nonnull
+    private final Runnable mDrainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    CoalescingExecutor(@Nonnull CancellableExecutor executor) {
+        mExecutor = executor;
+    }
+
+    @Override
+    public void execute(@Nonnull Runnable runnable) {
+        synchronized (mQueue) {
+            mQueue.add(runnable);
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+        }
+        mExecutor.execute(mDrainer);
+    }
+
+    @Override
+    public void cancel(@Nonnull Runnable runnable) {
+        synchronized (mQueue) {
+            mQueue.remove(runnable);
+        }
+    }
+
+    /**
+     * Runs the runnables which were queued when the drain started. The runnables added while
+     * draining (f.e. by the runnables themselves) are left for the next drain, thus, one drain
+     * doesn't block the underlying executor (f.e. the main thread) for too long
+     */
+    private void drain() {
+        int count;
+        synchronized (mQueue) {
+            count = mQueue.size();
+        }
+        while (count-- > 0) {
+            final Runnable runnable;
+            synchronized (mQueue) {
+                runnable = mQueue.poll();
+            }
+            if (runnable == null) {
+                // some of the runnables have been cancelled
+                break;
+            }
+            boolean finished = false;
+            try {
+                runnable.run();
+                finished = true;
+            } finally {
+                if (!finished) {
+                    // let the exception propagate but don't lose the rest of the queue
+                    reschedule();
+                }
+            }
+        }
+        reschedule();
+    }
+
+    private void reschedule() {
+        synchronized (mQueue) {
+            if (mQueue.isEmpty()) {
+                mScheduled = false;
+                return;
+            }
+        }
+        mExecutor.execute(mDrainer);
+    }
+}
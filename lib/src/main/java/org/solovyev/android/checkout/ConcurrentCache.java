@@ -56,16 +56,22 @@ final class ConcurrentCache implements Cache {
         synchronized (this) {
             final Entry entry = mCache.get(key);
             if (entry == null) {
-                Billing.debug(TAG, "Key=" + key + " is not in the cache");
+                if (Billing.isDebugLoggable()) {
+                    Billing.debug(TAG, "Key=" + key + " is not in the cache");
+                }
                 return null;
             }
             final long now = currentTimeMillis();
             if (now >= entry.expiresAt) {
-                Billing.debug(TAG, "Key=" + key + " is in the cache but was expired at " + entry.expiresAt + ", now is " + now);
+                if (Billing.isDebugLoggable()) {
+                    Billing.debug(TAG, "Key=" + key + " is in the cache but was expired at " + entry.expiresAt + ", now is " + now);
+                }
                 mCache.remove(key);
                 return null;
             }
-            Billing.debug(TAG, "Key=" + key + " is in the cache");
+            if (Billing.isDebugLoggable()) {
+                Billing.debug(TAG, "Key=" + key + " is in the cache");
+            }
             return entry;
         }
 
@@ -77,7 +83,9 @@ final class ConcurrentCache implements Cache {
             return;
         }
         synchronized (this) {
-            Billing.debug(TAG, "Adding entry with key=" + key + " to the cache");
+            if (Billing.isDebugLoggable()) {
+                Billing.debug(TAG, "Adding entry with key=" + key + " to the cache");
+            }
             mCache.put(key, entry);
         }
     }
@@ -88,10 +96,14 @@ final class ConcurrentCache implements Cache {
         }
         synchronized (this) {
             if (mCache.get(key) == null) {
-                Billing.debug(TAG, "Adding entry with key=" + key + " to the cache");
+                if (Billing.isDebugLoggable()) {
+                    Billing.debug(TAG, "Adding entry with key=" + key + " to the cache");
+                }
                 mCache.put(key, entry);
             } else {
-                Billing.debug(TAG, "Entry with key=" + key + " is already in the cache, won't add");
+                if (Billing.isDebugLoggable()) {
+                    Billing.debug(TAG, "Entry with key=" + key + " is already in the cache, won't add");
+                }
             }
         }
     }
@@ -113,7 +125,9 @@ final class ConcurrentCache implements Cache {
             return;
         }
         synchronized (this) {
-            Billing.debug(TAG, "Removing entry with key=" + key + " from the cache");
+            if (Billing.isDebugLoggable()) {
+                Billing.debug(TAG, "Removing entry with key=" + key + " from the cache");
+            }
             mCache.remove(key);
         }
     }
@@ -124,7 +138,9 @@ final class ConcurrentCache implements Cache {
             return;
         }
         synchronized (this) {
-            Billing.debug(TAG, "Removing all entries with type=" + type + " from the cache");
+            if (Billing.isDebugLoggable()) {
+                Billing.debug(TAG, "Removing all entries with type=" + type + " from the cache");
+            }
             mCache.removeAll(type);
         }
     }
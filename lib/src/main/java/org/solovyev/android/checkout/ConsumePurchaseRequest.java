@@ -42,6 +42,7 @@ final class ConsumePurchaseRequest extends Request<Object> {
     @Override
     void start(@Nonnull IInAppBillingService service, @Nonnull String packageName) throws RemoteException, RequestException {
         final int response = service.consumePurchase(mApiVersion, packageName, mToken);
+        trace(RequestTracer.Event.BINDER_RETURNED);
         if (!handleError(response)) {
             Billing.waitGooglePlay();
             onSuccess(new Object());
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.solovyev.android.checkout.ResponseCodes.OK;
+
+/**
+ * Consumes several purchases in one go: binder calls are done one after another on the thread
+ * executing the request and the result is delivered once, as a map of purchase tokens to
+ * response codes (in the order of the tokens). Unlike {@link ConsumePurchaseRequest} this request
+ * doesn't fail if some tokens can't be consumed, the caller should check the response codes. If the
+ * connection to the billing service is lost the remaining tokens are not sent and get
+ * {@link ResponseCodes#SERVICE_NOT_CONNECTED}, the request fails only if nothing was consumed.
+ * The tokens must be unique: the second response for a token would replace the first one.
+ */
+final class ConsumePurchasesRequest extends Request<Map<String, Integer>> {
+
+    @Nonnull
+    private final List<String> mTokens;
+    private volatile boolean mConsumed;
+
+    ConsumePurchasesRequest(@Nonnull List<String> tokens) {
+        super(RequestType.CONSUME_PURCHASE);
+        Check.isTrue(new HashSet<>(tokens).size() == tokens.size(), "Tokens must be unique");
+        mTokens = new ArrayList<>(tokens);
+    }
+
+    @Override
+    void start(@Nonnull IInAppBillingService service, @Nonnull String packageName) throws RemoteException, RequestException {
+        final Map<String, Integer> responses = new LinkedHashMap<>(mTokens.size());
+        for (int i = 0; i < mTokens.size(); i++) {
+            if (isCancelled()) {
+                // see Billing#startRequest: the consumed purchases are invalidated there
+                return;
+            }
+            final String token = mTokens.get(i);
+            int response;
+            try {
+                response = service.consumePurchase(mApiVersion, packageName, token);
+                trace(RequestTracer.Event.BINDER_RETURNED);
+            } catch (RemoteException e) {
+                if (!mConsumed) {
+                    // nothing is consumed => fail the whole request
+                    throw e;
+                }
+                // the service is gone, there is no point in calling it for the rest of the
+                // tokens. The tokens consumed so far are reported instead of failing the request
+                if (Billing.isErrorLoggable()) {
+                    Billing.error("Exception while consuming " + token, e);
+                }
+                responses.put(token, ResponseCodes.EXCEPTION);
+                for (int j = i + 1; j < mTokens.size(); j++) {
+                    responses.put(mTokens.get(j), ResponseCodes.SERVICE_NOT_CONNECTED);
+                }
+                break;
+            } catch (RuntimeException e) {
+                // some tokens might have been already consumed, report them instead of failing
+                // the whole request
+                if (Billing.isErrorLoggable()) {
+                    Billing.error("Exception while consuming " + token, e);
+                }
+                response = ResponseCodes.EXCEPTION;
+            }
+            responses.put(token, response);
+            if (response == OK) {
+                mConsumed = true;
+            }
+        }
+        if (mConsumed) {
+            Billing.waitGooglePlay();
+        }
+        onSuccess(responses);
+    }
+
+    /**
+     * @return true if at least one purchase was consumed
+     */
+    boolean isConsumed() {
+        return mConsumed;
+    }
+
+    @Nullable
+    @Override
+    protected String getCacheKey() {
+        return null;
+    }
+}
@@ -10,76 +10,77 @@ import javax.annotation.concurrent.ThreadSafe;
  * Default logger implementation that logs to Android Log
  */
 @ThreadSafe
-class DefaultLogger implements Logger {
+class DefaultLogger implements LevelLogger {
 
     private boolean mEnabled = BuildConfig.DEBUG;
+    private int mLevel = Log.VERBOSE;
 
     @Override
     public void e(@Nonnull String tag, @Nonnull String msg) {
-        if (mEnabled) {
+        if (isLoggable(Log.ERROR)) {
             Log.e(tag, msg);
         }
     }
 
     @Override
     public void w(@Nonnull String tag, @Nonnull String msg) {
-        if (mEnabled) {
+        if (isLoggable(Log.WARN)) {
             Log.w(tag, msg);
         }
     }
 
     @Override
     public void i(@Nonnull String tag, @Nonnull String msg) {
-        if (mEnabled) {
+        if (isLoggable(Log.INFO)) {
             Log.i(tag, msg);
         }
     }
 
     @Override
     public void d(@Nonnull String tag, @Nonnull String msg) {
-        if (mEnabled) {
+        if (isLoggable(Log.DEBUG)) {
             Log.d(tag, msg);
         }
     }
 
     @Override
     public void v(@Nonnull String tag, @Nonnull String msg) {
-        if (mEnabled) {
+        if (isLoggable(Log.VERBOSE)) {
             Log.v(tag, msg);
         }
     }
 
     @Override
     public void e(@Nonnull String tag, @Nonnull String msg, @Nonnull Throwable e) {
-        if (mEnabled) {
+        if (isLoggable(Log.ERROR)) {
             Log.e(tag, msg, e);
         }
     }
 
     @Override
     public void w(@Nonnull String tag, @Nonnull String msg, @Nonnull Throwable e) {
-        if (mEnabled) {
+        if (isLoggable(Log.WARN)) {
             Log.w(tag, msg, e);
         }
     }
 
     @Override
     public void i(@Nonnull String tag, @Nonnull String msg, @Nonnull Throwable e) {
-        if (mEnabled) {
+        if (isLoggable(Log.INFO)) {
             Log.i(tag, msg, e);
         }
     }
 
     @Override
     public void d(@Nonnull String tag, @Nonnull String msg, @Nonnull Throwable e) {
-        if (mEnabled) {
+        if (isLoggable(Log.DEBUG)) {
             Log.d(tag, msg, e);
         }
     }
 
     @Override
     public void v(@Nonnull String tag, @Nonnull String msg, @Nonnull Throwable e) {
-        if (mEnabled) {
+        if (isLoggable(Log.VERBOSE)) {
             Log.v(tag, msg, e);
         }
     }
@@ -87,4 +88,16 @@ class DefaultLogger implements Logger {
     public void setEnabled(boolean enabled) {
         mEnabled = enabled;
     }
+
+    /**
+     * @param level minimum level of the logged messages, see {@link LevelLogger#isLoggable(int)}
+     */
+    public void setLevel(int level) {
+        mLevel = level;
+    }
+
+    @Override
+    public boolean isLoggable(int level) {
+        return mEnabled && level >= mLevel;
+    }
 }
@@ -24,37 +24,184 @@ package org.solovyev.android.checkout;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import static android.text.TextUtils.isEmpty;
 
 /**
  * Checks a purchase signature using the default Android implementation - {@link Security} class.
+ * The public key and the {@link java.security.Signature} objects are reused between the
+ * verifications, see {@link SignatureVerifier}.
+ * Long lists of purchases are verified in parallel: the list is split into chunks which are
+ * picked up one by one by the calling thread and by the threads of {@link VerifierExecutor} (the
+ * threads which are done take the remaining chunks, so a slow thread doesn't delay the result).
+ * The calling thread always takes part in the verification, thus, the result
+ * is ready even if the pool is busy. The order of the purchases is preserved and the listener is
+ * called on the calling thread.
  */
 class DefaultPurchaseVerifier implements PurchaseVerifier {
 
+    /**
+     * Lists shorter than this are verified on the calling thread
+     */
+    static final int MIN_PARALLEL_SIZE = 8;
+    private static final int MIN_CHUNK_SIZE = 2;
+
     @Nonnull
-    private final String mPublicKey;
+    private final SignatureVerifier mVerifier;
+    @Nullable
+    private final Executor mExecutor;
+    private final int mParallelism;
 
     public DefaultPurchaseVerifier(@Nonnull String publicKey) {
-        mPublicKey = publicKey;
+        this(publicKey, null, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param executor    executor which runs the helper threads, null for {@link VerifierExecutor}
+     * @param parallelism maximum number of threads verifying one list (including the calling
+     *                    thread)
+     */
+    DefaultPurchaseVerifier(@Nonnull String publicKey, @Nullable Executor executor, int parallelism) {
+        this(new SignatureVerifier(publicKey), executor, parallelism);
+    }
+
+    DefaultPurchaseVerifier(@Nonnull SignatureVerifier verifier, @Nullable Executor executor, int parallelism) {
+        mVerifier = verifier;
+        mParallelism = Math.max(1, parallelism);
+        if (executor == null && mParallelism > 1) {
+            executor = VerifierExecutor.INSTANCE;
+        }
+        mExecutor = executor;
+    }
+
+    /**
+     * @param cache cache where the outcomes of the verification are stored between the
+     *              application runs, see {@link SignatureVerifier}
+     */
+    void setCache(@Nullable Cache cache) {
+        mVerifier.setCache(cache);
     }
 
     @Override
     public void verify(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
-        final List<Purchase> verifiedPurchases = new ArrayList<Purchase>(purchases.size());
-        for (Purchase purchase : purchases) {
-            if (Security.verifyPurchase(mPublicKey, purchase.data, purchase.signature)) {
-                verifiedPurchases.add(purchase);
-            } else {
+        final int size = purchases.size();
+        final boolean[] verified = new boolean[size];
+        if (mExecutor == null || size < MIN_PARALLEL_SIZE) {
+            verify(purchases, verified, 0, size);
+        } else {
+            new Batch(purchases, verified).run(mExecutor);
+        }
+        final List<Purchase> verifiedPurchases = new ArrayList<Purchase>(size);
+        for (int i = 0; i < size; i++) {
+            if (verified[i]) {
+                verifiedPurchases.add(purchases.get(i));
+            }
+        }
+        mVerifier.save();
+        listener.onSuccess(verifiedPurchases);
+    }
+
+    private void verify(@Nonnull List<Purchase> purchases, @Nonnull boolean[] verified, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final Purchase purchase = purchases.get(i);
+            verified[i] = mVerifier.verify(purchase.data, purchase.signature);
+            if (!verified[i]) {
                 if (isEmpty(purchase.signature)) {
-                    Billing.error("Cannot verify purchase: " + purchase + ". Signature is empty");
+                    if (Billing.isErrorLoggable()) {
+                        Billing.error("Cannot verify purchase: " + purchase + ". Signature is empty");
+                    }
                 } else {
-                    Billing.error("Cannot verify purchase: " + purchase + ". Wrong signature");
+                    if (Billing.isErrorLoggable()) {
+                        Billing.error("Cannot verify purchase: " + purchase + ". Wrong signature");
+                    }
                 }
             }
         }
-        listener.onSuccess(verifiedPurchases);
+    }
+
+    /**
+     * Verification of one list split into chunks. The chunks are taken in order by whichever
+     * thread is free, the results are written to the shared array (each index is written by one
+     * thread only and read after {@link #mDone} is released)
+     */
+    private final class Batch implements Runnable {
+        @Nonnull
+        private final List<Purchase> mPurchases;
+        @Nonnull
+        private final boolean[] mVerified;
+        private final int mChunkSize;
+        private final int mChunks;
+        @Nonnull
+        private final AtomicInteger mNext = new AtomicInteger();
+        @Nonnull
+        private final CountDownLatch mDone;
+        @Nullable
+        private volatile RuntimeException mException;
+
+        private Batch(@Nonnull List<Purchase> purchases, @Nonnull boolean[] verified) {
+            mPurchases = purchases;
+            mVerified = verified;
+            // several chunks per thread for better balancing
+            mChunkSize = Math.max(MIN_CHUNK_SIZE, purchases.size() / (4 * mParallelism));
+            mChunks = (purchases.size() + mChunkSize - 1) / mChunkSize;
+            mDone = new CountDownLatch(mChunks);
+        }
+
+        void run(@Nonnull Executor executor) {
+            final int helpers = Math.min(mParallelism, mChunks) - 1;
+            for (int i = 0; i < helpers; i++) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // the calling thread does the rest
+                    break;
+                }
+            }
+            run();
+            await();
+            final RuntimeException exception = mException;
+            if (exception != null) {
+                throw exception;
+            }
+        }
+
+        @Override
+        public void run() {
+            int chunk = mNext.getAndIncrement();
+            while (chunk < mChunks) {
+                try {
+                    final int from = chunk * mChunkSize;
+                    verify(mPurchases, mVerified, from, Math.min(from + mChunkSize, mPurchases.size()));
+                } catch (RuntimeException e) {
+                    mException = e;
+                } finally {
+                    mDone.countDown();
+                }
+                chunk = mNext.getAndIncrement();
+            }
+        }
+
+        private void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    mDone.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // the helpers write to the shared array => we can't leave before they are done
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
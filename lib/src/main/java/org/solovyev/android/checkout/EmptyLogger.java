@@ -2,7 +2,7 @@ package org.solovyev.android.checkout;
 
 import javax.annotation.Nonnull;
 
-final class EmptyLogger implements Logger {
+final class EmptyLogger implements LevelLogger {
     @Override
     public void v(@Nonnull String tag, @Nonnull String msg) {
     }
@@ -42,4 +42,9 @@ final class EmptyLogger implements Logger {
     @Override
     public void e(@Nonnull String tag, @Nonnull String msg, @Nonnull Throwable e) {
     }
+
+    @Override
+    public boolean isLoggable(int level) {
+        return false;
+    }
 }
@@ -74,6 +74,7 @@ final class GetPurchasesRequest extends Request<Purchases> {
     @Override
     void start(@Nonnull IInAppBillingService service, @Nonnull String packageName) throws RemoteException {
         final Bundle bundle = service.getPurchases(mApiVersion, packageName, mProduct, mContinuationToken);
+        trace(RequestTracer.Event.BINDER_RETURNED);
         if (handleError(bundle)) {
             return;
         }
@@ -85,6 +86,7 @@ final class GetPurchasesRequest extends Request<Purchases> {
                 return;
             }
             final VerificationListener listener = new VerificationListener(this, mProduct, continuationToken);
+            trace(RequestTracer.Event.VERIFICATION_STARTED);
             mVerifier.verify(purchases, listener);
             if (!listener.mCalled) {
                 listener.onError(ResponseCodes.EXCEPTION, new IllegalStateException("Either onSuccess or onError methods must be called by PurchaseVerifier"));
@@ -126,6 +128,7 @@ final class GetPurchasesRequest extends Request<Purchases> {
         public void onSuccess(@Nonnull List<Purchase> verifiedPurchases) {
             Check.equals(mOriginalThread, Thread.currentThread(), "Must be called on the same thread");
             mCalled = true;
+            mRequest.trace(RequestTracer.Event.VERIFICATION_FINISHED);
             mRequest.onSuccess(new Purchases(mProduct, verifiedPurchases, mContinuationToken));
         }
 
@@ -133,6 +136,7 @@ final class GetPurchasesRequest extends Request<Purchases> {
         public void onError(int response, @Nonnull Exception e) {
             Check.equals(mOriginalThread, Thread.currentThread(), "Must be called on the same thread");
             mCalled = true;
+            mRequest.trace(RequestTracer.Event.VERIFICATION_FINISHED);
             if (response == EXCEPTION) {
                 mRequest.onError(e);
             } else {
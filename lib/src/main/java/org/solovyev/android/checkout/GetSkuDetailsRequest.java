@@ -78,6 +78,7 @@ final class GetSkuDetailsRequest extends Request<Skus> {
         final Bundle skusBundle = new Bundle();
         skusBundle.putStringArrayList("ITEM_ID_LIST", skuBatch);
         final Bundle bundle = service.getSkuDetails(Billing.V3, packageName, mProduct, skusBundle);
+        trace(RequestTracer.Event.BINDER_RETURNED);
         if (!handleError(bundle)) {
             return Skus.fromBundle(bundle, mProduct);
         }
@@ -24,6 +24,7 @@ package org.solovyev.android.checkout;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -181,6 +182,12 @@ public interface Inventory {
         @Nonnull
         final List<Sku> mSkus = new ArrayList<>();
 
+        /**
+         * Index of {@link #mPurchases} by SKU, created on the first lookup
+         */
+        @Nullable
+        private volatile PurchaseIndex mIndex;
+
         Product(@Nonnull String id, boolean supported) {
             ProductTypes.checkSupported(id);
             this.id = id;
@@ -201,7 +208,12 @@ public interface Inventory {
 
         @Nullable
         public Purchase getPurchaseInState(@Nonnull String sku, @Nonnull Purchase.State state) {
-            return Purchases.getPurchaseInState(mPurchases, sku, state);
+            PurchaseIndex index = mIndex;
+            if (index == null) {
+                index = PurchaseIndex.create(mPurchases);
+                mIndex = index;
+            }
+            return index.get(sku, state);
         }
 
         @Nullable
@@ -222,6 +234,7 @@ public interface Inventory {
             Check.isTrue(mPurchases.isEmpty(), "Must be called only once");
             mPurchases.addAll(Purchases.neutralize(purchases));
             sort(mPurchases, PurchaseComparator.latestFirst());
+            mIndex = null;
         }
 
         /**
@@ -341,6 +354,45 @@ public interface Inventory {
             return this;
         }
 
+        /**
+         * Adds everything requested in <var>request</var> to this request
+         *
+         * @param request request to be merged into this one
+         * @return true if this request has changed
+         */
+        boolean merge(@Nonnull Request request) {
+            boolean changed = mProducts.addAll(request.mProducts);
+            for (Map.Entry<String, List<String>> entry : request.mSkus.entrySet()) {
+                final List<String> skus = mSkus.get(entry.getKey());
+                for (String sku : entry.getValue()) {
+                    if (!skus.contains(sku)) {
+                        skus.add(sku);
+                        changed = true;
+                    }
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * @return string which is the same for all the requests loading the same data (regardless
+         * of the order in which products and SKUs were added)
+         */
+        @Nonnull
+        String getFingerprint() {
+            final StringBuilder sb = new StringBuilder();
+            for (String product : ProductTypes.ALL) {
+                sb.append(product).append(mProducts.contains(product) ? '+' : '-');
+                final List<String> skus = new ArrayList<>(mSkus.get(product));
+                Collections.sort(skus);
+                for (String sku : skus) {
+                    sb.append(sku).append('\n');
+                }
+                sb.append(';');
+            }
+            return sb.toString();
+        }
+
         boolean shouldLoadSkus(@Nonnull String product) {
             ProductTypes.checkSupported(product);
             return !mSkus.get(product).isEmpty();
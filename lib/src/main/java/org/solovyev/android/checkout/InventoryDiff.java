@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Difference between two snapshots of purchases and SKUs: either two {@link Purchases} or two
+ * {@link Inventory.Products}. Can be used to update UI or an entitlement storage incrementally
+ * instead of refreshing everything after each {@link Inventory#load(Inventory.Request,
+ * Inventory.Callback)}.
+ * <p/>
+ * Purchases of the snapshots are matched by their product, {@link Purchase#sku} and
+ * {@link Purchase#token}: a new purchase of the same SKU (for example, after a consumption) is
+ * reported as added (and the old one, if it is still in the old snapshot, as removed). SKUs are
+ * matched by {@link Sku#id}.
+ */
+@Immutable
+public final class InventoryDiff {
+
+    @Nonnull
+    private static final InventoryDiff EMPTY = new Builder().build();
+
+    /**
+     * Purchases which exist only in the new snapshot, in the order of the new snapshot
+     */
+    @Nonnull
+    public final List<Purchase> added;
+
+    /**
+     * Purchases which exist only in the old snapshot, in the order of the old snapshot
+     */
+    @Nonnull
+    public final List<Purchase> removed;
+
+    /**
+     * Purchases which exist in both snapshots but have different {@link Purchase#state}, in the
+     * order of the new snapshot
+     */
+    @Nonnull
+    public final List<Change<Purchase>> stateChanged;
+
+    /**
+     * SKUs which exist in both snapshots but have different {@link Sku#price} or
+     * {@link Sku#detailedPrice}, in the order of the new snapshot
+     */
+    @Nonnull
+    public final List<Change<Sku>> priceChanged;
+
+    private InventoryDiff(@Nonnull Builder builder) {
+        added = unmodifiableList(builder.mAdded);
+        removed = unmodifiableList(builder.mRemoved);
+        stateChanged = unmodifiableList(builder.mStateChanged);
+        priceChanged = unmodifiableList(builder.mPriceChanged);
+    }
+
+    /**
+     * @param from old purchases
+     * @param to   new purchases, must be of the same product as <var>from</var>
+     * @return difference between <var>from</var> and <var>to</var>
+     */
+    @Nonnull
+    public static InventoryDiff between(@Nonnull Purchases from, @Nonnull Purchases to) {
+        Check.equals(from.product, to.product);
+        if (from == to) {
+            return EMPTY;
+        }
+        final Builder builder = new Builder();
+        builder.diffPurchases(from.list, to.list);
+        return builder.build();
+    }
+
+    /**
+     * Compares purchases and SKUs of each product. Note that purchases which were not requested
+     * in either of the {@link Inventory.Request}s (and thus are not loaded) are reported as
+     * removed/added. SKUs are only checked for price changes: SKUs which exist only in one of the
+     * snapshots are not reported.
+     *
+     * @param from old products
+     * @param to   new products
+     * @return difference between <var>from</var> and <var>to</var>
+     */
+    @Nonnull
+    public static InventoryDiff between(@Nonnull Inventory.Products from, @Nonnull Inventory.Products to) {
+        if (from == to) {
+            return EMPTY;
+        }
+        final Builder builder = new Builder();
+        for (String product : ProductTypes.ALL) {
+            final Inventory.Product oldProduct = from.get(product);
+            final Inventory.Product newProduct = to.get(product);
+            builder.diffPurchases(oldProduct.mPurchases, newProduct.mPurchases);
+            builder.diffSkus(oldProduct.mSkus, newProduct.mSkus);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return true if the snapshots contain the same purchases (in the same states) and the same
+     * SKU prices
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && stateChanged.isEmpty() && priceChanged.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "InventoryDiff{" +
+                "added=" + added.size() +
+                ", removed=" + removed.size() +
+                ", stateChanged=" + stateChanged.size() +
+                ", priceChanged=" + priceChanged.size() +
+                '}';
+    }
+
+    /**
+     * Same entity (purchase or SKU) in the old and in the new snapshots
+     */
+    @Immutable
+    public static final class Change<T> {
+        @Nonnull
+        public final T before;
+        @Nonnull
+        public final T after;
+
+        private Change(@Nonnull T before, @Nonnull T after) {
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private static final class Builder {
+        @Nonnull
+        private final List<Purchase> mAdded = new ArrayList<>();
+        @Nonnull
+        private final List<Purchase> mRemoved = new ArrayList<>();
+        @Nonnull
+        private final List<Change<Purchase>> mStateChanged = new ArrayList<>();
+        @Nonnull
+        private final List<Change<Sku>> mPriceChanged = new ArrayList<>();
+
+        @Nonnull
+        private static String key(@Nonnull Purchase purchase) {
+            return purchase.sku + '\n' + purchase.token;
+        }
+
+        private static boolean samePrice(@Nonnull Sku l, @Nonnull Sku r) {
+            return l.price.equals(r.price)
+                    && l.detailedPrice.amount == r.detailedPrice.amount
+                    && l.detailedPrice.currency.equals(r.detailedPrice.currency);
+        }
+
+        void diffPurchases(@Nonnull List<Purchase> from, @Nonnull List<Purchase> to) {
+            final Map<String, Purchase> old = new HashMap<>(2 * from.size());
+            for (int i = from.size() - 1; i >= 0; i--) {
+                // iterate backwards: the first of the duplicates wins
+                final Purchase purchase = from.get(i);
+                old.put(key(purchase), purchase);
+            }
+            final Map<String, Purchase> matched = new HashMap<>(2 * to.size());
+            for (Purchase purchase : to) {
+                final String key = key(purchase);
+                if (matched.containsKey(key)) {
+                    // duplicate in the new snapshot
+                    continue;
+                }
+                final Purchase before = old.get(key);
+                matched.put(key, before);
+                if (before == null) {
+                    mAdded.add(purchase);
+                } else if (before.state != purchase.state) {
+                    mStateChanged.add(new Change<>(before, purchase));
+                }
+            }
+            for (Purchase purchase : from) {
+                final String key = key(purchase);
+                if (old.get(key) == purchase && !matched.containsKey(key)) {
+                    mRemoved.add(purchase);
+                }
+            }
+        }
+
+        void diffSkus(@Nonnull List<Sku> from, @Nonnull List<Sku> to) {
+            if (from.isEmpty() || to.isEmpty()) {
+                // nothing to compare
+                return;
+            }
+            final Map<String, Sku> old = new HashMap<>(2 * from.size());
+            for (int i = from.size() - 1; i >= 0; i--) {
+                final Sku sku = from.get(i);
+                old.put(sku.id.code, sku);
+            }
+            for (Sku sku : to) {
+                final Sku before = old.remove(sku.id.code);
+                if (before != null && !samePrice(before, sku)) {
+                    mPriceChanged.add(new Change<>(before, sku));
+                }
+            }
+        }
+
+        @Nonnull
+        InventoryDiff build() {
+            return new InventoryDiff(this);
+        }
+    }
+}
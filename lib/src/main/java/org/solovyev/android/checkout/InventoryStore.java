@@ -0,0 +1,431 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Process-wide store of the loaded {@link Inventory.Products}, one entry for each distinct
+ * {@link Inventory.Request} (requests which load the same data share the entry regardless of the
+ * order in which products and SKUs were added to them). Each {@link Billing} has one store, see
+ * {@link Billing#getInventoryStore()}.
+ * <p/>
+ * {@link #get(Inventory.Request)} can be called on any thread: it never blocks and returns the
+ * last loaded products. If there are no products yet or if they are too old according to the
+ * {@link FreshnessPolicy} a load is started in the background (at most one load per entry at a
+ * time). Purchases, consumptions and the out-of-sync responses of the billing service make all
+ * the entries stale, i.e. the next read of each entry refreshes it. At most
+ * {@link #MAX_ENTRIES} entries are kept, the least recently read one is removed first.
+ * <p/>
+ * The loads are done by a {@link Checkout} which is kept for {@link #KEEP_ALIVE_MILLIS} after the
+ * last load, so that the periodic refreshes don't connect to and disconnect from the billing
+ * service each time. {@link ObservableInventory} loads through the store as well: the products
+ * loaded for its subscribers are returned by {@link #get(Inventory.Request)} and vice versa.
+ */
+public final class InventoryStore {
+
+    /**
+     * Decides whether the stored products must be reloaded
+     */
+    public interface FreshnessPolicy {
+        /**
+         * Called on the thread reading the store, must not block.
+         *
+         * @param products products loaded <var>age</var> milliseconds ago
+         * @param age      age of the products in milliseconds, {@link Long#MAX_VALUE} if the
+         *                 products were invalidated
+         * @return true if the products should be reloaded
+         */
+        boolean isStale(@Nonnull Inventory.Products products, long age);
+    }
+
+    static final long KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final int MAX_ENTRIES = 32;
+
+    @Nonnull
+    private final Billing mBilling;
+    @Nonnull
+    private final ConcurrentMap<String, Entry> mEntries = new ConcurrentHashMap<>();
+    @Nonnull
+    private volatile FreshnessPolicy mFreshnessPolicy = maxAge(RequestType.GET_PURCHASES.expiresIn);
+    /**
+     * Incremented on each invalidation: the products loaded in an earlier generation are stale
+     */
+    @Nonnull
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    /**
+     * Incremented on each read, orders the entries for the eviction
+     */
+    @Nonnull
+    private final AtomicLong mReads = new AtomicLong();
+    @Nonnull
+    private final Handler mHandler;
+    @Nonnull
+    private final Runnable mStopper = new Runnable() {
+        @Override
+        public void run() {
+            stopIfIdle();
+        }
+    };
+    /**
+     * Checkout used for loading, exists only while something is being loaded and for
+     * {@link #KEEP_ALIVE_MILLIS} after that. Accessed only on the main application thread.
+     */
+    @Nullable
+    private Checkout mCheckout;
+    @Nullable
+    private Inventory mInventory;
+    private int mLoads;
+
+    /**
+     * @param billing billing which requests are used for loading
+     * @param handler handler of the main thread, the same as the one {@link Billing} uses
+     */
+    InventoryStore(@Nonnull Billing billing, @Nonnull Handler handler) {
+        mBilling = billing;
+        mHandler = handler;
+    }
+
+    /**
+     * @param maxAge maximum age of the products in milliseconds
+     * @return policy which reloads the products older than <var>maxAge</var>
+     */
+    @Nonnull
+    public static FreshnessPolicy maxAge(final long maxAge) {
+        Check.isTrue(maxAge >= 0, "Max age can't be negative");
+        return new FreshnessPolicy() {
+            @Override
+            public boolean isStale(@Nonnull Inventory.Products products, long age) {
+                return age > maxAge;
+            }
+        };
+    }
+
+    /**
+     * Sets the policy used by the subsequent reads. By default the products are reloaded when
+     * they are older than the purchases cache entries.
+     *
+     * @param policy freshness policy
+     */
+    public void setFreshnessPolicy(@Nonnull FreshnessPolicy policy) {
+        mFreshnessPolicy = policy;
+    }
+
+    /**
+     * Returns the last loaded products for <var>request</var> and, if needed, starts reloading
+     * them. Can be called on any thread, never blocks.
+     *
+     * @param request request which defines the data to be loaded
+     * @return last loaded products, null if nothing was loaded yet
+     */
+    @Nullable
+    public Inventory.Products get(@Nonnull Inventory.Request request) {
+        final Entry entry = getEntry(request);
+        final Snapshot snapshot = entry.mSnapshot;
+        if (snapshot == null || isStale(snapshot)) {
+            refresh(entry);
+        }
+        return snapshot != null ? snapshot.mProducts : null;
+    }
+
+    /**
+     * Starts reloading the products for <var>request</var> (unless they are already being
+     * loaded). Can be called on any thread.
+     *
+     * @param request request which defines the data to be loaded
+     */
+    public void refresh(@Nonnull Inventory.Request request) {
+        refresh(getEntry(request));
+    }
+
+    /**
+     * @return last loaded products for <var>request</var>, null if nothing was loaded yet. Unlike
+     * {@link #get(Inventory.Request)} never starts a load.
+     */
+    @Nullable
+    Inventory.Products peek(@Nonnull Inventory.Request request) {
+        final Entry entry = mEntries.get(request.getFingerprint());
+        if (entry == null) {
+            return null;
+        }
+        final Snapshot snapshot = entry.mSnapshot;
+        return snapshot != null ? snapshot.mProducts : null;
+    }
+
+    /**
+     * Loads the products for <var>request</var> and passes them to <var>callback</var> on the main
+     * application thread. The products are stored as if they were loaded for
+     * {@link #get(Inventory.Request)}. A load which is already running is not reused as it might
+     * have started before the products changed: <var>callback</var> gets the products of the next
+     * load.
+     *
+     * @param request  request which defines the data to be loaded
+     * @param callback callback to be notified
+     */
+    void load(@Nonnull Inventory.Request request, @Nonnull Inventory.Callback callback) {
+        Check.isMainThread();
+        final Entry entry = getEntry(request);
+        entry.mCallbacks.add(new PendingCallback(callback, entry.mLoadsStarted));
+        if (entry.mLoading.compareAndSet(false, true)) {
+            load(entry);
+        }
+    }
+
+    /**
+     * Removes all the stored products
+     */
+    public void clear() {
+        invalidate();
+        mEntries.clear();
+    }
+
+    boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * Makes all the stored products stale. Can be called on any thread.
+     */
+    void invalidate() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return true if the {@link Checkout} used for loading is running
+     */
+    boolean isLoaderStarted() {
+        Check.isMainThread();
+        return mCheckout != null;
+    }
+
+    private boolean isStale(@Nonnull Snapshot snapshot) {
+        final long age = snapshot.mGeneration != mGeneration.get() ? Long.MAX_VALUE : currentTimeMillis() - snapshot.mLoadedAt;
+        return mFreshnessPolicy.isStale(snapshot.mProducts, age);
+    }
+
+    @Nonnull
+    private Entry getEntry(@Nonnull Inventory.Request request) {
+        final String fingerprint = request.getFingerprint();
+        final Entry entry = mEntries.get(fingerprint);
+        if (entry != null) {
+            entry.mLastRead = mReads.incrementAndGet();
+            return entry;
+        }
+        final Entry newEntry = new Entry(request);
+        newEntry.mLastRead = mReads.incrementAndGet();
+        final Entry oldEntry = mEntries.putIfAbsent(fingerprint, newEntry);
+        if (oldEntry != null) {
+            return oldEntry;
+        }
+        if (mEntries.size() > MAX_ENTRIES) {
+            evict(newEntry);
+        }
+        return newEntry;
+    }
+
+    /**
+     * Removes the least recently read entry which is not being loaded
+     */
+    private void evict(@Nonnull Entry newEntry) {
+        Map.Entry<String, Entry> eldest = null;
+        for (Map.Entry<String, Entry> candidate : mEntries.entrySet()) {
+            final Entry entry = candidate.getValue();
+            if (entry == newEntry || entry.mLoading.get()) {
+                continue;
+            }
+            if (eldest == null || entry.mLastRead < eldest.getValue().mLastRead) {
+                eldest = candidate;
+            }
+        }
+        if (eldest != null) {
+            mEntries.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void refresh(@Nonnull final Entry entry) {
+        if (!entry.mLoading.compareAndSet(false, true)) {
+            return;
+        }
+        mBilling.getMainThread(false).execute(new Runnable() {
+            @Override
+            public void run() {
+                load(entry);
+            }
+        });
+    }
+
+    private void load(@Nonnull final Entry entry) {
+        Check.isMainThread();
+        mHandler.removeCallbacks(mStopper);
+        if (mInventory == null) {
+            mCheckout = Checkout.forApplication(mBilling);
+            mCheckout.start();
+            mInventory = mCheckout.makeInventory();
+        }
+        mLoads++;
+        final int load = ++entry.mLoadsStarted;
+        // the products loaded after an invalidation which happens during the load are stale
+        final int generation = mGeneration.get();
+        mInventory.load(entry.mRequest, new Inventory.Callback() {
+            @Override
+            public void onLoaded(@Nonnull final Inventory.Products products) {
+                entry.mSnapshot = new Snapshot(products, currentTimeMillis(), generation);
+                mBilling.getMainThread(false).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoadFinished(entry, load, products);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoadFinished(@Nonnull Entry entry, int load, @Nonnull Inventory.Products products) {
+        Check.isMainThread();
+        entry.mLoading.set(false);
+        final List<Inventory.Callback> callbacks = entry.removeCallbacks(load);
+        if (!entry.mCallbacks.isEmpty() && entry.mLoading.compareAndSet(false, true)) {
+            // callbacks added during the load wait for the next one
+            load(entry);
+        }
+        for (Inventory.Callback callback : callbacks) {
+            callback.onLoaded(products);
+        }
+        mLoads--;
+        Check.isTrue(mLoads >= 0, "Can't be negative");
+        if (mLoads == 0) {
+            mHandler.postDelayed(mStopper, KEEP_ALIVE_MILLIS);
+        }
+    }
+
+    private void stopIfIdle() {
+        Check.isMainThread();
+        if (mLoads == 0 && mCheckout != null) {
+            mCheckout.stop();
+            mCheckout = null;
+            mInventory = null;
+        }
+    }
+
+    /**
+     * Products loaded for an entry together with the time and the generation of the load
+     */
+    @Immutable
+    private static final class Snapshot {
+        @Nonnull
+        private final Inventory.Products mProducts;
+        private final long mLoadedAt;
+        private final int mGeneration;
+
+        private Snapshot(@Nonnull Inventory.Products products, long loadedAt, int generation) {
+            mProducts = products;
+            mLoadedAt = loadedAt;
+            mGeneration = generation;
+        }
+    }
+
+    /**
+     * Callback of {@link #load(Inventory.Request, Inventory.Callback)} waiting for a load
+     */
+    private static final class PendingCallback {
+        @Nonnull
+        private final Inventory.Callback mCallback;
+        /**
+         * Number of the loads started before the callback was added, only a later load can
+         * deliver the products to it
+         */
+        private final int mAfter;
+
+        private PendingCallback(@Nonnull Inventory.Callback callback, int after) {
+            mCallback = callback;
+            mAfter = after;
+        }
+    }
+
+    private static final class Entry {
+        /**
+         * Copy of the request, not modified after creation
+         */
+        @Nonnull
+        private final Inventory.Request mRequest = Inventory.Request.create();
+        @Nonnull
+        private final AtomicBoolean mLoading = new AtomicBoolean();
+        @Nullable
+        private volatile Snapshot mSnapshot;
+        /**
+         * Value of {@link #mReads} when the entry was read last time
+         */
+        private volatile long mLastRead;
+        /**
+         * Accessed only on the main application thread
+         */
+        private int mLoadsStarted;
+        /**
+         * Accessed only on the main application thread
+         */
+        @Nonnull
+        private final List<PendingCallback> mCallbacks = new ArrayList<>();
+
+        private Entry(@Nonnull Inventory.Request request) {
+            mRequest.merge(request);
+        }
+
+        /**
+         * @return callbacks which are satisfied by the <var>load</var>-th load
+         */
+        @Nonnull
+        private List<Inventory.Callback> removeCallbacks(int load) {
+            if (mCallbacks.isEmpty()) {
+                return Collections.emptyList();
+            }
+            final List<Inventory.Callback> callbacks = new ArrayList<>(mCallbacks.size());
+            final Iterator<PendingCallback> iterator = mCallbacks.iterator();
+            while (iterator.hasNext()) {
+                final PendingCallback callback = iterator.next();
+                if (callback.mAfter < load) {
+                    callbacks.add(callback.mCallback);
+                    iterator.remove();
+                }
+            }
+            return callbacks;
+        }
+    }
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * One-pass reader of the top-level fields of a JSON object which doesn't build the object tree:
+ * only the values of the requested fields are kept, everything else is skipped. The reader is
+ * strict: it accepts only the standard JSON and only strings, integers and booleans as the values
+ * of the requested fields. If the input is anything else (malformed or just unusual, e.g. a
+ * fraction, an exponent or a {@code null} in a requested field) {@link #read(String)} returns
+ * false and the caller should parse the input with {@link org.json.JSONObject} which defines the
+ * behavior in such cases. Thus, the results are the same as with {@link org.json.JSONObject}
+ * when this reader succeeds. Like {@link org.json.JSONObject} the last value wins if a field is
+ * repeated.
+ * <p>
+ * The JSON is copied to an array which is reused between the calls. String values which repeat
+ * from one JSON to another (e.g. the package name of the purchases) can be shared instead of
+ * being created every time, see {@link #intern(int)}.
+ * <p>
+ * The instances are not thread-safe but can be reused.
+ */
+final class JsonFields {
+
+    static final int MISSING = 0;
+    static final int STRING = 1;
+    static final int LONG = 2;
+    static final int BOOLEAN = 3;
+
+    /**
+     * Number of the recent values kept for an interned field
+     */
+    private static final int INTERNED_SIZE = 4;
+
+    @Nonnull
+    private final String[] mNames;
+    @Nonnull
+    private final int[] mTypes;
+    @Nonnull
+    private final String[] mStrings;
+    @Nonnull
+    private final long[] mLongs;
+    /**
+     * Recent values of the interned fields (null for the other fields) indexed by field, the most
+     * recently used value first
+     */
+    @Nonnull
+    private final String[][] mInterned;
+    @Nullable
+    private StringBuilder mBuilder;
+
+    /**
+     * Characters of the JSON being read, the array is reused
+     */
+    @Nonnull
+    private char[] mJson = new char[512];
+    private int mLength;
+    private int mPosition;
+
+    /**
+     * @param names names of the fields to be read, the values are accessed by the indices in this
+     *              array
+     */
+    JsonFields(@Nonnull String... names) {
+        mNames = names;
+        mTypes = new int[names.length];
+        mStrings = new String[names.length];
+        mLongs = new long[names.length];
+        mInterned = new String[names.length][];
+    }
+
+    /**
+     * Makes <var>field</var> interned: if a string value is the same as one of the recent values
+     * of the field then the recent value is returned by {@link #getString(int)} (no new string is
+     * created)
+     */
+    void intern(int field) {
+        if (mInterned[field] == null) {
+            mInterned[field] = new String[INTERNED_SIZE];
+        }
+    }
+
+    /**
+     * Reads the values of the requested fields from <var>json</var>, the previous values are
+     * cleared
+     *
+     * @return true if the values were read, false if <var>json</var> should be parsed by
+     * {@link org.json.JSONObject}
+     */
+    boolean read(@Nonnull String json) {
+        for (int i = 0; i < mNames.length; i++) {
+            mTypes[i] = MISSING;
+            mStrings[i] = null;
+        }
+        mLength = json.length();
+        if (mJson.length < mLength) {
+            mJson = new char[Math.max(mLength, 2 * mJson.length)];
+        }
+        json.getChars(0, mLength, mJson, 0);
+        mPosition = 0;
+        return readObject() && skipWhitespaces() == mLength;
+    }
+
+    int getType(int field) {
+        return mTypes[field];
+    }
+
+    @Nonnull
+    String getString(int field) {
+        Check.isTrue(mTypes[field] == STRING, "Not a string");
+        return mStrings[field];
+    }
+
+    long getLong(int field) {
+        Check.isTrue(mTypes[field] == LONG, "Not a long");
+        return mLongs[field];
+    }
+
+    boolean getBoolean(int field) {
+        Check.isTrue(mTypes[field] == BOOLEAN, "Not a boolean");
+        return mLongs[field] != 0;
+    }
+
+    private boolean readObject() {
+        if (!consume('{')) {
+            return false;
+        }
+        if (consume('}')) {
+            return true;
+        }
+        do {
+            skipWhitespaces();
+            final int field = readName();
+            if (field == -2 || !consume(':')) {
+                return false;
+            }
+            skipWhitespaces();
+            if (field >= 0) {
+                if (!readValue(field)) {
+                    return false;
+                }
+            } else if (!skipValue()) {
+                return false;
+            }
+        } while (consume(','));
+        return consume('}');
+    }
+
+    /**
+     * @return index of the requested field, -1 if the field is not requested, -2 if the input is
+     * not valid or the name has escapes (which are not decoded)
+     */
+    private int readName() {
+        final int start = mPosition + 1;
+        if (!skipString()) {
+            return -2;
+        }
+        final int length = mPosition - 1 - start;
+        for (int i = start; i < start + length; i++) {
+            if (mJson[i] == '\\') {
+                return -2;
+            }
+        }
+        for (int i = 0; i < mNames.length; i++) {
+            final String name = mNames[i];
+            if (name.length() == length && regionMatches(start, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean readValue(int field) {
+        if (mPosition >= mLength) {
+            return false;
+        }
+        final char c = mJson[mPosition];
+        switch (c) {
+            case '"':
+                final String value = readString(field);
+                if (value == null) {
+                    return false;
+                }
+                mTypes[field] = STRING;
+                mStrings[field] = value;
+                return true;
+            case 't':
+            case 'f':
+                final boolean b = c == 't';
+                if (!consumeLiteral(b ? "true" : "false")) {
+                    return false;
+                }
+                mTypes[field] = BOOLEAN;
+                mLongs[field] = b ? 1 : 0;
+                return true;
+            default:
+                return readLong(field);
+        }
+    }
+
+    private boolean readLong(int field) {
+        final char[] json = mJson;
+        final int length = mLength;
+        int i = mPosition;
+        final boolean negative = i < length && json[i] == '-';
+        if (negative) {
+            i++;
+        }
+        final int start = i;
+        long value = 0;
+        while (i < length) {
+            final char c = json[i];
+            if (c < '0' || c > '9') {
+                break;
+            }
+            if (value > (Long.MAX_VALUE - 9) / 10) {
+                // might overflow
+                return false;
+            }
+            value = value * 10 + (c - '0');
+            i++;
+        }
+        final int digits = i - start;
+        if (digits == 0 || (digits > 1 && json[start] == '0')) {
+            return false;
+        }
+        if (i < length && isNumberPart(json[i])) {
+            // fractions and exponents are not supported
+            return false;
+        }
+        mPosition = i;
+        mTypes[field] = LONG;
+        mLongs[field] = negative ? -value : value;
+        return true;
+    }
+
+    private boolean skipValue() {
+        if (mPosition >= mLength) {
+            return false;
+        }
+        final char c = mJson[mPosition];
+        switch (c) {
+            case '"':
+                return skipString();
+            case '{':
+                return skipObject();
+            case '[':
+                return skipArray();
+            case 't':
+                return consumeLiteral("true");
+            case 'f':
+                return consumeLiteral("false");
+            case 'n':
+                return consumeLiteral("null");
+            default:
+                return skipNumber();
+        }
+    }
+
+    private boolean skipObject() {
+        if (!consume('{')) {
+            return false;
+        }
+        if (consume('}')) {
+            return true;
+        }
+        do {
+            skipWhitespaces();
+            if (!skipString() || !consume(':')) {
+                return false;
+            }
+            skipWhitespaces();
+            if (!skipValue()) {
+                return false;
+            }
+        } while (consume(','));
+        return consume('}');
+    }
+
+    private boolean skipArray() {
+        if (!consume('[')) {
+            return false;
+        }
+        if (consume(']')) {
+            return true;
+        }
+        do {
+            skipWhitespaces();
+            if (!skipValue()) {
+                return false;
+            }
+        } while (consume(','));
+        return consume(']');
+    }
+
+    private boolean skipNumber() {
+        final char[] json = mJson;
+        final int length = mLength;
+        int i = mPosition;
+        if (i < length && json[i] == '-') {
+            i++;
+        }
+        final int start = i;
+        i = skipDigits(i);
+        final int digits = i - start;
+        if (digits == 0 || (digits > 1 && json[start] == '0')) {
+            return false;
+        }
+        if (i < length && json[i] == '.') {
+            final int fraction = ++i;
+            i = skipDigits(i);
+            if (i == fraction) {
+                return false;
+            }
+        }
+        if (i < length && (json[i] == 'e' || json[i] == 'E')) {
+            i++;
+            if (i < length && (json[i] == '+' || json[i] == '-')) {
+                i++;
+            }
+            final int exponent = i;
+            i = skipDigits(i);
+            if (i == exponent) {
+                return false;
+            }
+        }
+        if (i < length && isNumberPart(json[i])) {
+            return false;
+        }
+        mPosition = i;
+        return true;
+    }
+
+    private int skipDigits(int i) {
+        final char[] json = mJson;
+        while (i < mLength && json[i] >= '0' && json[i] <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNumberPart(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+    }
+
+    /**
+     * @return the string at the current position, null if the input is not valid
+     */
+    @Nullable
+    private String readString(int field) {
+        final char[] json = mJson;
+        final int start = mPosition + 1;
+        int i = start;
+        while (i < mLength) {
+            final char c = json[i];
+            if (c == '"') {
+                mPosition = i + 1;
+                return newString(field, start, i);
+            }
+            if (c == '\\') {
+                return readEscapedString(start, i);
+            }
+            if (c < 0x20) {
+                return null;
+            }
+            i++;
+        }
+        return null;
+    }
+
+    @Nonnull
+    private String newString(int field, int start, int end) {
+        final String[] interned = mInterned[field];
+        if (interned == null) {
+            return new String(mJson, start, end - start);
+        }
+        final int length = end - start;
+        for (int i = 0; i < interned.length; i++) {
+            final String recent = interned[i];
+            if (recent == null) {
+                break;
+            }
+            if (recent.length() == length && regionMatches(start, recent)) {
+                if (i > 0) {
+                    // move to front
+                    System.arraycopy(interned, 0, interned, 1, i);
+                    interned[0] = recent;
+                }
+                return recent;
+            }
+        }
+        final String value = new String(mJson, start, end - start);
+        System.arraycopy(interned, 0, interned, 1, interned.length - 1);
+        interned[0] = value;
+        return value;
+    }
+
+    @Nullable
+    private String readEscapedString(int start, int i) {
+        final char[] json = mJson;
+        if (mBuilder == null) {
+            mBuilder = new StringBuilder();
+        }
+        final StringBuilder sb = mBuilder;
+        sb.setLength(0);
+        sb.append(json, start, i - start);
+        while (i < mLength) {
+            final char c = json[i++];
+            if (c == '"') {
+                mPosition = i;
+                return sb.toString();
+            }
+            if (c < 0x20) {
+                return null;
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= mLength) {
+                return null;
+            }
+            final char escaped = json[i++];
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escaped);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 > mLength) {
+                        return null;
+                    }
+                    int code = 0;
+                    for (int j = 0; j < 4; j++) {
+                        final int digit = Character.digit(json[i++], 16);
+                        if (digit < 0) {
+                            return null;
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    sb.append((char) code);
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    private boolean skipString() {
+        final char[] json = mJson;
+        if (mPosition >= mLength || json[mPosition] != '"') {
+            return false;
+        }
+        int i = mPosition + 1;
+        while (i < mLength) {
+            final char c = json[i++];
+            if (c == '"') {
+                mPosition = i;
+                return true;
+            }
+            if (c < 0x20) {
+                return false;
+            }
+            if (c == '\\') {
+                if (i >= mLength) {
+                    return false;
+                }
+                final char escaped = json[i++];
+                if (escaped == 'u') {
+                    if (i + 4 > mLength) {
+                        return false;
+                    }
+                    for (int j = 0; j < 4; j++) {
+                        if (Character.digit(json[i++], 16) < 0) {
+                            return false;
+                        }
+                    }
+                } else if ("\"\\/bfnrt".indexOf(escaped) < 0) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean consumeLiteral(@Nonnull String literal) {
+        if (mPosition + literal.length() > mLength || !regionMatches(mPosition, literal)) {
+            return false;
+        }
+        final int end = mPosition + literal.length();
+        if (end < mLength && Character.isLetterOrDigit(mJson[end])) {
+            return false;
+        }
+        mPosition = end;
+        return true;
+    }
+
+    /**
+     * @return true if the characters starting at <var>start</var> are the same as <var>s</var>
+     * (the caller checks that there are enough characters)
+     */
+    private boolean regionMatches(int start, @Nonnull String s) {
+        final char[] json = mJson;
+        for (int i = 0; i < s.length(); i++) {
+            if (json[start + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips whitespaces and consumes <var>c</var> if it is the next character
+     */
+    private boolean consume(char c) {
+        skipWhitespaces();
+        if (mPosition < mLength && mJson[mPosition] == c) {
+            mPosition++;
+            return true;
+        }
+        return false;
+    }
+
+    private int skipWhitespaces() {
+        final char[] json = mJson;
+        while (mPosition < mLength) {
+            final char c = json[mPosition];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+            mPosition++;
+        }
+        return mPosition;
+    }
+}
@@ -0,0 +1,17 @@
+package org.solovyev.android.checkout;
+
+/**
+ * {@link Logger} which knows in advance whether a message would be logged. {@link Billing} uses
+ * it to skip building the messages of the disabled levels. If a logger doesn't implement this
+ * interface all its levels are considered enabled.
+ */
+public interface LevelLogger extends Logger {
+
+    /**
+     * @param level one of {@link android.util.Log#VERBOSE}, {@link android.util.Log#DEBUG},
+     *              {@link android.util.Log#INFO}, {@link android.util.Log#WARN} and
+     *              {@link android.util.Log#ERROR}
+     * @return true if the messages of <var>level</var> are logged
+     */
+    boolean isLoggable(int level);
+}
@@ -34,10 +34,25 @@ final class MainThread implements CancellableExecutor {
 
     @Nonnull
     private final Handler mHandler;
+    private final boolean mAlwaysPost;
 
     MainThread(@Nonnull Handler handler) {
+        this(handler, false);
+    }
+
+    private MainThread(@Nonnull Handler handler, boolean alwaysPost) {
         Check.isTrue(handler.getLooper() == Looper.getMainLooper(), "Should be main application thread handler");
         mHandler = handler;
+        mAlwaysPost = alwaysPost;
+    }
+
+    /**
+     * @return executor which posts the runnables to the main thread looper even if it is called
+     * on the main application thread
+     */
+    @Nonnull
+    MainThread posting() {
+        return mAlwaysPost ? this : new MainThread(mHandler, true);
     }
 
     static boolean isMainThread() {
@@ -47,13 +62,14 @@ final class MainThread implements CancellableExecutor {
     /**
      * Method executes <var>runnable</var> on the main application thread. If method is called on
      * the main application thread then the passed <var>runnable</var> is executed synchronously.
-     * Otherwise, it is posted to be executed on the next iteration of the main thread looper.
+     * Otherwise (or if this executor is {@link #posting()}), it is posted to be executed on the
+     * next iteration of the main thread looper.
      *
      * @param runnable runnable to be executed on the main application thread
      */
     @Override
     public void execute(@Nonnull Runnable runnable) {
-        if (MainThread.isMainThread()) {
+        if (!mAlwaysPost && MainThread.isMainThread()) {
             runnable.run();
         } else {
             mHandler.post(runnable);
@@ -1,83 +0,0 @@
-/*
- * Copyright 2014 serso aka se.solovyev
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *    http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- *
- * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
- * Contact details
- *
- * Email: se.solovyev@gmail.com
- * Site:  http://se.solovyev.org
- */
-
-package org.solovyev.android.checkout;
-
-import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
-
-/**
- * Class dispatches all <var>listener</var> method calls on the main thread and allows to cancel
- * them.
- *
- * @param <R> type of the result
- */
-final class MainThreadRequestListener<R> extends RequestListenerWrapper<R> {
-
-    @Nonnull
-    private final CancellableExecutor mMainThread;
-
-    @Nullable
-    private Runnable mSuccessRunnable;
-
-    @Nullable
-    private Runnable mErrorRunnable;
-
-    MainThreadRequestListener(@Nonnull CancellableExecutor mainThread, @Nonnull RequestListener<R> listener) {
-        super(listener);
-        mMainThread = mainThread;
-    }
-
-    @Override
-    public void onSuccess(@Nonnull final R result) {
-        mSuccessRunnable = new Runnable() {
-            @Override
-            public void run() {
-                mListener.onSuccess(result);
-            }
-        };
-        mMainThread.execute(mSuccessRunnable);
-    }
-
-    @Override
-    public void onError(final int response, @Nonnull final Exception e) {
-        mErrorRunnable = new Runnable() {
-            @Override
-            public void run() {
-                mListener.onError(response, e);
-            }
-        };
-        mMainThread.execute(mErrorRunnable);
-    }
-
-    public void onCancel() {
-        if (mSuccessRunnable != null) {
-            mMainThread.cancel(mSuccessRunnable);
-            mSuccessRunnable = null;
-        }
-
-        if (mErrorRunnable != null) {
-            mMainThread.cancel(mErrorRunnable);
-            mErrorRunnable = null;
-        }
-    }
-}
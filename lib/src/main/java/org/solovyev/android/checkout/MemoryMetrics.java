@@ -0,0 +1,248 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Default {@link Metrics} implementation which aggregates all the measurements in memory. The
+ * measurements are stored in atomic counters, i.e. recording never blocks. Aggregated values can
+ * be obtained via {@link #snapshot()}.
+ *
+ * @see Billing#newMetrics()
+ */
+public final class MemoryMetrics implements Metrics {
+
+    private static final int TYPES = RequestType.values().length;
+    private static final int TIMINGS = Timing.values().length;
+
+    private static final int COUNT = 0;
+    private static final int TOTAL = 1;
+    private static final int MAX = 2;
+    private static final int VALUES = 3;
+
+    private static final int CONNECTED = 0;
+    private static final int FAILED = VALUES;
+
+    /**
+     * Count, total and max for each {@link RequestType} and {@link Timing}
+     */
+    @Nonnull
+    private final AtomicLongArray mTimings = new AtomicLongArray(TYPES * TIMINGS * VALUES);
+    /**
+     * Misses and hits for each {@link RequestType}
+     */
+    @Nonnull
+    private final AtomicLongArray mCache = new AtomicLongArray(TYPES * 2);
+    /**
+     * Count, total and max for established and failed connections
+     */
+    @Nonnull
+    private final AtomicLongArray mConnections = new AtomicLongArray(2 * VALUES);
+    /**
+     * Max queue size seen by a new request for each {@link RequestType}
+     */
+    @Nonnull
+    private final AtomicIntegerArray mMaxQueueSizes = new AtomicIntegerArray(TYPES);
+
+    MemoryMetrics() {
+    }
+
+    private static void record(@Nonnull AtomicLongArray array, int offset, long value) {
+        array.incrementAndGet(offset + COUNT);
+        array.addAndGet(offset + TOTAL, value);
+        final int max = offset + MAX;
+        long current = array.get(max);
+        while (value > current && !array.compareAndSet(max, current, value)) {
+            current = array.get(max);
+        }
+    }
+
+    private static int timingOffset(@Nonnull RequestType type, @Nonnull Timing timing) {
+        return (type.ordinal() * TIMINGS + timing.ordinal()) * VALUES;
+    }
+
+    private static int cacheOffset(@Nonnull RequestType type, boolean hit) {
+        return type.ordinal() * 2 + (hit ? 1 : 0);
+    }
+
+    @Override
+    public void onQueued(@Nonnull RequestType type, int queueSize) {
+        final int offset = type.ordinal();
+        int current = mMaxQueueSizes.get(offset);
+        while (queueSize > current && !mMaxQueueSizes.compareAndSet(offset, current, queueSize)) {
+            current = mMaxQueueSizes.get(offset);
+        }
+    }
+
+    @Override
+    public void onTiming(@Nonnull RequestType type, @Nonnull Timing timing, long nanos) {
+        record(mTimings, timingOffset(type, timing), nanos);
+    }
+
+    @Override
+    public void onCache(@Nonnull RequestType type, boolean hit) {
+        mCache.incrementAndGet(cacheOffset(type, hit));
+    }
+
+    @Override
+    public void onConnection(boolean connected, long nanos) {
+        record(mConnections, connected ? CONNECTED : FAILED, nanos);
+    }
+
+    /**
+     * Copies the current values of all the counters. As the counters are updated independently
+     * from each other the snapshot taken while the requests are running might be not perfectly
+     * consistent, e.g. the total time might already include a measurement not yet reflected in
+     * the count.
+     *
+     * @return snapshot of the aggregated measurements
+     */
+    @Nonnull
+    public Snapshot snapshot() {
+        final int[] maxQueueSizes = new int[TYPES];
+        for (int i = 0; i < TYPES; i++) {
+            maxQueueSizes[i] = mMaxQueueSizes.get(i);
+        }
+        return new Snapshot(copy(mTimings), copy(mCache), copy(mConnections), maxQueueSizes);
+    }
+
+    @Nonnull
+    private static long[] copy(@Nonnull AtomicLongArray array) {
+        final long[] copy = new long[array.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = array.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Immutable copy of the measurements aggregated by {@link MemoryMetrics}. All the times are in
+     * nanoseconds.
+     */
+    public static final class Snapshot {
+        @Nonnull
+        private final long[] mTimings;
+        @Nonnull
+        private final long[] mCache;
+        @Nonnull
+        private final long[] mConnections;
+        @Nonnull
+        private final int[] mMaxQueueSizes;
+
+        private Snapshot(@Nonnull long[] timings, @Nonnull long[] cache, @Nonnull long[] connections, @Nonnull int[] maxQueueSizes) {
+            mTimings = timings;
+            mCache = cache;
+            mConnections = connections;
+            mMaxQueueSizes = maxQueueSizes;
+        }
+
+        private static long average(long total, long count) {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**
+         * @return number of measurements of <var>timing</var> for requests of <var>type</var>
+         */
+        public long getCount(@Nonnull RequestType type, @Nonnull Timing timing) {
+            return mTimings[timingOffset(type, timing) + COUNT];
+        }
+
+        public long getTotalNanos(@Nonnull RequestType type, @Nonnull Timing timing) {
+            return mTimings[timingOffset(type, timing) + TOTAL];
+        }
+
+        public long getMaxNanos(@Nonnull RequestType type, @Nonnull Timing timing) {
+            return mTimings[timingOffset(type, timing) + MAX];
+        }
+
+        /**
+         * @return average of <var>timing</var> for requests of <var>type</var>, 0 if nothing was
+         * measured
+         */
+        public long getAverageNanos(@Nonnull RequestType type, @Nonnull Timing timing) {
+            final int offset = timingOffset(type, timing);
+            return average(mTimings[offset + TOTAL], mTimings[offset + COUNT]);
+        }
+
+        public long getCacheHits(@Nonnull RequestType type) {
+            return mCache[cacheOffset(type, true)];
+        }
+
+        public long getCacheMisses(@Nonnull RequestType type) {
+            return mCache[cacheOffset(type, false)];
+        }
+
+        /**
+         * @return share of the cache checks for requests of <var>type</var> which found the
+         * result in the cache, 0 if the cache was never checked
+         */
+        public float getCacheHitRatio(@Nonnull RequestType type) {
+            final long hits = getCacheHits(type);
+            final long total = hits + getCacheMisses(type);
+            return total == 0 ? 0f : (float) hits / total;
+        }
+
+        /**
+         * @return the biggest number of requests waiting for the connection at the same time
+         */
+        public int getMaxQueueSize() {
+            int max = 0;
+            for (int size : mMaxQueueSizes) {
+                max = Math.max(max, size);
+            }
+            return max;
+        }
+
+        /**
+         * @return the biggest number of requests (of any type, including the new one) waiting for
+         * the connection when a request of <var>type</var> was added to the queue
+         */
+        public int getMaxQueueSize(@Nonnull RequestType type) {
+            return mMaxQueueSizes[type.ordinal()];
+        }
+
+        /**
+         * @return number of established (if <var>connected</var> is true) or failed connections
+         */
+        public long getConnections(boolean connected) {
+            return mConnections[(connected ? CONNECTED : FAILED) + COUNT];
+        }
+
+        public long getMaxConnectionNanos(boolean connected) {
+            return mConnections[(connected ? CONNECTED : FAILED) + MAX];
+        }
+
+        /**
+         * @return average time needed to establish (if <var>connected</var> is true) or to fail a
+         * connection, 0 if there were no such connections
+         */
+        public long getAverageConnectionNanos(boolean connected) {
+            final int offset = connected ? CONNECTED : FAILED;
+            return average(mConnections[offset + TOTAL], mConnections[offset + COUNT]);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives measurements of what happens inside of {@link Billing}: how long the requests wait
+ * for the connection, how long they take in the Billing service, how long the purchases are
+ * verified, how long the results wait for the delivery and how often the cache is hit.
+ * A {@link Billing} instance can be configured to use metrics via
+ * {@link Billing#setMetrics(Metrics)}. The default implementation is created in
+ * {@link Billing#newMetrics()} factory method.
+ * Note that the methods of this interface might be called on any thread and sit on the hot path
+ * of every request, thus, implementations must be thread-safe and cheap.
+ *
+ * @see Billing#setMetrics(Metrics)
+ * @see MemoryMetrics
+ */
+public interface Metrics {
+
+    /**
+     * Timings measured by {@link Billing}
+     */
+    enum Timing {
+        /**
+         * Time the request spent in the queue waiting for the connection to the Billing service
+         */
+        QUEUE,
+        /**
+         * Time the request spent in the Billing service. For {@link RequestType#GET_PURCHASES}
+         * it also includes the part of {@link #VERIFICATION} done on the calling thread: a
+         * verifier which continues on another thread (f.e. {@link BasePurchaseVerifier}) is
+         * not waited for
+         */
+        EXECUTION,
+        /**
+         * Time {@link PurchaseVerifier} needed to verify the purchases
+         */
+        VERIFICATION,
+        /**
+         * Time the result waited to be delivered to the listener on the main application thread
+         */
+        DELIVERY
+    }
+
+    /**
+     * Called when a request is added to the queue of the pending requests
+     *
+     * @param type      type of the request
+     * @param queueSize number of requests in the queue including the new one
+     */
+    void onQueued(@Nonnull RequestType type, int queueSize);
+
+    /**
+     * Called when the <var>timing</var> of a request of <var>type</var> is measured
+     *
+     * @param type   type of the request
+     * @param timing what was measured
+     * @param nanos  measured time in nanoseconds
+     */
+    void onTiming(@Nonnull RequestType type, @Nonnull Timing timing, long nanos);
+
+    /**
+     * Called every time the cache is checked for the result of a request of <var>type</var>
+     *
+     * @param type type of the request
+     * @param hit  true if the result was found in the cache
+     */
+    void onCache(@Nonnull RequestType type, boolean hit);
+
+    /**
+     * Called when the connection to the Billing service is established or fails
+     *
+     * @param connected true if the connection was established
+     * @param nanos     time since the connection was requested in nanoseconds
+     */
+    void onConnection(boolean connected, long nanos);
+}
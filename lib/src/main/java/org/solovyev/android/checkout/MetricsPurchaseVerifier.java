@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * {@link PurchaseVerifier} which reports to {@link Metrics} how long the verification by the
+ * original verifier takes. As the original verifier might deliver the result asynchronously the
+ * time is measured until one of the listener's methods is called.
+ */
+final class MetricsPurchaseVerifier implements PurchaseVerifier {
+
+    @Nonnull
+    private final PurchaseVerifier mVerifier;
+    @Nonnull
+    private final Metrics mMetrics;
+    @Nonnull
+    private final RequestType mType;
+
+    MetricsPurchaseVerifier(@Nonnull PurchaseVerifier verifier, @Nonnull Metrics metrics, @Nonnull RequestType type) {
+        mVerifier = verifier;
+        mMetrics = metrics;
+        mType = type;
+    }
+
+    @Override
+    public void verify(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
+        mVerifier.verify(purchases, new TimingListener(listener, System.nanoTime()));
+    }
+
+    private final class TimingListener extends RequestListenerWrapper<List<Purchase>> {
+        private final long mStart;
+
+        TimingListener(@Nonnull RequestListener<List<Purchase>> listener, long start) {
+            super(listener);
+            mStart = start;
+        }
+
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> result) {
+            onVerified();
+            super.onSuccess(result);
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            onVerified();
+            super.onError(response, e);
+        }
+
+        private void onVerified() {
+            mMetrics.onTiming(mType, Metrics.Timing.VERIFICATION, System.nanoTime() - mStart);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * {@link Inventory} shared by all the subscribers of one {@link Billing}, see
+ * {@link Billing#getObservableInventory()}. A subscriber receives the last loaded
+ * {@link Inventory.Products} immediately (if any) and then every time they change. The products
+ * are reloaded when:
+ * <ul>
+ * <li>a new subscriber requests more data than was loaded before</li>
+ * <li>a purchase made through a {@link PurchaseFlow} finishes</li>
+ * <li>a purchase is consumed</li>
+ * <li>the billing service reports that the purchases on the device are out of date (and the
+ * purchases cache is cleared)</li>
+ * <li>{@link #reload()} is called</li>
+ * </ul>
+ * At most one load is running at a time: reloads requested while loading are merged into one
+ * load which starts after the current one finishes. The subscribers are notified only if the
+ * loaded products differ from the previous ones (see {@link InventoryDiff}).
+ * <p/>
+ * The products are loaded through {@link Billing#getInventoryStore()}, i.e. the products loaded
+ * for the subscribers are also returned by the store for the same request and the first
+ * subscriber immediately receives the products the store already has.
+ * <p/>
+ * All the methods of this class (except {@link #onPurchasesChanged()}) must be called on the
+ * main application thread, the subscribers are also notified on the main application thread.
+ */
+public final class ObservableInventory {
+
+    @Nonnull
+    private final Billing mBilling;
+    @Nonnull
+    private final List<Inventory.Callback> mCallbacks = new ArrayList<>();
+    /**
+     * Union of the requests of all the subscribers
+     */
+    @Nonnull
+    private Inventory.Request mRequest = Inventory.Request.create();
+    /**
+     * Last loaded products
+     */
+    @Nullable
+    private Inventory.Products mProducts;
+    @Nullable
+    private LoadCallback mLoading;
+    private boolean mReloadPending;
+    /**
+     * Same as !{@link #mCallbacks}.isEmpty() but can be read on any thread
+     */
+    private volatile boolean mObserved;
+    @Nonnull
+    private final Runnable mReloader = new Runnable() {
+        @Override
+        public void run() {
+            reload();
+        }
+    };
+
+    ObservableInventory(@Nonnull Billing billing) {
+        mBilling = billing;
+    }
+
+    /**
+     * Subscribes <var>callback</var> to the changes of the products. If the products have already
+     * been loaded <var>callback</var> is notified synchronously.
+     *
+     * @param request  data which should be loaded for this subscriber, the products delivered to
+     *                 <var>callback</var> might also contain the data requested by other subscribers
+     * @param callback callback to be notified, must be removed via {@link #unsubscribe(Inventory.Callback)}
+     */
+    public void subscribe(@Nonnull Inventory.Request request, @Nonnull Inventory.Callback callback) {
+        Check.isMainThread();
+        Check.isFalse(mCallbacks.contains(callback), "Already subscribed");
+        final boolean wider = mRequest.merge(request);
+        final boolean started = mCallbacks.isEmpty();
+        mCallbacks.add(callback);
+        mObserved = true;
+        if (mProducts == null) {
+            mProducts = mBilling.getInventoryStore().peek(mRequest);
+        }
+        if (mProducts != null) {
+            callback.onLoaded(mProducts);
+        }
+        if (started || wider) {
+            reload();
+        }
+    }
+
+    /**
+     * Removes <var>callback</var> previously added via
+     * {@link #subscribe(Inventory.Request, Inventory.Callback)}. After the last subscriber is
+     * removed no more loads are done (and the requested data is forgotten). The last loaded
+     * products are kept and are delivered to the next subscriber.
+     *
+     * @param callback callback to be removed
+     */
+    public void unsubscribe(@Nonnull Inventory.Callback callback) {
+        Check.isMainThread();
+        if (!mCallbacks.remove(callback) || !mCallbacks.isEmpty()) {
+            return;
+        }
+        mObserved = false;
+        mRequest = Inventory.Request.create();
+        // the running load is not cancelled: its products are kept by the store
+        mLoading = null;
+        mReloadPending = false;
+    }
+
+    /**
+     * Reloads the products. Does nothing if there are no subscribers.
+     */
+    public void reload() {
+        Check.isMainThread();
+        if (!mObserved) {
+            return;
+        }
+        if (mLoading != null) {
+            mReloadPending = true;
+            return;
+        }
+        // the request is copied as the subscribers might extend it while loading
+        final Inventory.Request request = Inventory.Request.create();
+        request.merge(mRequest);
+        mLoading = new LoadCallback();
+        mBilling.getInventoryStore().load(request, mLoading);
+    }
+
+    /**
+     * @return last loaded products, null if nothing was loaded yet
+     */
+    @Nullable
+    public Inventory.Products getProducts() {
+        Check.isMainThread();
+        return mProducts;
+    }
+
+    /**
+     * @return true if there is at least one subscriber. Can be called on any thread.
+     */
+    boolean isObserved() {
+        return mObserved;
+    }
+
+    /**
+     * Called by {@link Billing} when the purchases might have changed. Can be called on any thread.
+     */
+    void onPurchasesChanged() {
+        if (mObserved) {
+            mBilling.getMainThread(false).execute(mReloader);
+        }
+    }
+
+    private void onLoaded(@Nonnull LoadCallback callback, @Nonnull Inventory.Products products) {
+        Check.isMainThread();
+        if (mLoading != callback) {
+            // all the subscribers were removed during the load
+            return;
+        }
+        mLoading = null;
+        final Inventory.Products old = mProducts;
+        mProducts = products;
+        if (old == null || hasChanged(old, products)) {
+            for (Inventory.Callback subscriber : new ArrayList<>(mCallbacks)) {
+                subscriber.onLoaded(products);
+            }
+        }
+        if (mReloadPending) {
+            mReloadPending = false;
+            reload();
+        }
+    }
+
+    private static boolean hasChanged(@Nonnull Inventory.Products old, @Nonnull Inventory.Products products) {
+        for (String product : ProductTypes.ALL) {
+            final Inventory.Product oldProduct = old.get(product);
+            final Inventory.Product newProduct = products.get(product);
+            if (oldProduct.supported != newProduct.supported) {
+                return true;
+            }
+            // SKUs of a wider request
+            if (oldProduct.mSkus.size() != newProduct.mSkus.size()) {
+                return true;
+            }
+        }
+        return !InventoryDiff.between(old, products).isEmpty();
+    }
+
+    /**
+     * Receives the products on the thread where the load finished and passes them to the main
+     * application thread
+     */
+    private final class LoadCallback implements Inventory.Callback, Runnable {
+        @Nullable
+        private volatile Inventory.Products mProducts;
+
+        @Override
+        public void onLoaded(@Nonnull Inventory.Products products) {
+            mProducts = products;
+            mBilling.getMainThread(false).execute(this);
+        }
+
+        @Override
+        public void run() {
+            final Inventory.Products products = mProducts;
+            Check.isNotNull(products);
+            ObservableInventory.this.onLoaded(this, products);
+        }
+    }
+}
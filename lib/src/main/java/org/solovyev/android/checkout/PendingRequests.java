@@ -46,11 +46,22 @@ final class PendingRequests implements Runnable {
      */
     void add(@Nonnull RequestRunnable runnable) {
         synchronized (mList) {
-            Billing.debug("Adding pending request: " + runnable);
+            if (Billing.isDebugLoggable()) {
+                Billing.debug("Adding pending request: " + runnable);
+            }
             mList.add(runnable);
         }
     }
 
+    /**
+     * @return number of the runnables in the waiting list
+     */
+    int size() {
+        synchronized (mList) {
+            return mList.size();
+        }
+    }
+
     /**
      * Method cancels all pending requests
      */
@@ -73,7 +84,9 @@ final class PendingRequests implements Runnable {
      */
     void cancelAll(@Nullable Object tag) {
         synchronized (mList) {
-            Billing.debug("Cancelling all pending requests with tag=" + tag);
+            if (Billing.isDebugLoggable()) {
+                Billing.debug("Cancelling all pending requests with tag=" + tag);
+            }
             final Iterator<RequestRunnable> iterator = mList.iterator();
             while (iterator.hasNext()) {
                 final RequestRunnable request = iterator.next();
@@ -103,7 +116,9 @@ final class PendingRequests implements Runnable {
      */
     void cancel(int requestId) {
         synchronized (mList) {
-            Billing.debug("Cancelling pending request with id=" + requestId);
+            if (Billing.isDebugLoggable()) {
+                Billing.debug("Cancelling pending request with id=" + requestId);
+            }
             final Iterator<RequestRunnable> iterator = mList.iterator();
             while (iterator.hasNext()) {
                 final RequestRunnable request = iterator.next();
@@ -126,7 +141,9 @@ final class PendingRequests implements Runnable {
         synchronized (mList) {
             final RequestRunnable runnable = !mList.isEmpty() ? mList.remove(0) : null;
             if (runnable != null) {
-                Billing.debug("Removing pending request: " + runnable);
+                if (Billing.isDebugLoggable()) {
+                    Billing.debug("Removing pending request: " + runnable);
+                }
             }
             return runnable;
         }
@@ -152,7 +169,9 @@ final class PendingRequests implements Runnable {
     public void run() {
         RequestRunnable runnable = peek();
         while (runnable != null) {
-            Billing.debug("Running pending request: " + runnable);
+            if (Billing.isDebugLoggable()) {
+                Billing.debug("Running pending request: " + runnable);
+            }
             if (runnable.run()) {
                 remove(runnable);
                 runnable = peek();
@@ -174,7 +193,9 @@ final class PendingRequests implements Runnable {
             final Iterator<RequestRunnable> iterator = mList.iterator();
             while (iterator.hasNext()) {
                 if (iterator.next() == runnable) {
-                    Billing.debug("Removing pending request: " + runnable);
+                    if (Billing.isDebugLoggable()) {
+                        Billing.debug("Removing pending request: " + runnable);
+                    }
                     iterator.remove();
                     break;
                 }
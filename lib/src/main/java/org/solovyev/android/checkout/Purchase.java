@@ -28,6 +28,7 @@ import org.json.JSONObject;
 import android.text.TextUtils;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 /**
@@ -36,6 +37,27 @@ import javax.annotation.concurrent.Immutable;
 @Immutable
 public final class Purchase {
 
+    private static final int FIELD_PRODUCT_ID = 0;
+    private static final int FIELD_ORDER_ID = 1;
+    private static final int FIELD_PACKAGE_NAME = 2;
+    private static final int FIELD_PURCHASE_TIME = 3;
+    private static final int FIELD_PURCHASE_STATE = 4;
+    private static final int FIELD_DEVELOPER_PAYLOAD = 5;
+    private static final int FIELD_TOKEN = 6;
+    private static final int FIELD_PURCHASE_TOKEN = 7;
+    private static final int FIELD_AUTO_RENEWING = 8;
+    @Nonnull
+    private static final ThreadLocal<JsonFields> sFields = new ThreadLocal<JsonFields>() {
+        @Override
+        protected JsonFields initialValue() {
+            final JsonFields fields = new JsonFields("productId", "orderId", "packageName", "purchaseTime", "purchaseState",
+                    "developerPayload", "token", "purchaseToken", "autoRenewing");
+            // all the purchases of an application have the same package name
+            fields.intern(FIELD_PACKAGE_NAME);
+            return fields;
+        }
+    };
+
     // the item's product identifier. Every item has a product ID, which you must specify
     // in the application's product list on the Google Play Developer Console
     @Nonnull
@@ -102,11 +124,80 @@ public final class Purchase {
         this.signature = signature;
     }
 
+    /**
+     * Parses <var>data</var> with {@link JsonFields} (which reads only the needed fields) and
+     * falls back to {@link #Purchase(String, String)} if the data can't be parsed that way
+     */
     @Nonnull
     static Purchase fromJson(@Nonnull String data, @Nonnull String signature) throws JSONException {
+        final JsonFields fields = sFields.get();
+        if (fields.read(data)) {
+            final Purchase purchase = fromFields(fields, data, signature);
+            if (purchase != null) {
+                return purchase;
+            }
+        }
         return new Purchase(data, signature);
     }
 
+    /**
+     * @return purchase if the types of the fields are the same as expected by
+     * {@link #Purchase(String, String)}, null otherwise
+     */
+    @Nullable
+    private static Purchase fromFields(@Nonnull JsonFields fields, @Nonnull String data, @Nonnull String signature) {
+        if (fields.getType(FIELD_PRODUCT_ID) != JsonFields.STRING || fields.getType(FIELD_PURCHASE_TIME) != JsonFields.LONG) {
+            return null;
+        }
+        final String orderId = optString(fields, FIELD_ORDER_ID);
+        final String packageName = optString(fields, FIELD_PACKAGE_NAME);
+        final String payload = optString(fields, FIELD_DEVELOPER_PAYLOAD);
+        final String token = fields.getType(FIELD_TOKEN) != JsonFields.MISSING ? optString(fields, FIELD_TOKEN) : optString(fields, FIELD_PURCHASE_TOKEN);
+        if (orderId == null || packageName == null || payload == null || token == null) {
+            return null;
+        }
+        final int state;
+        switch (fields.getType(FIELD_PURCHASE_STATE)) {
+            case JsonFields.MISSING:
+                state = 0;
+                break;
+            case JsonFields.LONG:
+                state = (int) fields.getLong(FIELD_PURCHASE_STATE);
+                break;
+            default:
+                return null;
+        }
+        final boolean autoRenewing;
+        switch (fields.getType(FIELD_AUTO_RENEWING)) {
+            case JsonFields.MISSING:
+                autoRenewing = false;
+                break;
+            case JsonFields.BOOLEAN:
+                autoRenewing = fields.getBoolean(FIELD_AUTO_RENEWING);
+                break;
+            default:
+                return null;
+        }
+        return new Purchase(fields.getString(FIELD_PRODUCT_ID), orderId, packageName, fields.getLong(FIELD_PURCHASE_TIME), state,
+                payload, token, autoRenewing, data, signature);
+    }
+
+    /**
+     * @return value of the string field, empty string if the field is missing and null if the
+     * field is not a string
+     */
+    @Nullable
+    private static String optString(@Nonnull JsonFields fields, int field) {
+        switch (fields.getType(field)) {
+            case JsonFields.MISSING:
+                return "";
+            case JsonFields.STRING:
+                return fields.getString(field);
+            default:
+                return null;
+        }
+    }
+
     private static void tryPut(@Nonnull JSONObject json, @Nonnull String key, @Nonnull String name) throws JSONException {
         if (!TextUtils.isEmpty(name)) {
             json.put(key, name);
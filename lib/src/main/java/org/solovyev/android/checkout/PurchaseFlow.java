@@ -119,7 +119,9 @@ public final class PurchaseFlow implements CancellableRequestListener<PendingInt
     }
 
     private void handleError(int response) {
-        Billing.error("Error response: " + response + " in Purchase/ChangePurchase request");
+        if (Billing.isErrorLoggable()) {
+            Billing.error("Error response: " + response + " in Purchase/ChangePurchase request");
+        }
         onError(response, new BillingException(response));
     }
 
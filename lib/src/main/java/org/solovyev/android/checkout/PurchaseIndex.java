@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Index of a list of purchases by SKU. For each SKU it keeps the first purchase in the list and
+ * the first purchase in every {@link Purchase.State}, i.e. lookups return the same purchases as a
+ * linear scan of the list would.
+ * The index is immutable and can be lazily created and published through a volatile field
+ * without locking: if two threads create it simultaneously both get equal indices.
+ */
+@Immutable
+final class PurchaseIndex {
+
+    @Nonnull
+    static final PurchaseIndex EMPTY = new PurchaseIndex(new HashMap<String, Purchase[]>(0));
+
+    private static final int ANY_STATE = Purchase.State.values().length;
+
+    @Nonnull
+    private final Map<String, Purchase[]> mMap;
+
+    private PurchaseIndex(@Nonnull Map<String, Purchase[]> map) {
+        mMap = map;
+    }
+
+    @Nonnull
+    static PurchaseIndex create(@Nonnull List<Purchase> purchases) {
+        if (purchases.isEmpty()) {
+            return EMPTY;
+        }
+        final Map<String, Purchase[]> map = new HashMap<>(2 * purchases.size());
+        for (int i = 0; i < purchases.size(); i++) {
+            final Purchase purchase = purchases.get(i);
+            Purchase[] slots = map.get(purchase.sku);
+            if (slots == null) {
+                slots = new Purchase[ANY_STATE + 1];
+                slots[ANY_STATE] = purchase;
+                map.put(purchase.sku, slots);
+            }
+            final int state = purchase.state.ordinal();
+            if (slots[state] == null) {
+                slots[state] = purchase;
+            }
+        }
+        return new PurchaseIndex(map);
+    }
+
+    @Nullable
+    Purchase get(@Nonnull String sku) {
+        final Purchase[] slots = mMap.get(sku);
+        return slots != null ? slots[ANY_STATE] : null;
+    }
+
+    @Nullable
+    Purchase get(@Nonnull String sku, @Nonnull Purchase.State state) {
+        final Purchase[] slots = mMap.get(sku);
+        return slots != null ? slots[state.ordinal()] : null;
+    }
+}
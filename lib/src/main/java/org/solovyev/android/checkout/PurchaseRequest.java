@@ -52,6 +52,7 @@ final class PurchaseRequest extends Request<PendingIntent> {
     @Override
     void start(@Nonnull IInAppBillingService service, @Nonnull String packageName) throws RemoteException, RequestException {
         final Bundle bundle = service.getBuyIntent(mApiVersion, packageName, mSku, mProduct, mPayload == null ? "" : mPayload);
+        trace(RequestTracer.Event.BINDER_RETURNED);
         if (handleError(bundle)) {
             return;
         }
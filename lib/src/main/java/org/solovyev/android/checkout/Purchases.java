@@ -29,9 +29,12 @@ import org.json.JSONObject;
 import android.os.Bundle;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -69,6 +72,12 @@ public final class Purchases {
     @Nullable
     public final String continuationToken;
 
+    /**
+     * Index of {@link #list} by SKU, created on the first lookup
+     */
+    @Nullable
+    private volatile PurchaseIndex mIndex;
+
     Purchases(@Nonnull String product, @Nonnull List<Purchase> list, @Nullable String continuationToken) {
         this.product = product;
         this.list = Collections.unmodifiableList(list);
@@ -91,7 +100,17 @@ public final class Purchases {
     static List<Purchase> getListFromBundle(@Nonnull Bundle bundle) throws JSONException {
         final List<String> datas = extractDatasList(bundle);
         final List<String> signatures = bundle.getStringArrayList(BUNDLE_SIGNATURE_LIST);
+        return getList(datas, signatures);
+    }
 
+    /**
+     * @param datas      purchases' JSONs
+     * @param signatures purchases' signatures (in the same order as <var>datas</var>), null if
+     *                   there are no signatures
+     * @return list of the parsed purchases
+     */
+    @Nonnull
+    static List<Purchase> getList(@Nonnull List<String> datas, @Nullable List<String> signatures) throws JSONException {
         final List<Purchase> purchases = new ArrayList<>(datas.size());
         for (int i = 0; i < datas.size(); i++) {
             final String data = datas.get(i);
@@ -107,88 +126,74 @@ public final class Purchases {
         return list != null ? list : Collections.<String>emptyList();
     }
 
-    @Nullable
-    static Purchase getPurchaseInState(@Nonnull List<Purchase> purchases, @Nonnull String sku, @Nonnull Purchase.State state) {
-        for (Purchase purchase : purchases) {
-            if (purchase.sku.equals(sku)) {
-                if (purchase.state == state) {
-                    return purchase;
-                }
-            }
-        }
-        return null;
-    }
-
+    /**
+     * Removes the purchases which are neutralized by the later purchases of the same SKU. The
+     * purchases of each SKU are processed in time order (earliest first):
+     * <ul>
+     * <li>a {@link Purchase.State#PURCHASED} purchase followed by a cancelled, refunded or expired
+     * purchase is removed together with it</li>
+     * <li>a {@link Purchase.State#PURCHASED} purchase followed by another
+     * {@link Purchase.State#PURCHASED} purchase is removed (only the latter is kept)</li>
+     * <li>a cancelled, refunded or expired purchase followed by any other purchase is removed</li>
+     * </ul>
+     * Thus, at most one purchase (the latest one) is left for each SKU: it is removed only if it is
+     * not {@link Purchase.State#PURCHASED} and the previous purchase of the same SKU is
+     * {@link Purchase.State#PURCHASED}. This method relies on this fact and does one pass over the
+     * purchases sorted by time.
+     *
+     * @param purchases purchases to be neutralized, not modified
+     * @return remaining purchases, latest first
+     */
     @Nonnull
     static List<Purchase> neutralize(@Nonnull List<Purchase> purchases) {
-        // probably, it's possible to avoid creation of temporary list. The reason for it is that we don't want to
-        // modify original list
-        purchases = new LinkedList<>(purchases);
-
-        final List<Purchase> result = new ArrayList<>(purchases.size());
-
-        Collections.sort(purchases, PurchaseComparator.earliestFirst());
-        while (!purchases.isEmpty()) {
-            final Purchase purchase = purchases.get(0);
-            switch (purchase.state) {
-                case PURCHASED:
-                    if (!isNeutralized(purchases, purchase)) {
-                        result.add(purchase);
-                    }
-                    break;
-                case CANCELLED:
-                case REFUNDED:
-                case EXPIRED:
-                    if (!isDangling(purchases, purchase)) {
-                        result.add(purchase);
-                    }
-                    break;
-            }
-            purchases.remove(0);
-        }
-
-        // purchases were added earliest first but we want result to be latest first
-        Collections.reverse(result);
-
-        return result;
-    }
-
-    private static boolean isDangling(@Nonnull List<Purchase> purchases, @Nonnull Purchase purchase) {
-        Check.isFalse(purchase.state == Purchase.State.PURCHASED, "Must not be PURCHASED");
-        for (int i = 1; i < purchases.size(); i++) {
-            final Purchase same = purchases.get(i);
-            if (same.sku.equals(purchase.sku)) {
-                // for not purchases transaction exists newer transaction => this transaction is dangling
-                return true;
+        final List<Purchase> sorted = new ArrayList<>(purchases);
+        Collections.sort(sorted, PurchaseComparator.earliestFirst());
+
+        final int size = sorted.size();
+        // index of the latest purchase of each SKU
+        final Map<String, Integer> latest = new HashMap<>();
+        // index of the previous purchase of the same SKU, -1 if none
+        final int[] previous = new int[size];
+        // index of the next purchase of the same SKU, 0 if none (only needed for logging)
+        final int[] next = Billing.isWarningLoggable() ? new int[size] : null;
+        for (int i = 0; i < size; i++) {
+            final Purchase purchase = sorted.get(i);
+            final Integer last = latest.put(purchase.sku, i);
+            previous[i] = last != null ? last : -1;
+            if (last != null && next != null) {
+                next[last] = i;
             }
         }
 
-        return false;
-    }
-
-    private static boolean isNeutralized(@Nonnull List<Purchase> purchases, @Nonnull Purchase purchase) {
-        Check.isTrue(purchase.state == Purchase.State.PURCHASED, "Must be PURCHASED");
-        for (int i = 1; i < purchases.size(); i++) {
-            final Purchase same = purchases.get(i);
-            if (same.sku.equals(purchase.sku)) {
-                switch (same.state) {
-                    case PURCHASED:
-                        // found same later purchase => obviously there is a bug somewhere as user can't own
-                        // several purchases with same SKU. For now let's skip the item
+        if (next != null) {
+            for (int i = 0; i < size; i++) {
+                final Purchase purchase = sorted.get(i);
+                if (next[i] > 0 && purchase.state == Purchase.State.PURCHASED) {
+                    final Purchase same = sorted.get(next[i]);
+                    if (same.state == Purchase.State.PURCHASED) {
+                        // obviously there is a bug somewhere as user can't own several purchases with
+                        // same SKU. For now let's keep the latest
                         Billing.warning("Two purchases with same SKU found: " + purchase + " and " + same);
-                        break;
-                    case CANCELLED:
-                    case REFUNDED:
-                    case EXPIRED:
-                        // neutralization found => need to remove it
-                        purchases.remove(i);
-                        break;
+                    }
                 }
-                return true;
             }
         }
 
-        return false;
+        final List<Purchase> result = new ArrayList<>(latest.size());
+        for (int i = size - 1; i >= 0; i--) {
+            final Purchase purchase = sorted.get(i);
+            if (latest.get(purchase.sku) != i) {
+                // there is a later purchase of the same SKU
+                continue;
+            }
+            if (purchase.state != Purchase.State.PURCHASED && previous[i] >= 0
+                    && sorted.get(previous[i]).state == Purchase.State.PURCHASED) {
+                // neutralization of the previous purchase
+                continue;
+            }
+            result.add(purchase);
+        }
+        return result;
     }
 
     /**
@@ -230,12 +235,7 @@ public final class Purchases {
 
     @Nullable
     public Purchase getPurchase(@Nonnull String sku) {
-        for (Purchase purchase : list) {
-            if (purchase.sku.equals(sku)) {
-                return purchase;
-            }
-        }
-        return null;
+        return getIndex().get(sku);
     }
 
     /**
@@ -259,6 +259,52 @@ public final class Purchases {
 
     @Nullable
     public Purchase getPurchaseInState(@Nonnull String sku, @Nonnull Purchase.State state) {
-        return getPurchaseInState(list, sku, state);
+        return getIndex().get(sku, state);
+    }
+
+    /**
+     * Adds to <var>purchased</var> the ownership of each of <var>skus</var> which is not there yet
+     * and has a purchase in this list. As in {@link #getPurchase(String)} the first purchase of
+     * a SKU decides, thus, the pages of a purchase history must be passed in order.
+     *
+     * @param skus      SKUs to be checked
+     * @param purchased SKUs mapped to true if they are owned and to false otherwise
+     * @return true if the ownership of all the <var>skus</var> is known
+     */
+    boolean collectPurchased(@Nonnull Collection<String> skus, @Nonnull Map<String, Boolean> purchased) {
+        for (String sku : skus) {
+            if (purchased.containsKey(sku)) {
+                continue;
+            }
+            final Purchase purchase = getPurchase(sku);
+            if (purchase != null) {
+                purchased.put(sku, purchase.state == Purchase.State.PURCHASED);
+            }
+        }
+        return purchased.size() >= skus.size();
+    }
+
+    /**
+     * @return ownership of each of <var>skus</var> (in the same order) according to
+     * <var>purchased</var> filled by {@link #collectPurchased(Collection, Map)}, the SKUs without
+     * purchases are not owned
+     */
+    @Nonnull
+    static Map<String, Boolean> toPurchased(@Nonnull Collection<String> skus, @Nonnull Map<String, Boolean> purchased) {
+        final Map<String, Boolean> result = new LinkedHashMap<>(skus.size());
+        for (String sku : skus) {
+            result.put(sku, Boolean.TRUE.equals(purchased.get(sku)));
+        }
+        return result;
+    }
+
+    @Nonnull
+    private PurchaseIndex getIndex() {
+        PurchaseIndex index = mIndex;
+        if (index == null) {
+            index = PurchaseIndex.create(list);
+            mIndex = index;
+        }
+        return index;
     }
 }
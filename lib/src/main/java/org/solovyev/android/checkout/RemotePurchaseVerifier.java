@@ -0,0 +1,514 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import static android.text.TextUtils.isEmpty;
+
+/**
+ * Verifies purchases on the application's server. The purchases of the concurrent
+ * {@link #verify(List, RequestListener)} calls are sent in one HTTP request: the thread which
+ * finds no request in flight sends what is pending (up to {@link #MAX_BATCH_SIZE} purchases per
+ * request, oldest first) until its own purchases are verified, other threads add their purchases
+ * to the queue and wait for them to be verified. Once the sending thread is done one of the
+ * waiting threads takes over. Each listener is called on the thread which started the
+ * verification (as required by {@link BasePurchaseVerifier}).
+ * <p>
+ * The server gets a POST request with the body
+ * <pre>{"purchases": [{"data": "...", "signature": "..."}, ...]}</pre>
+ * and must reply with the verification result of each purchase in the same order:
+ * <pre>{"verified": [true, false, ...]}</pre>
+ * The connections are kept alive between the requests (see {@link HttpURLConnection}).
+ * Purchases confirmed by the server are remembered by their order ids (together with the
+ * signed data and the signatures) and are not sent again unless either of them has changed.
+ * If the server can't be reached or returns an error the purchases are verified locally with
+ * the public key (if any), otherwise the listener gets {@link ResponseCodes#EXCEPTION}. The
+ * results of the local verification are not remembered.
+ * <p>
+ * The requests are sent from the verifier's own threads (see {@link #IO_THREADS}) rather than
+ * from the threads shared by the verifiers, so a slow server doesn't delay the verification done
+ * by other verifiers.
+ * <p>
+ * <b>Note</b>: the application needs {@code android.permission.INTERNET} permission.
+ */
+public class RemotePurchaseVerifier extends BasePurchaseVerifier {
+
+    static final int MAX_BATCH_SIZE = 100;
+    /**
+     * Maximum number of threads used by the verifier created with the public constructor. As
+     * the purchases are sent in batches only one of them talks to the server at a time, the others
+     * wait for the results.
+     */
+    static final int IO_THREADS = 4;
+    private static final int CACHE_CAPACITY = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int READ_TIMEOUT_MILLIS = 20 * 1000;
+    private static final String CHARSET = "UTF-8";
+
+    @Nonnull
+    private final URL mUrl;
+    @Nullable
+    private final PurchaseVerifier mFallback;
+    private final int mMaxBatchSize;
+    @Nonnull
+    private final Object mLock = new Object();
+    @GuardedBy("mLock")
+    @Nonnull
+    private final List<Entry> mPending = new ArrayList<>();
+    @GuardedBy("mLock")
+    private boolean mSending;
+    /**
+     * Order ids of the purchases confirmed by the server mapped to the purchases themselves
+     */
+    @GuardedBy("mLock")
+    @Nonnull
+    private final Map<String, Purchase> mVerified;
+
+    /**
+     * @param url       address of the verification server
+     * @param publicKey public key used if the server is not available (see
+     *                  {@link DefaultPurchaseVerifier}), null to fail the verification in this
+     *                  case
+     */
+    public RemotePurchaseVerifier(@Nonnull URL url, @Nullable String publicKey) {
+        this(url, isEmpty(publicKey) ? null : new DefaultPurchaseVerifier(publicKey), new Handler(Looper.getMainLooper()),
+                newPool(IO_THREADS, new ThreadFactory() {
+                    @Nonnull
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(@Nonnull Runnable r) {
+                        final Thread thread = new Thread(r, "RemotePurchaseVerifierThread #" + mCount.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }), MAX_BATCH_SIZE, CACHE_CAPACITY);
+    }
+
+    /**
+     * @param fallback verifier used if the server is not available. It must call the listener
+     *                 before {@link PurchaseVerifier#verify(List, RequestListener)} returns (as
+     *                 {@link BasePurchaseVerifier} does when called off the main thread),
+     *                 otherwise the purchases fail to verify
+     */
+    RemotePurchaseVerifier(@Nonnull URL url, @Nullable PurchaseVerifier fallback, @Nonnull Handler handler,
+                           @Nonnull Executor executor, int maxBatchSize, final int cacheCapacity) {
+        super(handler, executor);
+        Check.isTrue(maxBatchSize > 0, "Batch size must be positive");
+        mUrl = url;
+        mFallback = fallback;
+        mMaxBatchSize = maxBatchSize;
+        mVerified = new LinkedHashMap<String, Purchase>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Purchase> eldest) {
+                return size() > cacheCapacity;
+            }
+        };
+    }
+
+    @Override
+    protected void doVerify(@Nonnull List<Purchase> purchases, @Nonnull RequestListener<List<Purchase>> listener) {
+        final Call call = new Call(purchases);
+        final boolean waiting;
+        synchronized (mLock) {
+            for (int i = 0; i < purchases.size(); i++) {
+                final Purchase purchase = purchases.get(i);
+                final Purchase verified = isEmpty(purchase.orderId) ? null : mVerified.get(purchase.orderId);
+                // the order id is a part of the signed data, though, the data might be changed
+                // while the signature is kept
+                if (verified != null && verified.signature.equals(purchase.signature) && verified.data.equals(purchase.data)) {
+                    call.mVerified[i] = true;
+                } else {
+                    mPending.add(new Entry(call, i));
+                    call.mRemaining++;
+                }
+            }
+            waiting = call.mRemaining > 0;
+        }
+        if (waiting) {
+            waitFor(call);
+        }
+        call.deliver(listener);
+    }
+
+    /**
+     * Blocks until all the purchases of <var>call</var> are verified, sends the pending purchases
+     * if nobody else does
+     */
+    private void waitFor(@Nonnull Call call) {
+        while (true) {
+            synchronized (mLock) {
+                while (!call.isDone() && mSending) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        call.onError(e);
+                    }
+                }
+                if (call.isDone()) {
+                    if (call.mError != null) {
+                        // nobody waits for the rest of the purchases => they are not sent
+                        removePending(call);
+                    }
+                    return;
+                }
+                mSending = true;
+            }
+            try {
+                sendPending(call);
+            } finally {
+                synchronized (mLock) {
+                    mSending = false;
+                    mLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void removePending(@Nonnull Call call) {
+        Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+        final Iterator<Entry> iterator = mPending.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mCall == call) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void sendPending(@Nonnull Call call) {
+        while (true) {
+            final List<Entry> batch;
+            synchronized (mLock) {
+                Check.isTrue(mSending, "Must be sending");
+                if (call.isDone() || mPending.isEmpty()) {
+                    return;
+                }
+                final int size = Math.min(mPending.size(), mMaxBatchSize);
+                final List<Entry> head = mPending.subList(0, size);
+                batch = new ArrayList<>(head);
+                head.clear();
+            }
+            try {
+                send(batch);
+            } catch (RuntimeException e) {
+                // fallback verifier has failed: the purchases must not be left unresolved
+                if (Billing.isErrorLoggable()) {
+                    Billing.error("Can't verify purchases", e);
+                }
+                onError(batch, e);
+            }
+        }
+    }
+
+    private void send(@Nonnull List<Entry> batch) {
+        final boolean[] verified;
+        try {
+            verified = post(batch);
+        } catch (IOException | JSONException | RuntimeException e) {
+            if (Billing.isErrorLoggable()) {
+                Billing.error("Can't verify purchases on " + mUrl, e);
+            }
+            onFailed(batch, e);
+            return;
+        }
+        synchronized (mLock) {
+            for (int i = 0; i < batch.size(); i++) {
+                final Entry entry = batch.get(i);
+                if (verified[i]) {
+                    final Purchase purchase = entry.getPurchase();
+                    if (!isEmpty(purchase.orderId)) {
+                        mVerified.put(purchase.orderId, purchase);
+                    }
+                }
+                entry.onVerified(verified[i]);
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    private void onFailed(@Nonnull final List<Entry> batch, @Nonnull Exception e) {
+        if (mFallback == null) {
+            onError(batch, e);
+            return;
+        }
+        final List<Purchase> purchases = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            purchases.add(entry.getPurchase());
+        }
+        final FallbackListener listener = new FallbackListener(batch);
+        mFallback.verify(purchases, listener);
+        listener.onReturned();
+    }
+
+    private void onError(@Nonnull List<Entry> batch, @Nonnull Exception e) {
+        synchronized (mLock) {
+            for (Entry entry : batch) {
+                entry.mCall.onError(e);
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return number of the purchases waiting to be sent
+     */
+    int getPendingCount() {
+        synchronized (mLock) {
+            return mPending.size();
+        }
+    }
+
+    @Nonnull
+    private boolean[] post(@Nonnull List<Entry> batch) throws IOException, JSONException {
+        final byte[] body = toJson(batch).getBytes(CHARSET);
+        final HttpURLConnection connection = (HttpURLConnection) mUrl.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        final OutputStream out = connection.getOutputStream();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+        final int code = connection.getResponseCode();
+        if (code != HttpURLConnection.HTTP_OK) {
+            // the error body must be read for the connection to be reused
+            final InputStream error = connection.getErrorStream();
+            if (error != null) {
+                read(error);
+            }
+            throw new IOException("Server responded with " + code);
+        }
+        final JSONArray verified = new JSONObject(read(connection.getInputStream())).getJSONArray("verified");
+        if (verified.length() != batch.size()) {
+            throw new JSONException("Expected " + batch.size() + " results, got " + verified.length());
+        }
+        final boolean[] result = new boolean[batch.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = verified.getBoolean(i);
+        }
+        return result;
+    }
+
+    @Nonnull
+    private static String toJson(@Nonnull List<Entry> batch) throws JSONException {
+        final JSONArray purchases = new JSONArray();
+        for (Entry entry : batch) {
+            final Purchase purchase = entry.getPurchase();
+            final JSONObject json = new JSONObject();
+            json.put("data", purchase.data);
+            json.put("signature", purchase.signature);
+            purchases.put(json);
+        }
+        final JSONObject json = new JSONObject();
+        json.put("purchases", purchases);
+        return json.toString();
+    }
+
+    /**
+     * Reads the stream to the end and closes it (so the connection can be reused)
+     */
+    @Nonnull
+    private static String read(@Nonnull InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(CHARSET);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * One {@link #verify(List, RequestListener)} call, its purchases might be sent in several
+     * batches. The state is guarded by {@link #mLock} until the call is done.
+     */
+    private static final class Call {
+        @Nonnull
+        private final List<Purchase> mPurchases;
+        @Nonnull
+        private final boolean[] mVerified;
+        private int mRemaining;
+        @Nullable
+        private Exception mError;
+
+        Call(@Nonnull List<Purchase> purchases) {
+            mPurchases = purchases;
+            mVerified = new boolean[purchases.size()];
+        }
+
+        boolean isDone() {
+            return mError != null || mRemaining == 0;
+        }
+
+        void onVerified(int position, boolean verified) {
+            if (mError != null) {
+                return;
+            }
+            mVerified[position] = verified;
+            mRemaining--;
+        }
+
+        void onError(@Nonnull Exception e) {
+            if (!isDone()) {
+                mError = e;
+            }
+        }
+
+        void deliver(@Nonnull RequestListener<List<Purchase>> listener) {
+            if (mError != null) {
+                listener.onError(ResponseCodes.EXCEPTION, mError);
+                return;
+            }
+            final List<Purchase> verified = new ArrayList<>(mPurchases.size());
+            for (int i = 0; i < mVerified.length; i++) {
+                if (mVerified[i]) {
+                    verified.add(mPurchases.get(i));
+                }
+            }
+            listener.onSuccess(verified);
+        }
+    }
+
+    /**
+     * Delivers the results of the fallback verification. If the fallback verifier returns without
+     * calling the listener the purchases fail to verify: nobody else would wake up the waiting
+     * threads. The results delivered after that are ignored.
+     */
+    private final class FallbackListener implements RequestListener<List<Purchase>> {
+        @Nonnull
+        private final List<Entry> mBatch;
+        @GuardedBy("mLock")
+        private boolean mCalled;
+        @GuardedBy("mLock")
+        private boolean mAbandoned;
+
+        FallbackListener(@Nonnull List<Entry> batch) {
+            mBatch = batch;
+        }
+
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> verifiedPurchases) {
+            final Set<Purchase> verified = Collections.newSetFromMap(new IdentityHashMap<Purchase, Boolean>());
+            verified.addAll(verifiedPurchases);
+            synchronized (mLock) {
+                if (!onCalled()) {
+                    return;
+                }
+                for (Entry entry : mBatch) {
+                    entry.onVerified(verified.contains(entry.getPurchase()));
+                }
+                mLock.notifyAll();
+            }
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            synchronized (mLock) {
+                if (!onCalled()) {
+                    return;
+                }
+                RemotePurchaseVerifier.this.onError(mBatch, e);
+            }
+        }
+
+        private boolean onCalled() {
+            Check.isTrue(Thread.holdsLock(mLock), "Must be synchronized");
+            if (mCalled || mAbandoned) {
+                return false;
+            }
+            mCalled = true;
+            return true;
+        }
+
+        void onReturned() {
+            synchronized (mLock) {
+                if (mCalled) {
+                    return;
+                }
+                mAbandoned = true;
+                RemotePurchaseVerifier.this.onError(mBatch, new IllegalStateException("Fallback verifier must call the listener before returning"));
+            }
+        }
+    }
+
+    /**
+     * Purchase waiting to be sent to the server
+     */
+    private static final class Entry {
+        @Nonnull
+        private final Call mCall;
+        private final int mPosition;
+
+        Entry(@Nonnull Call call, int position) {
+            mCall = call;
+            mPosition = position;
+        }
+
+        @Nonnull
+        Purchase getPurchase() {
+            return mCall.mPurchases.get(mPosition);
+        }
+
+        void onVerified(boolean verified) {
+            mCall.onVerified(mPosition, verified);
+        }
+    }
+}
@@ -55,6 +55,10 @@ abstract class Request<R> {
     private RequestListener<R> mListener;
     @GuardedBy("this")
     private boolean mListenerCalled;
+    @Nullable
+    private Cache.Key mCacheEntryKey;
+    @Nullable
+    private RequestTracer mTracer;
 
     Request(@Nonnull RequestType type) {
         this(type, Billing.V3);
@@ -70,6 +74,7 @@ abstract class Request<R> {
         mType = type;
         mId = request.mId;
         mApiVersion = request.mApiVersion;
+        mTracer = request.mTracer;
         synchronized (request) {
             mListener = request.mListener;
         }
@@ -102,16 +107,57 @@ abstract class Request<R> {
         return mType;
     }
 
+    void setTracer(@Nullable RequestTracer tracer) {
+        mTracer = tracer;
+    }
+
+    boolean isTraced() {
+        return mTracer != null;
+    }
+
+    /**
+     * Reports <var>event</var> to the tracer of this request, if any
+     *
+     * @param event event to be reported
+     */
+    void trace(@Nonnull RequestTracer.Event event) {
+        final RequestTracer tracer = mTracer;
+        if (tracer != null) {
+            tracer.onEvent(event, mId, mType, mTag, System.nanoTime());
+        }
+    }
+
+    /**
+     * @return key of the cache entry of this request (created once and then reused) or null if
+     * this request should not be cached
+     */
+    @Nullable
+    Cache.Key getCacheEntryKey() {
+        // benign race: the key is immutable and equal keys might be created on different threads
+        if (mCacheEntryKey == null) {
+            final String key = getCacheKey();
+            if (key != null) {
+                mCacheEntryKey = mType.getCacheKey(key);
+            }
+        }
+        return mCacheEntryKey;
+    }
+
     /**
      * Cancels this request, after this method is called request listener method will not be called
      */
     void cancel() {
+        final boolean cancelled;
         synchronized (this) {
-            if (mListener != null) {
+            cancelled = mListener != null;
+            if (cancelled) {
                 Billing.cancel(mListener);
             }
             mListener = null;
         }
+        if (cancelled) {
+            trace(RequestTracer.Event.CANCELLED);
+        }
     }
 
     /**
@@ -142,13 +188,17 @@ abstract class Request<R> {
     }
 
     protected void onError(int response) {
-        Billing.error("Error response: " + response + " in " + this + " request");
+        if (Billing.isErrorLoggable()) {
+            Billing.error("Error response: " + response + " in " + this + " request");
+        }
         onError(response, new BillingException(response));
     }
 
     public void onError(@Nonnull Exception e) {
         Check.isFalse(e instanceof BillingException, "Use onError(int) instead");
-        Billing.error("Exception in " + this + " request: ", e);
+        if (Billing.isErrorLoggable()) {
+            Billing.error("Exception in " + this + " request: ", e);
+        }
         onError(EXCEPTION, e);
     }
 
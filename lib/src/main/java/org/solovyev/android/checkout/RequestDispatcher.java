@@ -0,0 +1,241 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import static java.lang.System.currentTimeMillis;
+import static org.solovyev.android.checkout.ResponseCodes.ITEM_ALREADY_OWNED;
+import static org.solovyev.android.checkout.ResponseCodes.ITEM_NOT_OWNED;
+
+/**
+ * Listener of a {@link Request} which does all the work needed before the result gets to the
+ * user's listener: updates the cache (if any) and delivers the result on the given executor (if
+ * any). The dispatcher is a {@link Runnable} itself, so no additional objects are allocated
+ * for the thread switch, and the delivery can be cancelled via {@link #cancel()} as long as it
+ * hasn't started yet.
+ * The same dispatcher receives the results of all the requests created with
+ * {@link Request#Request(RequestType, Request)} from the original request (see, for example,
+ * the purchases paging in {@link Billing}). Such requests are executed one after another, thus,
+ * only one result is pending at a time.
+ *
+ * @param <R> type of the result
+ */
+final class RequestDispatcher<R> implements CancellableRequestListener<R>, Runnable {
+
+    @Nonnull
+    private final Request<R> mRequest;
+    @Nonnull
+    private final RequestListener<R> mListener;
+    @Nullable
+    private final CancellableExecutor mExecutor;
+    @Nullable
+    private final ConcurrentCache mCache;
+    @Nullable
+    private final Metrics mMetrics;
+    @Nullable
+    private final Runnable mOnPurchasesChanged;
+    @GuardedBy("this")
+    @Nullable
+    private R mResult;
+    @GuardedBy("this")
+    private int mResponse;
+    @GuardedBy("this")
+    @Nullable
+    private Exception mException;
+    /**
+     * Time (see {@link System#nanoTime()}) when the result was passed to {@link #mExecutor}, used
+     * only if {@link #mMetrics} is set
+     */
+    @GuardedBy("this")
+    private long mPostedAt;
+
+    /**
+     * @param request  request which results are dispatched
+     * @param listener listener to be notified
+     * @param executor executor on which <var>listener</var> is called, null to call it on the
+     *                 thread delivering the result
+     * @param cache    cache to be updated, null if the result should not be cached
+     * @param metrics  metrics to which the delivery delay is reported, null for no reporting
+     */
+    RequestDispatcher(@Nonnull Request<R> request, @Nonnull RequestListener<R> listener,
+                      @Nullable CancellableExecutor executor, @Nullable ConcurrentCache cache,
+                      @Nullable Metrics metrics) {
+        this(request, listener, executor, cache, metrics, null);
+    }
+
+    /**
+     * @param onPurchasesChanged runnable to be run if the request changes the purchases, null if
+     *                           nobody is interested
+     */
+    RequestDispatcher(@Nonnull Request<R> request, @Nonnull RequestListener<R> listener,
+                      @Nullable CancellableExecutor executor, @Nullable ConcurrentCache cache,
+                      @Nullable Metrics metrics, @Nullable Runnable onPurchasesChanged) {
+        mRequest = request;
+        mListener = listener;
+        mExecutor = executor;
+        mCache = cache;
+        mMetrics = metrics;
+        mOnPurchasesChanged = onPurchasesChanged;
+    }
+
+    @Override
+    public void onSuccess(@Nonnull R result) {
+        if (mCache != null) {
+            onSuccess(mCache, result);
+        }
+        if (mOnPurchasesChanged != null && mRequest.getType() == RequestType.CONSUME_PURCHASE) {
+            // purchase and change purchase requests only start the purchase flow
+            mOnPurchasesChanged.run();
+        }
+        if (mExecutor == null) {
+            mRequest.trace(RequestTracer.Event.DELIVERED);
+            mListener.onSuccess(result);
+            return;
+        }
+        synchronized (this) {
+            mResult = result;
+            onPosted();
+        }
+        mExecutor.execute(this);
+    }
+
+    private void onSuccess(@Nonnull ConcurrentCache cache, @Nonnull R result) {
+        final RequestType type = mRequest.getType();
+        final Cache.Key key = mRequest.getCacheEntryKey();
+        if (key != null) {
+            cache.putIfNotExist(key, new Cache.Entry(result, currentTimeMillis() + type.expiresIn));
+        }
+        switch (type) {
+            case PURCHASE:
+            case CHANGE_PURCHASE:
+            case CONSUME_PURCHASE:
+                // these requests might affect the state of purchases => we need to invalidate caches.
+                // see Billing#onPurchaseFinished() also
+                cache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+                break;
+        }
+    }
+
+    @Override
+    public void onError(int response, @Nonnull Exception e) {
+        if (isOutOfSync(response)) {
+            // sometimes it is possible that cached data is not synchronized with data on Google
+            // Play => we can clear caches if such situation occurs
+            if (mCache != null) {
+                mCache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+            }
+            if (mOnPurchasesChanged != null) {
+                mOnPurchasesChanged.run();
+            }
+        }
+        if (mExecutor == null) {
+            mRequest.trace(RequestTracer.Event.DELIVERED);
+            mListener.onError(response, e);
+            return;
+        }
+        synchronized (this) {
+            mResponse = response;
+            mException = e;
+            onPosted();
+        }
+        mExecutor.execute(this);
+    }
+
+    /**
+     * @return true if the requests of <var>type</var> might change the purchases, i.e. if their
+     * results might be reported to the {@code onPurchasesChanged} callback
+     */
+    static boolean changesPurchases(@Nonnull RequestType type) {
+        switch (type) {
+            case PURCHASE:
+            case CHANGE_PURCHASE:
+            case CONSUME_PURCHASE:
+                return true;
+        }
+        return false;
+    }
+
+    private boolean isOutOfSync(int response) {
+        switch (mRequest.getType()) {
+            case PURCHASE:
+            case CHANGE_PURCHASE:
+                return response == ITEM_ALREADY_OWNED;
+            case CONSUME_PURCHASE:
+                return response == ITEM_NOT_OWNED;
+        }
+        return false;
+    }
+
+    private void onPosted() {
+        Check.isTrue(Thread.holdsLock(this), "Must be synchronized");
+        if (mMetrics != null) {
+            mPostedAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void run() {
+        final R result;
+        final int response;
+        final Exception exception;
+        final long postedAt;
+        synchronized (this) {
+            result = mResult;
+            response = mResponse;
+            exception = mException;
+            postedAt = mPostedAt;
+            mResult = null;
+            mException = null;
+        }
+        if (result == null && exception == null) {
+            // delivery was cancelled
+            return;
+        }
+        if (mMetrics != null) {
+            mMetrics.onTiming(mRequest.getType(), Metrics.Timing.DELIVERY, System.nanoTime() - postedAt);
+        }
+        mRequest.trace(RequestTracer.Event.DELIVERED);
+        // the listener might start a new request which uses this dispatcher => the fields must
+        // be cleared before the listener is called
+        if (exception != null) {
+            mListener.onError(response, exception);
+        } else if (result != null) {
+            mListener.onSuccess(result);
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if (mExecutor != null) {
+            mExecutor.cancel(this);
+        }
+        synchronized (this) {
+            mResult = null;
+            mException = null;
+        }
+        Billing.cancel(mListener);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Receives the lifecycle events of every request executed by {@link Billing}. Unlike
+ * {@link Metrics} which aggregate the measurements, a tracer gets each event separately and can
+ * reconstruct the timeline of a request via its id. A tracer can be installed with
+ * {@link Billing#setRequestTracer(RequestTracer)}, if there is none the events are not emitted.
+ * Note that the methods of this interface might be called on any thread (including the main
+ * application thread), thus, implementations must be thread-safe, fast and must not throw.
+ */
+public interface RequestTracer {
+
+    enum Event {
+        /**
+         * Request is added to the queue of the requests waiting for the connection
+         */
+        ENQUEUED,
+        /**
+         * Result of the request is found in the cache, the Billing service is not called
+         */
+        CACHE_HIT,
+        /**
+         * Request is about to call the Billing service
+         */
+        STARTED,
+        /**
+         * Call to the Billing service has returned. Emitted once for every call if the request
+         * consists of several calls
+         */
+        BINDER_RETURNED,
+        /**
+         * {@link PurchaseVerifier} has started verification of the purchases
+         */
+        VERIFICATION_STARTED,
+        /**
+         * {@link PurchaseVerifier} has finished verification of the purchases
+         */
+        VERIFICATION_FINISHED,
+        /**
+         * Result of the request is delivered to the listener
+         */
+        DELIVERED,
+        /**
+         * Request is cancelled
+         */
+        CANCELLED
+    }
+
+    /**
+     * @param event     event which happened
+     * @param requestId id of the request, the same for all the pages of a paged request (e.g.
+     *                  {@link BillingRequests#getAllPurchases(String, RequestListener)})
+     * @param type      type of the request
+     * @param tag       tag of the request, see {@link Billing.RequestsBuilder#withTag(Object)}
+     * @param nanos     time of the event, see {@link System#nanoTime()}
+     */
+    void onEvent(@Nonnull Event event, int requestId, @Nonnull RequestType type, @Nullable Object tag, long nanos);
+}
@@ -24,7 +24,10 @@ package org.solovyev.android.checkout;
 
 import javax.annotation.Nonnull;
 
-enum RequestType {
+/**
+ * Types of the requests sent to the Billing service
+ */
+public enum RequestType {
     BILLING_SUPPORTED("supported", Billing.DAY),
     GET_PURCHASES("purchases", 20L * Billing.MINUTE),
     GET_SKU_DETAILS("skus", Billing.DAY),
@@ -85,6 +85,12 @@ public final class ResponseCodes {
      * is null
      */
     public static final int NULL_INTENT = 10003;
+    /**
+     * Blocking request was not finished within the given timeout
+     *
+     * @see BlockingBillingRequests
+     */
+    public static final int TIMEOUT = 10004;
 
     private ResponseCodes() {
         throw new AssertionError();
@@ -113,7 +113,9 @@ public final class RobotmediaDatabase {
             if (!skus.isEmpty()) {
                 product.setPurchases(loadPurchases(skus, db));
             } else {
-                Billing.warning("There are no SKUs for \"" + product.id + "\" product. No purchase information will be loaded");
+                if (Billing.isWarningLoggable()) {
+                    Billing.warning("There are no SKUs for \"" + product.id + "\" product. No purchase information will be loaded");
+                }
             }
 
             result.add(product);
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded memo of the signature verification outcomes keyed by a digest of the purchase's data
+ * and signature (see {@link SignatureVerifier}). When the memo is full the least recently used
+ * outcome is evicted. Digests of the verified purchases can be saved to a string and loaded back,
+ * so a persistent {@link Cache} can keep them between the application runs.
+ */
+@ThreadSafe
+final class SignatureMemo {
+
+    static final int DIGEST_LENGTH = 32;
+
+    private final int mCapacity;
+    @GuardedBy("mEntries")
+    @Nonnull
+    private final LinkedHashMap<Digest, Boolean> mEntries;
+    /**
+     * Number of the verified digests added since the last {@link #save()}
+     */
+    @GuardedBy("mEntries")
+    private int mChanges;
+
+    SignatureMemo(final int capacity) {
+        Check.isTrue(capacity > 0, "Capacity must be positive");
+        mCapacity = capacity;
+        mEntries = new LinkedHashMap<Digest, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Digest, Boolean> eldest) {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    /**
+     * @param digest digest of the purchase's data and signature
+     * @return outcome of the verification or null if it is not known
+     */
+    @Nullable
+    Boolean get(@Nonnull byte[] digest) {
+        synchronized (mEntries) {
+            return mEntries.get(new Digest(digest));
+        }
+    }
+
+    void put(@Nonnull byte[] digest, boolean verified) {
+        synchronized (mEntries) {
+            final Boolean old = mEntries.put(new Digest(digest), verified);
+            if (verified && old == null) {
+                mChanges++;
+            }
+        }
+    }
+
+    int size() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
+    /**
+     * @return number of the verified digests added since the last {@link #save()}
+     */
+    int getChanges() {
+        synchronized (mEntries) {
+            return mChanges;
+        }
+    }
+
+    /**
+     * @return base64-encoded digests of the verified purchases
+     */
+    @Nonnull
+    String save() {
+        final List<Digest> digests;
+        synchronized (mEntries) {
+            digests = new ArrayList<>(mEntries.size());
+            for (Map.Entry<Digest, Boolean> entry : mEntries.entrySet()) {
+                if (entry.getValue()) {
+                    digests.add(entry.getKey());
+                }
+            }
+            mChanges = 0;
+        }
+        final byte[] bytes = new byte[digests.size() * DIGEST_LENGTH];
+        for (int i = 0; i < digests.size(); i++) {
+            System.arraycopy(digests.get(i).mBytes, 0, bytes, i * DIGEST_LENGTH, DIGEST_LENGTH);
+        }
+        return Base64.encode(bytes);
+    }
+
+    /**
+     * Adds the verified digests previously returned from {@link #save()}. The outcomes already
+     * in the memo are kept, malformed <var>saved</var> is ignored.
+     */
+    void load(@Nonnull String saved) {
+        final byte[] bytes;
+        try {
+            bytes = Base64.decode(saved);
+        } catch (Base64DecoderException e) {
+            Billing.error("Can't load verified signatures", e);
+            return;
+        }
+        if (bytes.length % DIGEST_LENGTH != 0) {
+            if (Billing.isErrorLoggable()) {
+                Billing.error("Can't load verified signatures: wrong length " + bytes.length);
+            }
+            return;
+        }
+        synchronized (mEntries) {
+            // the saved digests go first so that the digests verified in this run are evicted last
+            final Map<Digest, Boolean> current = new LinkedHashMap<>(mEntries);
+            mEntries.clear();
+            for (int i = 0; i < bytes.length; i += DIGEST_LENGTH) {
+                final byte[] digest = new byte[DIGEST_LENGTH];
+                System.arraycopy(bytes, i, digest, 0, DIGEST_LENGTH);
+                mEntries.put(new Digest(digest), true);
+            }
+            mEntries.putAll(current);
+        }
+    }
+
+    private static final class Digest {
+        @Nonnull
+        private final byte[] mBytes;
+        private final int mHashCode;
+
+        private Digest(@Nonnull byte[] bytes) {
+            Check.isTrue(bytes.length == DIGEST_LENGTH, "Wrong digest length");
+            mBytes = bytes;
+            // digest bytes are uniformly distributed => the first 4 bytes are a good hash
+            mHashCode = (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Digest)) return false;
+            return Arrays.equals(mBytes, ((Digest) o).mBytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
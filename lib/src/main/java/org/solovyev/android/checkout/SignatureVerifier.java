@@ -0,0 +1,281 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import static android.text.TextUtils.isEmpty;
+
+/**
+ * Verifies the signatures of the purchases with the given public key. Unlike
+ * {@link Security#verifyPurchase(String, String, String)} the public key is parsed only once (on
+ * the first verification) and each thread keeps its own {@link Signature} instance and the
+ * buffers for the signature decoding, thus, verifying a long purchase history costs only the
+ * RSA operations.
+ * The outcomes are remembered in a {@link SignatureMemo} keyed by SHA-256 digest of the data and
+ * the signature, so the purchases which are returned again and again are verified only once.
+ * If a {@link Cache} is set the digests of the verified purchases are also stored there under a
+ * {@link Cache.Key#TYPE_SIGNATURES} key (see {@link #save()}) and loaded on the first
+ * verification. The entry's key contains the fingerprint of the public key, thus, the stored
+ * outcomes are not used if the key changes.
+ * This class is thread-safe.
+ */
+final class SignatureVerifier {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA1withRSA";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int MEMO_CAPACITY = 1000;
+    private static final long MEMO_EXPIRES_IN = 30L * Billing.DAY;
+    /**
+     * The whole memo is rewritten on each save => the new outcomes are saved in batches of
+     * {@link #SAVE_BATCH_SIZE} digests or once in {@link #SAVE_INTERVAL}
+     */
+    static final int SAVE_BATCH_SIZE = 50;
+    static final long SAVE_INTERVAL = Billing.MINUTE;
+
+    @Nonnull
+    private final String mPublicKey;
+    @Nullable
+    private volatile PublicKey mKey;
+    @Nonnull
+    private final ThreadLocal<Verifier> mVerifiers = new ThreadLocal<>();
+    @Nonnull
+    private final SignatureMemo mMemo;
+    @GuardedBy("this")
+    @Nullable
+    private Cache mCache;
+    @GuardedBy("this")
+    @Nullable
+    private Cache.Key mCacheKey;
+    /**
+     * True if the memo doesn't need to be loaded from the cache, written under the lock but read
+     * without it on each verification
+     */
+    private volatile boolean mLoaded;
+    /**
+     * Time of the last {@link #save()} which wrote the memo, 0 if nothing was written yet
+     */
+    @GuardedBy("this")
+    private long mSavedAt;
+
+    SignatureVerifier(@Nonnull String publicKey) {
+        this(publicKey, MEMO_CAPACITY);
+    }
+
+    SignatureVerifier(@Nonnull String publicKey, int memoCapacity) {
+        mPublicKey = publicKey;
+        mMemo = new SignatureMemo(memoCapacity);
+    }
+
+    /**
+     * @param cache cache where the verified signatures are stored, null to not store them
+     */
+    synchronized void setCache(@Nullable Cache cache) {
+        mCache = cache;
+        mLoaded = false;
+        if (cache != null && mCacheKey == null) {
+            mCacheKey = new Cache.Key(Cache.Key.TYPE_SIGNATURES, getFingerprint(mPublicKey));
+        }
+    }
+
+    @Nonnull
+    SignatureMemo getMemo() {
+        return mMemo;
+    }
+
+    /**
+     * Stores the verified signatures in the cache if the entry has been removed from the cache
+     * (f.e. it has expired or the cache has been cleared) or if there are new ones since the last
+     * write: immediately for the first write, later - only if enough of them has accumulated or
+     * enough time has passed
+     */
+    synchronized void save() {
+        if (mCache == null || mCacheKey == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final int changes = mMemo.getChanges();
+        final boolean due = changes >= SAVE_BATCH_SIZE || (changes > 0 && (mSavedAt == 0 || now - mSavedAt >= SAVE_INTERVAL));
+        if (due || (mMemo.size() > 0 && mCache.get(mCacheKey) == null)) {
+            mCache.put(mCacheKey, new Cache.Entry(mMemo.save(), now + MEMO_EXPIRES_IN));
+            mSavedAt = now;
+        }
+    }
+
+    private synchronized void loadIfNeeded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (mCache == null || mCacheKey == null) {
+            return;
+        }
+        final Cache.Entry entry = mCache.get(mCacheKey);
+        if (entry != null && entry.data instanceof String) {
+            mMemo.load((String) entry.data);
+        }
+    }
+
+    @Nonnull
+    private static String getFingerprint(@Nonnull String publicKey) {
+        try {
+            final byte[] digest = MessageDigest.getInstance(DIGEST_ALGORITHM).digest(publicKey.getBytes());
+            return Base64.encodeWebSafe(digest, false).substring(0, 16);
+        } catch (GeneralSecurityException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @param signedData signed JSON string
+     * @param signature  base64-encoded signature of <var>signedData</var>
+     * @return true if <var>signature</var> is a valid signature of <var>signedData</var>
+     * @throws IllegalArgumentException if the public key is invalid
+     */
+    boolean verify(@Nonnull String signedData, @Nonnull String signature) {
+        if (isEmpty(mPublicKey) || isEmpty(signedData) || isEmpty(signature)) {
+            return false;
+        }
+        if (!mLoaded) {
+            loadIfNeeded();
+        }
+        Verifier verifier = mVerifiers.get();
+        if (verifier == null) {
+            verifier = newVerifier();
+            if (verifier == null) {
+                return false;
+            }
+            mVerifiers.set(verifier);
+        }
+        try {
+            final byte[] data = signedData.getBytes();
+            final byte[] digest = verifier.digest(data, signature);
+            final Boolean memoized = mMemo.get(digest);
+            if (memoized != null) {
+                return memoized;
+            }
+            final boolean verified = verifier.verify(data);
+            mMemo.put(digest, verified);
+            return verified;
+        } catch (GeneralSecurityException | Base64DecoderException e) {
+            // the state of the signature is unknown after the failure => it should not be reused
+            mVerifiers.remove();
+            if (Billing.isErrorLoggable()) {
+                Billing.error("Signature verification failed", e);
+            }
+            return false;
+        }
+    }
+
+    @Nullable
+    private Verifier newVerifier() {
+        try {
+            final Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initVerify(getKey());
+            return new Verifier(signature, MessageDigest.getInstance(DIGEST_ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            if (Billing.isErrorLoggable()) {
+                Billing.error("Can't create signature", e);
+            }
+            return null;
+        }
+    }
+
+    @Nonnull
+    private PublicKey getKey() {
+        PublicKey key = mKey;
+        if (key == null) {
+            // several threads might parse the key at the same time but the result is the same
+            key = Security.generatePublicKey(mPublicKey);
+            mKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * {@link Signature} initialized for the verification, {@link MessageDigest} for the memo and
+     * the buffers for the signature decoding, confined to one thread
+     */
+    private static final class Verifier {
+        @Nonnull
+        private final Signature mSignature;
+        @Nonnull
+        private final MessageDigest mDigest;
+        @Nonnull
+        private byte[] mEncoded = new byte[512];
+        private int mEncodedLength;
+        @Nonnull
+        private byte[] mDecoded = new byte[Base64.getMaxDecodedLength(512)];
+
+        private Verifier(@Nonnull Signature signature, @Nonnull MessageDigest digest) {
+            mSignature = signature;
+            mDigest = digest;
+        }
+
+        /**
+         * Computes the digest of <var>data</var> and <var>signature</var>, the latter is kept
+         * for the subsequent {@link #verify(byte[])} call
+         */
+        @Nonnull
+        byte[] digest(@Nonnull byte[] data, @Nonnull String signature) {
+            encode(signature);
+            // data length is included so that the boundary between data and signature is fixed
+            mDigest.update((byte) (data.length >>> 24));
+            mDigest.update((byte) (data.length >>> 16));
+            mDigest.update((byte) (data.length >>> 8));
+            mDigest.update((byte) data.length);
+            mDigest.update(data);
+            mDigest.update(mEncoded, 0, mEncodedLength);
+            return mDigest.digest();
+        }
+
+        boolean verify(@Nonnull byte[] data) throws GeneralSecurityException, Base64DecoderException {
+            final int length = Base64.decodeTo(mEncoded, 0, mEncodedLength, mDecoded);
+            // Signature is reset to the initial state after verify()
+            mSignature.update(data);
+            return mSignature.verify(mDecoded, 0, length);
+        }
+
+        private void encode(@Nonnull String signature) {
+            final int length = signature.length();
+            if (mEncoded.length < length) {
+                mEncoded = new byte[length];
+                mDecoded = new byte[Base64.getMaxDecodedLength(length)];
+            }
+            for (int i = 0; i < length; i++) {
+                final char c = signature.charAt(i);
+                // non-ASCII characters are not valid in Base64 => they are mapped to an invalid
+                // byte
+                mEncoded[i] = c < 0x80 ? (byte) c : (byte) 0x80;
+            }
+            mEncodedLength = length;
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 /**
@@ -36,6 +37,23 @@ import javax.annotation.concurrent.Immutable;
 @Immutable
 public final class Sku {
 
+    private static final int FIELD_PRODUCT_ID = 0;
+    private static final int FIELD_PRICE = 1;
+    private static final int FIELD_AMOUNT = 2;
+    private static final int FIELD_CURRENCY = 3;
+    private static final int FIELD_TITLE = 4;
+    private static final int FIELD_DESCRIPTION = 5;
+    @Nonnull
+    private static final ThreadLocal<JsonFields> sFields = new ThreadLocal<JsonFields>() {
+        @Override
+        protected JsonFields initialValue() {
+            final JsonFields fields = new JsonFields("productId", "price", "price_amount_micros", "price_currency_code", "title", "description");
+            // all the SKUs are usually priced in the same currency
+            fields.intern(FIELD_CURRENCY);
+            return fields;
+        }
+    };
+
     @Nonnull
     public final Id id;
 
@@ -72,11 +90,69 @@ public final class Sku {
         description = object.optString("description");
     }
 
+    /**
+     * Parses <var>json</var> with {@link JsonFields} (which reads only the needed fields) and
+     * falls back to {@link #Sku(String, String)} if the JSON can't be parsed that way
+     */
     @Nonnull
     static Sku fromJson(@Nonnull String json, @Nonnull String product) throws JSONException {
+        final JsonFields fields = sFields.get();
+        if (fields.read(json)) {
+            final Sku sku = fromFields(fields, product);
+            if (sku != null) {
+                return sku;
+            }
+        }
         return new Sku(json, product);
     }
 
+    /**
+     * @return SKU if the types of the fields are the same as expected by
+     * {@link #Sku(String, String)}, null otherwise
+     */
+    @Nullable
+    private static Sku fromFields(@Nonnull JsonFields fields, @Nonnull String product) {
+        if (fields.getType(FIELD_PRODUCT_ID) != JsonFields.STRING || fields.getType(FIELD_PRICE) != JsonFields.STRING
+                || fields.getType(FIELD_TITLE) != JsonFields.STRING) {
+            return null;
+        }
+        final String description;
+        final String currency;
+        final long amount;
+        switch (fields.getType(FIELD_DESCRIPTION)) {
+            case JsonFields.MISSING:
+                description = "";
+                break;
+            case JsonFields.STRING:
+                description = fields.getString(FIELD_DESCRIPTION);
+                break;
+            default:
+                return null;
+        }
+        switch (fields.getType(FIELD_CURRENCY)) {
+            case JsonFields.MISSING:
+                currency = "";
+                break;
+            case JsonFields.STRING:
+                currency = fields.getString(FIELD_CURRENCY);
+                break;
+            default:
+                return null;
+        }
+        switch (fields.getType(FIELD_AMOUNT)) {
+            case JsonFields.MISSING:
+                amount = 0;
+                break;
+            case JsonFields.LONG:
+                amount = fields.getLong(FIELD_AMOUNT);
+                break;
+            default:
+                return null;
+        }
+        return new Sku(product, fields.getString(FIELD_PRODUCT_ID), fields.getString(FIELD_PRICE), Price.valueOf(amount, currency),
+                fields.getString(FIELD_TITLE), description);
+    }
+
     @Nonnull
     String toJson() throws JSONException {
         return toJsonObject().toString();
@@ -149,6 +225,11 @@ public final class Sku {
         private static Price fromJson(@Nonnull JSONObject json) throws JSONException {
             final long amount = json.optLong("price_amount_micros");
             final String currency = json.optString("price_currency_code");
+            return valueOf(amount, currency);
+        }
+
+        @Nonnull
+        static Price valueOf(long amount, @Nonnull String currency) {
             if (amount == 0 || TextUtils.isEmpty(currency)) {
                 return EMPTY;
             } else {
@@ -28,7 +28,9 @@ import android.os.Bundle;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -53,6 +55,13 @@ public final class Skus {
     @Nonnull
     public final List<Sku> list;
 
+    /**
+     * Index of {@link #list} by SKU code, created on the first lookup. The map is not modified
+     * after creation and is published through the volatile field
+     */
+    @Nullable
+    private volatile Map<String, Sku> mIndex;
+
     Skus(@Nonnull String product, @Nonnull List<Sku> list) {
         this.product = product;
         this.list = Collections.unmodifiableList(list);
@@ -82,15 +91,25 @@ public final class Skus {
 
     @Nullable
     public Sku getSku(@Nonnull String sku) {
-        for (Sku s : list) {
-            if (s.id.code.equals(sku)) {
-                return s;
-            }
-        }
-        return null;
+        return getIndex().get(sku);
     }
 
     public boolean hasSku(@Nonnull String sku) {
         return getSku(sku) != null;
     }
+
+    @Nonnull
+    private Map<String, Sku> getIndex() {
+        Map<String, Sku> index = mIndex;
+        if (index == null) {
+            index = new HashMap<>(2 * list.size());
+            // iterate backwards: the first SKU with the given code wins as in the linear search
+            for (int i = list.size() - 1; i >= 0; i--) {
+                final Sku sku = list.get(i);
+                index.put(sku.id.code, sku);
+            }
+            mIndex = index;
+        }
+        return index;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Executor shared by all the purchase verifiers (see {@link BasePurchaseVerifier} and
+ * {@link DefaultPurchaseVerifier}), so the number of the verification threads doesn't depend on
+ * the number of the verifiers. The threads are started on the first task and stopped after
+ * {@link #KEEP_ALIVE_SECONDS} of inactivity. Each connected {@link Billing} is a user of the
+ * executor (see {@link #acquire()}/{@link #release()}): when the last one disconnects the pool is
+ * shut down (the tasks already submitted are still executed) and a new one is started if needed.
+ * An application can replace the pool with its own executor via {@link #setExecutor(Executor)}.
+ */
+@ThreadSafe
+final class VerifierExecutor implements Executor {
+
+    @Nonnull
+    static final VerifierExecutor INSTANCE = new VerifierExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private final int mThreads;
+    @GuardedBy("this")
+    @Nullable
+    private Executor mExecutor;
+    @GuardedBy("this")
+    @Nullable
+    private ThreadPoolExecutor mPool;
+    @GuardedBy("this")
+    private int mUsers;
+
+    VerifierExecutor(int threads) {
+        Check.isTrue(threads > 0, "Number of threads must be positive");
+        mThreads = threads;
+    }
+
+    /**
+     * @return maximum number of threads started by this executor (if no executor was set via
+     * {@link #setExecutor(Executor)})
+     */
+    int getThreads() {
+        return mThreads;
+    }
+
+    /**
+     * The underlying executor is called outside of the lock as an application's executor might
+     * block or run the task on the calling thread
+     */
+    @Override
+    public void execute(@Nonnull Runnable runnable) {
+        while (true) {
+            final Executor executor = getExecutor();
+            try {
+                executor.execute(runnable);
+                return;
+            } catch (RejectedExecutionException e) {
+                // the pool might have been shut down by the last user after it was obtained =>
+                // try again with a new one
+                if (!isReplaced(executor)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isReplaced(@Nonnull Executor executor) {
+        return executor != mExecutor && executor != mPool;
+    }
+
+    @Nonnull
+    private synchronized Executor getExecutor() {
+        if (mExecutor != null) {
+            return mExecutor;
+        }
+        if (mPool == null) {
+            mPool = newPool(mThreads);
+        }
+        return mPool;
+    }
+
+    @Nonnull
+    private static ThreadPoolExecutor newPool(int threads) {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Nonnull
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                final Thread thread = new Thread(r, "PurchaseVerifierThread #" + mCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @param executor executor to be used instead of the internal pool, null to use the internal
+     *                 pool
+     */
+    synchronized void setExecutor(@Nullable Executor executor) {
+        mExecutor = executor;
+        if (executor != null) {
+            shutdown();
+        }
+    }
+
+    synchronized void acquire() {
+        mUsers++;
+    }
+
+    synchronized void release() {
+        Check.isTrue(mUsers > 0, "Executor is not acquired");
+        mUsers--;
+        if (mUsers == 0) {
+            shutdown();
+        }
+    }
+
+    /**
+     * @return true if the internal pool is running
+     */
+    synchronized boolean isStarted() {
+        return mPool != null;
+    }
+
+    private void shutdown() {
+        Check.isTrue(Thread.holdsLock(this), "Must be synchronized");
+        if (mPool != null) {
+            mPool.shutdown();
+            mPool = null;
+        }
+    }
+}
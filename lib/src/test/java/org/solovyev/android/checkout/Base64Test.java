@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class Base64Test {
+
+    @Nonnull
+    private final Random mRandom = new Random(42);
+
+    @Test
+    public void testShouldDecodeAsAndroid() throws Exception {
+        for (int length = 0; length < 300; length++) {
+            final byte[] bytes = newBytes(length);
+            final String encoded = android.util.Base64.encodeToString(bytes, android.util.Base64.NO_WRAP);
+
+            assertEquals(encoded, Base64.encode(bytes));
+            assertArrayEquals(bytes, Base64.decode(encoded));
+            assertArrayEquals(bytes, Base64.decode(encoded.getBytes()));
+        }
+    }
+
+    @Test
+    public void testShouldDecodeWithWhitespaces() throws Exception {
+        for (int length = 0; length < 300; length += 7) {
+            final byte[] bytes = newBytes(length);
+            // line breaks after every 76 characters
+            final String wrapped = android.util.Base64.encodeToString(bytes, android.util.Base64.DEFAULT);
+            assertArrayEquals(bytes, Base64.decode(wrapped));
+
+            final String spaced = insertWhitespaces(Base64.encode(bytes));
+            assertArrayEquals(spaced, bytes, Base64.decode(spaced));
+        }
+    }
+
+    @Test
+    public void testShouldDecodeWebSafe() throws Exception {
+        for (int length = 0; length < 300; length++) {
+            final byte[] bytes = newBytes(length);
+            final String padded = android.util.Base64.encodeToString(bytes, android.util.Base64.URL_SAFE | android.util.Base64.NO_WRAP);
+            final String unpadded = android.util.Base64.encodeToString(bytes, android.util.Base64.URL_SAFE | android.util.Base64.NO_WRAP | android.util.Base64.NO_PADDING);
+
+            assertEquals(unpadded, Base64.encodeWebSafe(bytes, false));
+            assertArrayEquals(bytes, Base64.decodeWebSafe(padded));
+            assertArrayEquals(bytes, Base64.decodeWebSafe(unpadded));
+        }
+    }
+
+    @Test
+    public void testShouldDecodeToGivenArray() throws Exception {
+        final byte[] bytes = newBytes(100);
+        final byte[] encoded = ("  " + Base64.encode(bytes) + "  ").getBytes();
+        final byte[] destination = new byte[Base64.getMaxDecodedLength(encoded.length - 4)];
+
+        final int length = Base64.decodeTo(encoded, 2, encoded.length - 4, destination);
+
+        assertEquals(bytes.length, length);
+        assertArrayEquals(bytes, Arrays.copyOf(destination, length));
+
+        final byte[] webSafe = Base64.encodeWebSafe(bytes, false).getBytes();
+        assertEquals(bytes.length, Base64.decodeWebSafeTo(webSafe, 0, webSafe.length, destination));
+        assertArrayEquals(bytes, Arrays.copyOf(destination, length));
+    }
+
+    @Test
+    public void testShouldDecodeLongContent() throws Exception {
+        final byte[] bytes = newBytes(10 * 1024);
+
+        assertArrayEquals(bytes, Base64.decode(Base64.encode(bytes)));
+    }
+
+    @Test
+    public void testShouldFailOnInvalidContent() throws Exception {
+        assertInvalid("ab!d");
+        assertInvalid("a===");
+        assertInvalid("abcd=");
+        assertInvalid("ab=c");
+        assertInvalid("abcde");
+        assertInvalid("abéd");
+    }
+
+    @Test
+    public void testShouldFailOnLongNonAsciiContent() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2 * 1024; i++) {
+            sb.append("AAAA");
+        }
+        // "à" in UTF-8 (the default charset on Android) is C3 A0 which becomes "C " after masking
+        // the high bit
+        sb.replace(4, 5, "à");
+        assertInvalid(sb.toString());
+    }
+
+    private static void assertInvalid(@Nonnull String encoded) {
+        try {
+            Base64.decode(encoded);
+            fail("Must fail: " + encoded);
+        } catch (Base64DecoderException e) {
+            // expected
+        }
+    }
+
+    @Nonnull
+    private String insertWhitespaces(@Nonnull String encoded) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < encoded.length(); i++) {
+            if (mRandom.nextInt(5) == 0) {
+                sb.append(mRandom.nextBoolean() ? ' ' : '\n');
+            }
+            sb.append(encoded.charAt(i));
+        }
+        return sb.toString();
+    }
+
+    @Nonnull
+    private byte[] newBytes(int length) {
+        final byte[] bytes = new byte[length];
+        mRandom.nextBytes(bytes);
+        return bytes;
+    }
+}
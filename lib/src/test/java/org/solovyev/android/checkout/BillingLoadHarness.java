@@ -0,0 +1,527 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import static org.junit.Assert.assertEquals;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+
+/**
+ * Load harness which drives {@link Billing} backed by {@link FakeBillingService} from many
+ * threads and tags at once. While the requests are running the harness cancels the requests of
+ * random tags and disconnects/reconnects the service. At the end it prints the throughput, the
+ * latency percentiles of each operation and the peak heap usage, and checks that every request
+ * has either finished or been cancelled.
+ * The harness is not a part of the regular test run, use
+ * <pre>./gradlew :lib:testDebugUnitTest -PloadHarness --tests '*BillingLoadHarness'</pre>
+ * The load is configured with the "checkout.load.*" system properties, see the constants below.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BillingLoadHarness {
+
+    private static final int THREADS = Integer.getInteger("checkout.load.threads", 8);
+    private static final int REQUESTS = Integer.getInteger("checkout.load.requests", 1000);
+    private static final int IN_FLIGHT = Integer.getInteger("checkout.load.inFlight", 16);
+    private static final int TAGS = Integer.getInteger("checkout.load.tags", 32);
+    private static final long CANCEL_MILLIS = Long.getLong("checkout.load.cancelMillis", 500);
+    private static final long CHURN_MILLIS = Long.getLong("checkout.load.churnMillis", 5000);
+    private static final double LATENCY_MILLIS = Double.parseDouble(System.getProperty("checkout.load.latencyMillis", "0.5"));
+    private static final long SEED = Long.getLong("checkout.load.seed", 20161018L);
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int SKUS = 500;
+    private static final int CONSUMABLES = 200;
+
+    private enum Op {
+        GET_SKUS,
+        GET_ALL_PURCHASES,
+        IS_PURCHASED,
+        CONSUME;
+
+        @Nonnull
+        static Op next(@Nonnull Random random) {
+            final int i = random.nextInt(100);
+            if (i < 40) {
+                return GET_SKUS;
+            } else if (i < 60) {
+                return GET_ALL_PURCHASES;
+            } else if (i < 85) {
+                return IS_PURCHASED;
+            }
+            return CONSUME;
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        final FakeBillingService service = new FakeBillingService(SEED)
+                .addSkus(IN_APP, SKUS)
+                .addPurchases(IN_APP, 200)
+                .addSkus(SUBSCRIPTION, 20)
+                .addPurchases(SUBSCRIPTION, 20)
+                .setPageSize(100)
+                .setLatency(FakeBillingService.Latency.logNormal(LATENCY_MILLIS, 0.5));
+        final List<String> tokens = new ArrayList<>(CONSUMABLES);
+        for (int i = 0; i < CONSUMABLES; i++) {
+            tokens.add(service.addPurchase(IN_APP, "sku_" + i, Purchase.State.PURCHASED));
+        }
+
+        final MemoryMetrics metrics = Billing.newMetrics();
+        final Billing billing = new Billing(RuntimeEnvironment.application, newConfiguration());
+        billing.setMetrics(metrics);
+        final MainQueue mainThread = new MainQueue();
+        billing.setMainThread(mainThread);
+        Tests.setService(billing, service);
+
+        final BillingRequests[] requests = new BillingRequests[TAGS];
+        for (int i = 0; i < TAGS; i++) {
+            final Billing.RequestsBuilder builder = billing.newRequestsBuilder().withTag("tag" + i);
+            // half of the tags get their results on the main thread
+            requests[i] = (i % 2 == 0 ? builder.onMainThread() : builder.onBackgroundThread()).create();
+        }
+
+        final Results results = new Results(THREADS * REQUESTS);
+        final HeapSampler heap = new HeapSampler();
+        heap.start();
+
+        final List<Client> clients = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            clients.add(new Client(i, requests, tokens, results));
+        }
+        final long start = System.nanoTime();
+        for (Client client : clients) {
+            client.start();
+        }
+
+        // this thread plays the role of the main thread: it delivers the results and connects
+        // the service, and, while the clients are running, cancels and reconnects
+        final Random random = new Random(SEED);
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long nextCancel = System.currentTimeMillis() + CANCEL_MILLIS;
+        long nextChurn = System.currentTimeMillis() + CHURN_MILLIS;
+        int cancels = 0;
+        int churns = 0;
+        boolean clientsDone = false;
+        while (!results.isDone() && System.currentTimeMillis() < deadline) {
+            mainThread.run(1);
+            if (!clientsDone) {
+                clientsDone = areDone(clients);
+                if (clientsDone) {
+                    // the last disconnect might have left some requests waiting for the connection
+                    billing.connect();
+                    continue;
+                }
+                final long now = System.currentTimeMillis();
+                if (now >= nextCancel) {
+                    requests[random.nextInt(TAGS)].cancelAll();
+                    cancels++;
+                    nextCancel = now + CANCEL_MILLIS;
+                }
+                if (now >= nextChurn) {
+                    billing.disconnect();
+                    mainThread.run(0);
+                    billing.connect();
+                    churns++;
+                    nextChurn = now + CHURN_MILLIS;
+                }
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        heap.interrupt();
+        heap.join();
+
+        billing.disconnect();
+        mainThread.run(0);
+
+        System.out.println(report(results, metrics.snapshot(), heap, elapsed, cancels, churns));
+        assertEquals("Requests neither finished nor cancelled", 0, results.getLost());
+    }
+
+    private static boolean areDone(@Nonnull List<Client> clients) {
+        for (Client client : clients) {
+            if (client.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nonnull
+    private static Billing.Configuration newConfiguration() {
+        return new Billing.DefaultConfiguration() {
+            @Nonnull
+            @Override
+            public String getPublicKey() {
+                return FakeBillingService.getPublicKey();
+            }
+
+            @Override
+            public boolean isAutoConnect() {
+                return false;
+            }
+        };
+    }
+
+    @Nonnull
+    private static String report(@Nonnull Results results, @Nonnull MemoryMetrics.Snapshot metrics,
+                                 @Nonnull HeapSampler heap, long elapsedNanos, int cancels, int churns) {
+        final StringBuilder sb = new StringBuilder();
+        final double seconds = elapsedNanos / 1e9;
+        sb.append(String.format(Locale.US, "Billing load: %d threads x %d requests, %d in flight per thread, %d tags, fake latency %.2f ms%n",
+                THREADS, REQUESTS, IN_FLIGHT, TAGS, LATENCY_MILLIS));
+        sb.append(String.format(Locale.US, "%-18s %8s %8s %10s %10s %10s%n", "operation", "ok", "errors", "p50 ms", "p99 ms", "p999 ms"));
+        for (Op op : Op.values()) {
+            final long[] latencies = results.getLatencies(op);
+            sb.append(String.format(Locale.US, "%-18s %8d %8d %10.2f %10.2f %10.2f%n", op,
+                    results.getSuccesses(op), results.getErrors(op),
+                    percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999)));
+        }
+        final long[] all = results.getLatencies(null);
+        sb.append(String.format(Locale.US, "%-18s %8s %8s %10.2f %10.2f %10.2f%n", "all", "", "",
+                percentile(all, 0.5), percentile(all, 0.99), percentile(all, 0.999)));
+        sb.append(String.format(Locale.US, "finished %d of %d requests in %.2f s: %.0f requests/s%n",
+                all.length, results.getTotal(), seconds, all.length / seconds));
+        sb.append(String.format(Locale.US, "cancelled %d (%d cancelAll, %d reconnects), lost %d%n",
+                results.getCancelled(), cancels, churns, results.getLost()));
+        sb.append(String.format(Locale.US, "errors by response: %s%n", results.getResponses()));
+        sb.append(String.format(Locale.US, "cache hit ratio: skus %.2f, purchases %.2f%n",
+                metrics.getCacheHitRatio(RequestType.GET_SKU_DETAILS), metrics.getCacheHitRatio(RequestType.GET_PURCHASES)));
+        sb.append(String.format(Locale.US, "max queue size: %d%n", metrics.getMaxQueueSize()));
+        sb.append(String.format(Locale.US, "heap: %.1f MB before, %.1f MB peak", heap.getBaseline() / 1048576d, heap.getPeak() / 1048576d));
+        return sb.toString();
+    }
+
+    private static double percentile(@Nonnull long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int i = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+
+    /**
+     * Executes the posted runnables when {@link #run(long)} is called on the main thread
+     */
+    private static final class MainQueue implements CancellableExecutor {
+        @Nonnull
+        private final LinkedBlockingQueue<Runnable> mQueue = new LinkedBlockingQueue<>();
+
+        @Override
+        public void execute(@Nonnull Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        @Override
+        public void cancel(@Nonnull Runnable runnable) {
+            mQueue.remove(runnable);
+        }
+
+        /**
+         * Runs all the queued runnables waiting at most <var>timeoutMillis</var> for the first
+         * one
+         */
+        void run(long timeoutMillis) throws InterruptedException {
+            Check.isMainThread();
+            Runnable runnable = mQueue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+            while (runnable != null) {
+                runnable.run();
+                runnable = mQueue.poll();
+            }
+        }
+    }
+
+    private static final class Client extends Thread {
+        @Nonnull
+        private final Random mRandom;
+        @Nonnull
+        private final BillingRequests[] mRequests;
+        @Nonnull
+        private final List<String> mTokens;
+        @Nonnull
+        private final Results mResults;
+        @Nonnull
+        private final Semaphore mInFlight = new Semaphore(IN_FLIGHT);
+
+        Client(int id, @Nonnull BillingRequests[] requests, @Nonnull List<String> tokens, @Nonnull Results results) {
+            super("Client" + id);
+            mRandom = new Random(SEED + id);
+            mRequests = requests;
+            mTokens = tokens;
+            mResults = results;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < REQUESTS; i++) {
+                mInFlight.acquireUninterruptibly();
+                final BillingRequests requests = mRequests[mRandom.nextInt(mRequests.length)];
+                final String product = mRandom.nextInt(5) == 0 ? SUBSCRIPTION : IN_APP;
+                final Op op = Op.next(mRandom);
+                switch (op) {
+                    case GET_SKUS:
+                        requests.getSkus(product, nextSkus(), new Listener<Skus>(op, mResults, mInFlight));
+                        break;
+                    case GET_ALL_PURCHASES:
+                        requests.getAllPurchases(product, new Listener<Purchases>(op, mResults, mInFlight));
+                        break;
+                    case IS_PURCHASED:
+                        requests.isPurchased(product, nextSku(), new Listener<Boolean>(op, mResults, mInFlight));
+                        break;
+                    case CONSUME:
+                        // tokens might be consumed several times => some of the consumptions fail
+                        requests.consume(mTokens.get(mRandom.nextInt(mTokens.size())), new Listener<Object>(op, mResults, mInFlight));
+                        break;
+                }
+            }
+        }
+
+        @Nonnull
+        private String nextSku() {
+            return "sku_" + mRandom.nextInt(SKUS);
+        }
+
+        @Nonnull
+        private List<String> nextSkus() {
+            // skus are picked from a small range so that the same lists are requested again
+            // and the cache is used
+            final int count = 1 + mRandom.nextInt(3);
+            final String[] skus = new String[count];
+            final int from = mRandom.nextInt(20) * 10;
+            for (int i = 0; i < count; i++) {
+                skus[i] = "sku_" + (from + i * 5);
+            }
+            return Arrays.asList(skus);
+        }
+    }
+
+    private static final class Listener<R> implements CancellableRequestListener<R> {
+        @Nonnull
+        private final Op mOp;
+        @Nonnull
+        private final Results mResults;
+        @Nonnull
+        private final Semaphore mInFlight;
+        @Nonnull
+        private final AtomicBoolean mDone = new AtomicBoolean();
+        private final long mStart = System.nanoTime();
+
+        Listener(@Nonnull Op op, @Nonnull Results results, @Nonnull Semaphore inFlight) {
+            mOp = op;
+            mResults = results;
+            mInFlight = inFlight;
+        }
+
+        @Override
+        public void onSuccess(@Nonnull R result) {
+            if (mDone.compareAndSet(false, true)) {
+                mResults.onFinished(mOp, System.nanoTime() - mStart, ResponseCodes.OK);
+                mInFlight.release();
+            }
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            if (mDone.compareAndSet(false, true)) {
+                mResults.onFinished(mOp, System.nanoTime() - mStart, response);
+                mInFlight.release();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (mDone.compareAndSet(false, true)) {
+                mResults.onCancelled();
+                mInFlight.release();
+            }
+        }
+    }
+
+    private static final class Results {
+        private final int mTotal;
+        @Nonnull
+        private final long[][] mLatencies = new long[Op.values().length][];
+        @Nonnull
+        private final AtomicIntegerArray mSuccesses = new AtomicIntegerArray(Op.values().length);
+        @Nonnull
+        private final AtomicIntegerArray mErrors = new AtomicIntegerArray(Op.values().length);
+        @Nonnull
+        private final AtomicInteger mCancelled = new AtomicInteger();
+        @GuardedBy("mResponses")
+        @Nonnull
+        private final Map<Integer, Integer> mResponses = new TreeMap<>();
+
+        Results(int total) {
+            mTotal = total;
+            for (int i = 0; i < mLatencies.length; i++) {
+                mLatencies[i] = new long[total];
+            }
+        }
+
+        void onFinished(@Nonnull Op op, long nanos, int response) {
+            final int o = op.ordinal();
+            final int i;
+            if (response == ResponseCodes.OK) {
+                i = mSuccesses.getAndIncrement(o);
+            } else {
+                i = mErrors.getAndIncrement(o);
+                synchronized (mResponses) {
+                    final Integer count = mResponses.get(response);
+                    mResponses.put(response, count == null ? 1 : count + 1);
+                }
+            }
+            // the slots are assigned from both ends, successes from the start and errors from
+            // the end
+            mLatencies[o][response == ResponseCodes.OK ? i : mTotal - 1 - i] = nanos;
+        }
+
+        void onCancelled() {
+            mCancelled.incrementAndGet();
+        }
+
+        boolean isDone() {
+            return getFinished() + mCancelled.get() >= mTotal;
+        }
+
+        int getTotal() {
+            return mTotal;
+        }
+
+        int getFinished() {
+            int finished = 0;
+            for (int o = 0; o < mLatencies.length; o++) {
+                finished += mSuccesses.get(o) + mErrors.get(o);
+            }
+            return finished;
+        }
+
+        int getSuccesses(@Nonnull Op op) {
+            return mSuccesses.get(op.ordinal());
+        }
+
+        int getErrors(@Nonnull Op op) {
+            return mErrors.get(op.ordinal());
+        }
+
+        int getCancelled() {
+            return mCancelled.get();
+        }
+
+        int getLost() {
+            return mTotal - getFinished() - mCancelled.get();
+        }
+
+        @Nonnull
+        String getResponses() {
+            synchronized (mResponses) {
+                return mResponses.toString();
+            }
+        }
+
+        /**
+         * @param op operation, null for all the operations
+         * @return sorted latencies of the finished requests
+         */
+        @Nonnull
+        long[] getLatencies(@Nullable Op op) {
+            final long[] result = new long[op == null ? getFinished() : getSuccesses(op) + getErrors(op)];
+            int i = 0;
+            for (Op o : Op.values()) {
+                if (op != null && op != o) {
+                    continue;
+                }
+                final long[] latencies = mLatencies[o.ordinal()];
+                final int successes = getSuccesses(o);
+                final int errors = getErrors(o);
+                System.arraycopy(latencies, 0, result, i, successes);
+                System.arraycopy(latencies, mTotal - errors, result, i + successes, errors);
+                i += successes + errors;
+            }
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+    private static final class HeapSampler extends Thread {
+        @Nonnull
+        private final Runtime mRuntime = Runtime.getRuntime();
+        private final long mBaseline;
+        private volatile long mPeak;
+
+        HeapSampler() {
+            super("HeapSampler");
+            setDaemon(true);
+            System.gc();
+            mBaseline = getUsed();
+            mPeak = mBaseline;
+        }
+
+        private long getUsed() {
+            return mRuntime.totalMemory() - mRuntime.freeMemory();
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                mPeak = Math.max(mPeak, getUsed());
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        long getBaseline() {
+            return mBaseline;
+        }
+
+        long getPeak() {
+            return mPeak;
+        }
+    }
+}
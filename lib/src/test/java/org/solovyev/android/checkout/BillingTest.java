@@ -8,6 +8,7 @@ import org.json.JSONException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.robolectric.RobolectricTestRunner;
@@ -15,9 +16,11 @@ import org.robolectric.annotation.Config;
 
 import android.os.Bundle;
 import android.os.RemoteException;
+import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +32,7 @@ import static java.lang.System.currentTimeMillis;
 import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
@@ -157,6 +161,40 @@ public class BillingTest {
         assertEquals(Billing.State.DISCONNECTED, mBilling.getState());
     }
 
+    @Test
+    public void testShouldCheckLogLevels() throws Exception {
+        try {
+            final DefaultLogger logger = new DefaultLogger();
+            logger.setEnabled(true);
+            logger.setLevel(Log.WARN);
+            Billing.setLogger(logger);
+            assertFalse(Billing.isDebugLoggable());
+            assertTrue(Billing.isWarningLoggable());
+            assertTrue(Billing.isErrorLoggable());
+
+            Billing.setLogger(null);
+            assertFalse(Billing.isErrorLoggable());
+
+            // loggers which can't tell log everything
+            Billing.setLogger(mock(Logger.class));
+            assertTrue(Billing.isDebugLoggable());
+        } finally {
+            Billing.setLogger(new DefaultLogger());
+        }
+    }
+
+    @Test
+    public void testShouldNotDisconnectWhileConnecting() throws Exception {
+        mBilling.setState(Billing.State.CONNECTING);
+        mBilling.setService(null, false);
+
+        assertEquals(Billing.State.CONNECTING, mBilling.getState());
+
+        mBilling.setService(mock(IInAppBillingService.class), true);
+
+        assertEquals(Billing.State.CONNECTED, mBilling.getState());
+    }
+
     @Test
     public void testShouldConnectOnlyIfConnecting() throws Exception {
         mBilling.setState(Billing.State.FAILED);
@@ -224,6 +262,36 @@ public class BillingTest {
         checkIsPurchased("5", false);
     }
 
+    @Test
+    public void testArePurchasedShouldCollectAllThePurchases() throws Exception {
+        final Billing billing = prepareMultiPurchasesBilling();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CountDownListener l = new CountDownListener(latch);
+        billing.getRequests().arePurchased(ProductTypes.IN_APP, asList("5", "3", "0", "-1", "3"), l);
+
+        assertTrue(latch.await(1, SECONDS));
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(l.listener).onSuccess(captor.capture());
+        final Map<String, Boolean> purchased = captor.getValue();
+        assertEquals(asList("5", "3", "0", "-1"), new ArrayList<>(purchased.keySet()));
+        assertEquals(asList(false, true, true, false), new ArrayList<>(purchased.values()));
+    }
+
+    @Test
+    public void testArePurchasedShouldStopLoadingWhenAllSkusAreFound() throws Exception {
+        final Billing billing = prepareMultiPurchasesBilling();
+        final IInAppBillingService service = ((TestServiceConnector) billing.getConnector()).mService;
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final CountDownListener l = new CountDownListener(latch);
+        billing.getRequests().arePurchased(ProductTypes.IN_APP, asList("0", "1"), l);
+
+        assertTrue(latch.await(1, SECONDS));
+        verify(service).getPurchases(anyInt(), anyString(), anyString(), eq("1"));
+        verify(service, never()).getPurchases(anyInt(), anyString(), anyString(), eq("2"));
+    }
+
     @Test
     public void testShouldReturnAllPurchases() throws Exception {
         final Billing billing = prepareMultiPurchasesBilling();
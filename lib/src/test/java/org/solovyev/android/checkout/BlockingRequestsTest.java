@@ -0,0 +1,186 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.checkout.BillingTest.newPurchasesBundle;
+import static org.solovyev.android.checkout.RequestTestBase.newBundle;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BlockingRequestsTest {
+
+    @Nonnull
+    private Billing mBilling;
+    @Nonnull
+    private IInAppBillingService mService;
+    @Nonnull
+    private BlockingBillingRequests mRequests;
+
+    @Before
+    public void setUp() throws Exception {
+        mBilling = Tests.newBilling();
+        mService = ((TestServiceConnector) mBilling.getConnector()).mService;
+        mRequests = mBilling.newBlockingRequests(1, SECONDS);
+    }
+
+    @Test
+    public void testShouldExecuteOnCallingThreadIfConnected() throws Exception {
+        mBilling.connect();
+        assertSame(Billing.State.CONNECTED, mBilling.getState());
+
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        when(mService.isBillingSupported(anyInt(), anyString(), anyString())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                thread.set(Thread.currentThread());
+                return ResponseCodes.OK;
+            }
+        });
+
+        assertTrue(mRequests.isBillingSupported(ProductTypes.IN_APP));
+        assertSame(Thread.currentThread(), thread.get());
+    }
+
+    @Test
+    public void testShouldConnectIfNotConnected() throws Exception {
+        Tests.mockGetSkuDetails(mBilling, ProductTypes.IN_APP, asList(Sku.fromJson(SkuTest.newJson("1"), ProductTypes.IN_APP)));
+
+        final Skus skus = mRequests.getSkus(ProductTypes.IN_APP, asList("1"));
+
+        assertEquals(1, skus.list.size());
+        assertSame(Billing.State.CONNECTED, mBilling.getState());
+    }
+
+    @Test
+    public void testShouldUseCache() throws Exception {
+        mBilling.connect();
+        when(mService.isBillingSupported(anyInt(), anyString(), anyString())).thenReturn(ResponseCodes.OK);
+
+        assertTrue(mRequests.isBillingSupported(ProductTypes.IN_APP));
+        assertTrue(mRequests.isBillingSupported(ProductTypes.IN_APP));
+
+        verify(mService, times(1)).isBillingSupported(anyInt(), anyString(), eq(ProductTypes.IN_APP));
+    }
+
+    @Test
+    public void testShouldReturnFalseIfBillingIsUnavailable() throws Exception {
+        mBilling.connect();
+        when(mService.isBillingSupported(anyInt(), anyString(), anyString())).thenReturn(ResponseCodes.BILLING_UNAVAILABLE);
+
+        assertFalse(mRequests.isBillingSupported(ProductTypes.IN_APP));
+    }
+
+    @Test
+    public void testShouldThrowWithResponseCode() throws Exception {
+        mBilling.connect();
+        when(mService.getSkuDetails(anyInt(), anyString(), anyString(), any(Bundle.class))).thenReturn(newBundle(ResponseCodes.ITEM_UNAVAILABLE));
+
+        try {
+            mRequests.getSkus(ProductTypes.IN_APP, asList("1"));
+            fail();
+        } catch (BillingException e) {
+            assertEquals(ResponseCodes.ITEM_UNAVAILABLE, e.getResponse());
+        }
+    }
+
+    @Test
+    public void testShouldThrowIfConsumeFails() throws Exception {
+        mBilling.connect();
+        when(mService.consumePurchase(anyInt(), anyString(), anyString())).thenReturn(ResponseCodes.ITEM_NOT_OWNED);
+
+        try {
+            mRequests.consume("token");
+            fail();
+        } catch (BillingException e) {
+            assertEquals(ResponseCodes.ITEM_NOT_OWNED, e.getResponse());
+        }
+    }
+
+    @Test
+    public void testShouldTimeoutIfServiceIsNotConnected() throws Exception {
+        final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
+        when(connector.connect()).thenReturn(true);
+        mBilling.setConnector(connector);
+
+        try {
+            mBilling.newBlockingRequests(50, MILLISECONDS).isBillingSupported(ProductTypes.IN_APP);
+            fail();
+        } catch (BillingException e) {
+            assertEquals(ResponseCodes.TIMEOUT, e.getResponse());
+        }
+    }
+
+    @Test
+    public void testShouldLoadAllPurchases() throws Exception {
+        mBilling.connect();
+        when(mService.getPurchases(anyInt(), anyString(), anyString(), isNull(String.class))).thenReturn(newPurchasesBundle(0, true));
+        when(mService.getPurchases(anyInt(), anyString(), anyString(), eq("1"))).thenReturn(newPurchasesBundle(1, true));
+        when(mService.getPurchases(anyInt(), anyString(), anyString(), eq("2"))).thenReturn(newPurchasesBundle(2, false));
+
+        final Purchases purchases = mRequests.getAllPurchases(ProductTypes.IN_APP);
+
+        assertEquals(3, purchases.list.size());
+        assertNull(purchases.continuationToken);
+        assertTrue(mRequests.isPurchased(ProductTypes.IN_APP, "2"));
+        assertFalse(mRequests.isPurchased(ProductTypes.IN_APP, "3"));
+        final Map<String, Boolean> purchased = mRequests.arePurchased(ProductTypes.IN_APP, asList("3", "1"));
+        assertEquals(asList("3", "1"), new ArrayList<>(purchased.keySet()));
+        assertEquals(asList(false, true), new ArrayList<>(purchased.values()));
+    }
+}
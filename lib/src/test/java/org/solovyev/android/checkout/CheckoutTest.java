@@ -46,6 +46,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.solovyev.android.checkout.ProductTypes.IN_APP;
 import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+import static org.solovyev.android.checkout.ResponseCodes.ERROR;
 import static org.solovyev.android.checkout.ResponseCodes.OK;
 import static org.solovyev.android.checkout.Tests.newBilling;
 
@@ -53,17 +54,21 @@ import static org.solovyev.android.checkout.Tests.newBilling;
 @Config(manifest = Config.NONE)
 public class CheckoutTest {
 
+    @Nonnull
+    private Billing mBilling;
+    @Nonnull
+    private IInAppBillingService mService;
     @Nonnull
     private Checkout mCheckout;
 
     @Before
     public void setUp() throws Exception {
-        Billing billing = newBilling();
-        billing.connect();
-        final IInAppBillingService service = ((TestServiceConnector) billing.getConnector()).mService;
-        when(service.isBillingSupported(eq(3), anyString(), eq(IN_APP))).thenReturn(OK);
-        when(service.isBillingSupported(eq(3), anyString(), eq(SUBSCRIPTION))).thenReturn(OK);
-        mCheckout = Checkout.forApplication(billing);
+        mBilling = newBilling(false);
+        mBilling.connect();
+        mService = ((TestServiceConnector) mBilling.getConnector()).mService;
+        when(mService.isBillingSupported(eq(3), anyString(), eq(IN_APP))).thenReturn(OK);
+        when(mService.isBillingSupported(eq(3), anyString(), eq(SUBSCRIPTION))).thenReturn(OK);
+        mCheckout = Checkout.forApplication(mBilling);
     }
 
     @Test
@@ -81,6 +86,41 @@ public class CheckoutTest {
         verify(l.listener).onReady(any(BillingRequests.class));
     }
 
+    @Test
+    public void testShouldBeReadyImmediatelyIfBillingSupportIsKnown() throws Exception {
+        final CountDownListener l = new CountDownListener();
+        mCheckout.start(l);
+        l.waitWhileLoading();
+
+        final Checkout.Listener listener = mock(Checkout.Listener.class);
+        final Checkout checkout = Checkout.forApplication(mBilling);
+        checkout.start(listener);
+
+        // no waiting: the listener must be notified from start()
+        verify(listener, times(2)).onReady(any(BillingRequests.class), anyString(), eq(true));
+        verify(listener).onReady(any(BillingRequests.class));
+        verify(mService, times(1)).isBillingSupported(eq(3), anyString(), eq(IN_APP));
+        verify(mService, times(1)).isBillingSupported(eq(3), anyString(), eq(SUBSCRIPTION));
+    }
+
+    @Test
+    public void testShouldNotRememberTemporaryErrors() throws Exception {
+        when(mService.isBillingSupported(eq(3), anyString(), eq(SUBSCRIPTION))).thenReturn(ERROR);
+        final CountDownListener l = new CountDownListener();
+        mCheckout.start(l);
+        l.waitWhileLoading();
+        verify(l.listener).onReady(any(BillingRequests.class), eq(SUBSCRIPTION), eq(false));
+
+        when(mService.isBillingSupported(eq(3), anyString(), eq(SUBSCRIPTION))).thenReturn(OK);
+        final CountDownListener l2 = new CountDownListener();
+        Checkout.forApplication(mBilling).start(l2);
+        l2.waitWhileLoading();
+
+        verify(l2.listener).onReady(any(BillingRequests.class), eq(SUBSCRIPTION), eq(true));
+        verify(mService, times(1)).isBillingSupported(eq(3), anyString(), eq(IN_APP));
+        verify(mService, times(2)).isBillingSupported(eq(3), anyString(), eq(SUBSCRIPTION));
+    }
+
     private final static class CountDownListener implements Checkout.Listener {
 
         @Nonnull
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CoalescingExecutorTest {
+
+    @Nonnull
+    private PostingExecutor mPosting;
+    @Nonnull
+    private CoalescingExecutor mExecutor;
+    @Nonnull
+    private List<Integer> mExecuted;
+
+    @Before
+    public void setUp() throws Exception {
+        mPosting = new PostingExecutor();
+        mExecutor = new CoalescingExecutor(mPosting);
+        mExecuted = new ArrayList<>();
+    }
+
+    @Test
+    public void testShouldPostOnceForAllRunnables() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            mExecutor.execute(new AddingRunnable(i));
+        }
+
+        assertEquals(1, mPosting.mPosted.size());
+        mPosting.runAll();
+        assertEquals(asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), mExecuted);
+    }
+
+    @Test
+    public void testShouldPostAgainAfterDrain() throws Exception {
+        mExecutor.execute(new AddingRunnable(0));
+        mPosting.runAll();
+        mExecutor.execute(new AddingRunnable(1));
+        mExecutor.execute(new AddingRunnable(2));
+
+        assertEquals(1, mPosting.mPosted.size());
+        mPosting.runAll();
+        assertEquals(asList(0, 1, 2), mExecuted);
+    }
+
+    @Test
+    public void testShouldNotRunCancelledRunnable() throws Exception {
+        final Runnable cancelled = new AddingRunnable(1);
+        mExecutor.execute(new AddingRunnable(0));
+        mExecutor.execute(cancelled);
+        mExecutor.execute(new AddingRunnable(2));
+        mExecutor.cancel(cancelled);
+
+        mPosting.runAll();
+        assertEquals(asList(0, 2), mExecuted);
+    }
+
+    @Test
+    public void testShouldRunRunnablesAddedWhileDrainingInNextDrain() throws Exception {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mExecuted.add(0);
+                mExecutor.execute(new AddingRunnable(1));
+            }
+        });
+
+        mPosting.runNext();
+        assertEquals(asList(0), mExecuted);
+        assertEquals(1, mPosting.mPosted.size());
+        mPosting.runAll();
+        assertEquals(asList(0, 1), mExecuted);
+        assertEquals(2, mPosting.mPostCount);
+    }
+
+    @Test
+    public void testShouldNotDrainForeverIfRunnablesKeepComing() throws Exception {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mExecuted.add(mExecuted.size());
+                mExecutor.execute(this);
+            }
+        });
+        mExecutor.execute(new AddingRunnable(-1));
+
+        mPosting.runNext();
+        assertEquals(asList(0, -1), mExecuted);
+        mPosting.runNext();
+        assertEquals(asList(0, -1, 2), mExecuted);
+        assertEquals(1, mPosting.mPosted.size());
+    }
+
+    @Test
+    public void testShouldPostNextDrainOnMainThread() throws Exception {
+        ShadowLooper.pauseMainLooper();
+        final MainThread mainThread = new MainThread(new Handler(Looper.getMainLooper()));
+        final CoalescingExecutor executor = new CoalescingExecutor(mainThread.posting());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mExecuted.add(mExecuted.size());
+                executor.execute(this);
+            }
+        });
+
+        // the drain returns before the re-enqueued runnable runs
+        ShadowLooper.runMainLooperOneTask();
+        assertEquals(asList(0), mExecuted);
+        ShadowLooper.runMainLooperOneTask();
+        assertEquals(asList(0, 1), mExecuted);
+    }
+
+    @Test
+    public void testShouldContinueAfterException() throws Exception {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new RuntimeException();
+            }
+        });
+        mExecutor.execute(new AddingRunnable(1));
+
+        try {
+            mPosting.runNext();
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        assertTrue(mExecuted.isEmpty());
+        mPosting.runAll();
+        assertEquals(asList(1), mExecuted);
+    }
+
+    private final class AddingRunnable implements Runnable {
+        private final int mValue;
+
+        private AddingRunnable(int value) {
+            mValue = value;
+        }
+
+        @Override
+        public void run() {
+            mExecuted.add(mValue);
+        }
+    }
+
+    private static final class PostingExecutor implements CancellableExecutor {
+        @Nonnull
+        private final List<Runnable> mPosted = new ArrayList<>();
+        private int mPostCount;
+
+        @Override
+        public void execute(@Nonnull Runnable runnable) {
+            mPosted.add(runnable);
+            mPostCount++;
+        }
+
+        @Override
+        public void cancel(@Nonnull Runnable runnable) {
+            mPosted.remove(runnable);
+        }
+
+        void runNext() {
+            mPosted.remove(0).run();
+        }
+
+        void runAll() {
+            while (!mPosted.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.os.DeadObjectException;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.checkout.BillingTest.newPurchasesBundle;
+import static org.solovyev.android.checkout.ResponseCodes.EXCEPTION;
+import static org.solovyev.android.checkout.ResponseCodes.ITEM_NOT_OWNED;
+import static org.solovyev.android.checkout.ResponseCodes.OK;
+import static org.solovyev.android.checkout.ResponseCodes.SERVICE_NOT_CONNECTED;
+
+@SuppressWarnings("unchecked")
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ConsumePurchasesRequestTest {
+
+    @Test
+    public void testShouldReportResponseForEveryToken() throws Exception {
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        when(service.consumePurchase(anyInt(), anyString(), eq("1"))).thenReturn(OK);
+        when(service.consumePurchase(anyInt(), anyString(), eq("2"))).thenReturn(ITEM_NOT_OWNED);
+        when(service.consumePurchase(anyInt(), anyString(), eq("3"))).thenThrow(new IllegalStateException());
+        when(service.consumePurchase(anyInt(), anyString(), eq("4"))).thenReturn(OK);
+        final ConsumePurchasesRequest request = new ConsumePurchasesRequest(asList("4", "3", "2", "1"));
+        final RequestListener<Map<String, Integer>> l = mock(RequestListener.class);
+        request.setListener(l);
+
+        request.start(service, "test");
+
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(l).onSuccess(captor.capture());
+        verify(l, never()).onError(anyInt(), any(Exception.class));
+        final Map<String, Integer> responses = captor.getValue();
+        assertEquals(asList("4", "3", "2", "1"), new ArrayList<>(responses.keySet()));
+        assertEquals(asList(OK, EXCEPTION, ITEM_NOT_OWNED, OK), new ArrayList<>(responses.values()));
+        verify(service, times(4)).consumePurchase(anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    public void testShouldStopIfServiceIsDead() throws Exception {
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        when(service.consumePurchase(anyInt(), anyString(), eq("1"))).thenReturn(OK);
+        when(service.consumePurchase(anyInt(), anyString(), eq("2"))).thenThrow(new DeadObjectException());
+        final ConsumePurchasesRequest request = new ConsumePurchasesRequest(asList("1", "2", "3", "4"));
+        final RequestListener<Map<String, Integer>> l = mock(RequestListener.class);
+        request.setListener(l);
+
+        request.start(service, "test");
+
+        final ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(l).onSuccess(captor.capture());
+        final Map<String, Integer> responses = captor.getValue();
+        assertEquals(asList("1", "2", "3", "4"), new ArrayList<>(responses.keySet()));
+        assertEquals(asList(OK, EXCEPTION, SERVICE_NOT_CONNECTED, SERVICE_NOT_CONNECTED), new ArrayList<>(responses.values()));
+        verify(service, times(2)).consumePurchase(anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    public void testShouldFailIfServiceIsDeadBeforeConsuming() throws Exception {
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        when(service.consumePurchase(anyInt(), anyString(), anyString())).thenThrow(new DeadObjectException());
+        final ConsumePurchasesRequest request = new ConsumePurchasesRequest(asList("1", "2"));
+        request.setListener(mock(RequestListener.class));
+
+        try {
+            request.start(service, "test");
+            fail();
+        } catch (DeadObjectException e) {
+            // expected
+        }
+        verify(service, times(1)).consumePurchase(anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    public void testShouldInvalidatePurchasesIfCancelledAfterConsuming() throws Exception {
+        final Billing billing = Tests.newSynchronousBilling();
+        final IInAppBillingService service = ((TestServiceConnector) billing.getConnector()).mService;
+        when(service.getPurchases(anyInt(), anyString(), anyString(), isNull(String.class))).thenReturn(newPurchasesBundle(0, false));
+        when(service.consumePurchase(anyInt(), anyString(), anyString())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                billing.cancelAll();
+                return OK;
+            }
+        });
+        final BillingRequests requests = billing.getRequests();
+        requests.getPurchases(ProductTypes.IN_APP, null, mock(RequestListener.class));
+
+        final RequestListener<Map<String, Integer>> l = mock(RequestListener.class);
+        requests.consume(asList("1", "2"), l);
+
+        verify(service, times(1)).consumePurchase(anyInt(), anyString(), anyString());
+        verify(l, never()).onSuccess(anyMap());
+        requests.getPurchases(ProductTypes.IN_APP, null, mock(RequestListener.class));
+        verify(service, times(2)).getPurchases(anyInt(), anyString(), anyString(), isNull(String.class));
+    }
+
+    @Test
+    public void testShouldNotConsumeIfCancelled() throws Exception {
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        final ConsumePurchasesRequest request = new ConsumePurchasesRequest(asList("1", "2"));
+        request.setListener(mock(RequestListener.class));
+        request.cancel();
+
+        request.start(service, "test");
+
+        verify(service, never()).consumePurchase(anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    public void testShouldRejectDuplicateTokens() throws Exception {
+        final Billing billing = Tests.newSynchronousBilling();
+        final IInAppBillingService service = ((TestServiceConnector) billing.getConnector()).mService;
+
+        try {
+            billing.getRequests().consume(asList("1", "2", "1"), mock(RequestListener.class));
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        verify(service, never()).consumePurchase(anyInt(), anyString(), anyString());
+    }
+
+    @Test
+    public void testShouldNotBeCached() throws Exception {
+        assertNull(new ConsumePurchasesRequest(asList("1")).getCacheKey());
+    }
+
+    @Test
+    public void testShouldInvalidatePurchasesOnce() throws Exception {
+        final Billing billing = Tests.newSynchronousBilling();
+        final IInAppBillingService service = ((TestServiceConnector) billing.getConnector()).mService;
+        when(service.getPurchases(anyInt(), anyString(), anyString(), isNull(String.class))).thenReturn(newPurchasesBundle(0, false));
+        when(service.consumePurchase(anyInt(), anyString(), anyString())).thenReturn(OK);
+        final BillingRequests requests = billing.getRequests();
+
+        requests.getPurchases(ProductTypes.IN_APP, null, mock(RequestListener.class));
+        requests.getPurchases(ProductTypes.IN_APP, null, mock(RequestListener.class));
+        verify(service, times(1)).getPurchases(anyInt(), anyString(), anyString(), isNull(String.class));
+
+        final RequestListener<Map<String, Integer>> l = mock(RequestListener.class);
+        requests.consume(asList("1", "2", "3"), l);
+        verify(l).onSuccess(anyMap());
+
+        requests.getPurchases(ProductTypes.IN_APP, null, mock(RequestListener.class));
+        verify(service, times(2)).getPurchases(anyInt(), anyString(), anyString(), isNull(String.class));
+    }
+}
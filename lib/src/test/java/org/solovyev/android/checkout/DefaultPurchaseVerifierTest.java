@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DefaultPurchaseVerifierTest {
+
+    @Nonnull
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        mExecutor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void testShouldVerifySmallListOnCallingThread() throws Exception {
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable command) {
+                throw new AssertionError("Must not be used");
+            }
+        };
+        final DefaultPurchaseVerifier verifier = new DefaultPurchaseVerifier(FakeBillingService.getPublicKey(), executor, 4);
+        final List<Purchase> purchases = newPurchases(DefaultPurchaseVerifier.MIN_PARALLEL_SIZE - 1);
+
+        assertEquals(getExpected(purchases), verify(verifier, purchases));
+    }
+
+    @Test
+    public void testShouldPreserveOrderInParallel() throws Exception {
+        final DefaultPurchaseVerifier verifier = new DefaultPurchaseVerifier(FakeBillingService.getPublicKey(), mExecutor, 4);
+        final List<Purchase> purchases = newPurchases(101);
+
+        assertEquals(getExpected(purchases), verify(verifier, purchases));
+    }
+
+    @Test
+    public void testShouldVerifyIfExecutorDoesNothing() throws Exception {
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable command) {
+            }
+        };
+        final DefaultPurchaseVerifier verifier = new DefaultPurchaseVerifier(FakeBillingService.getPublicKey(), executor, 4);
+        final List<Purchase> purchases = newPurchases(50);
+
+        assertEquals(getExpected(purchases), verify(verifier, purchases));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShouldRethrowExceptionOnCallingThread() throws Exception {
+        final DefaultPurchaseVerifier verifier = new DefaultPurchaseVerifier("test", mExecutor, 4);
+
+        verify(verifier, newPurchases(50));
+    }
+
+    @Nonnull
+    private static List<Purchase> verify(@Nonnull DefaultPurchaseVerifier verifier, @Nonnull List<Purchase> purchases) {
+        final Thread thread = Thread.currentThread();
+        final AtomicReference<List<Purchase>> result = new AtomicReference<>();
+        verifier.verify(purchases, new EmptyRequestListener<List<Purchase>>() {
+            @Override
+            public void onSuccess(@Nonnull List<Purchase> verified) {
+                assertSame(thread, Thread.currentThread());
+                result.set(verified);
+            }
+        });
+        return result.get();
+    }
+
+    /**
+     * @return purchases where every third purchase has a wrong signature
+     */
+    @Nonnull
+    private static List<Purchase> newPurchases(int count) throws Exception {
+        final List<Purchase> purchases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String data = PurchaseTest.newJson(i, Purchase.State.PURCHASED);
+            final String signature = FakeBillingService.sign(i % 3 == 0 ? data + " " : data);
+            purchases.add(Purchase.fromJson(data, signature));
+        }
+        return purchases;
+    }
+
+    @Nonnull
+    private static List<Purchase> getExpected(@Nonnull List<Purchase> purchases) {
+        final List<Purchase> expected = new ArrayList<>();
+        for (int i = 0; i < purchases.size(); i++) {
+            if (i % 3 != 0) {
+                expected.add(purchases.get(i));
+            }
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,610 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.app.PendingIntent;
+import android.os.Bundle;
+import android.os.DeadObjectException;
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+import static org.solovyev.android.checkout.ResponseCodes.BILLING_UNAVAILABLE;
+import static org.solovyev.android.checkout.ResponseCodes.DEVELOPER_ERROR;
+import static org.solovyev.android.checkout.ResponseCodes.ITEM_ALREADY_OWNED;
+import static org.solovyev.android.checkout.ResponseCodes.ITEM_NOT_OWNED;
+import static org.solovyev.android.checkout.ResponseCodes.ITEM_UNAVAILABLE;
+import static org.solovyev.android.checkout.ResponseCodes.OK;
+
+/**
+ * In-process implementation of the Billing service which doesn't need Google Play: it keeps a
+ * catalog of SKUs and a purchase history per product, pages the purchases via continuation
+ * tokens and signs them with its own key (see {@link #getPublicKey()}). Each call can be slowed
+ * down with a {@link Latency} and can fail with an error code or a {@link DeadObjectException}.
+ * All the random values are derived from the seed passed to the constructor. The service is
+ * thread-safe.
+ * Creating a {@link PendingIntent} needs a {@link android.content.Context}, thus, the buy intents
+ * are created by a {@link BuyIntentFactory} passed by the caller.
+ */
+final class FakeBillingService implements IInAppBillingService {
+
+    enum Call {
+        IS_BILLING_SUPPORTED,
+        GET_SKU_DETAILS,
+        GET_BUY_INTENT,
+        GET_PURCHASES,
+        CONSUME_PURCHASE
+    }
+
+    private static final int MAX_SKUS_PER_REQUEST = 20;
+    private static final String PACKAGE_NAME = "org.solovyev.android.checkout.test";
+
+    @Nullable
+    private static KeyPair sKeyPair;
+
+    @GuardedBy("this")
+    @Nonnull
+    private final Random mRandom;
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<Call, Latency> mLatencies = new EnumMap<>(Call.class);
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<Call, Failure> mFailures = new EnumMap<>(Call.class);
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<String, Map<String, String>> mSkus = new HashMap<>();
+    @GuardedBy("this")
+    @Nonnull
+    private final Map<String, List<Entry>> mPurchases = new HashMap<>();
+    @GuardedBy("this")
+    @Nonnull
+    private final Set<String> mUnsupported = new HashSet<>();
+    @GuardedBy("this")
+    private int mPageSize = 100;
+    @GuardedBy("this")
+    private long mTime = 1400000000000L;
+    @GuardedBy("this")
+    private int mOrders;
+    @Nonnull
+    private final AtomicIntegerArray mCalls = new AtomicIntegerArray(Call.values().length);
+    @Nullable
+    private final BuyIntentFactory mBuyIntents;
+
+    /**
+     * Creates a service which can't start purchases: the buy intent calls return
+     * {@link ResponseCodes#DEVELOPER_ERROR}
+     */
+    FakeBillingService(long seed) {
+        this(seed, null);
+    }
+
+    FakeBillingService(long seed, @Nullable BuyIntentFactory buyIntents) {
+        mRandom = new Random(seed);
+        mBuyIntents = buyIntents;
+    }
+
+    /**
+     * Generating RSA keys is slow, thus, the same key pair is used by all the instances
+     */
+    @Nonnull
+    private static synchronized KeyPair getKeyPair() {
+        if (sKeyPair == null) {
+            try {
+                final SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+                random.setSeed(0L);
+                final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048, random);
+                sKeyPair = generator.generateKeyPair();
+            } catch (GeneralSecurityException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return sKeyPair;
+    }
+
+    /**
+     * @return base64-encoded public key which verifies the signatures of the purchases returned
+     * by this service
+     */
+    @Nonnull
+    static String getPublicKey() {
+        return Base64.encode(getKeyPair().getPublic().getEncoded());
+    }
+
+    @Nonnull
+    static String sign(@Nonnull String data) {
+        try {
+            final Signature signature = Signature.getInstance("SHA1withRSA");
+            signature.initSign(getKeyPair().getPrivate());
+            signature.update(data.getBytes());
+            return Base64.encode(signature.sign());
+        } catch (GeneralSecurityException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Adds <var>count</var> SKUs with ids "sku_0", "sku_1", etc to the catalog of
+     * <var>product</var>
+     */
+    @Nonnull
+    synchronized FakeBillingService addSkus(@Nonnull String product, int count) {
+        Map<String, String> skus = mSkus.get(product);
+        if (skus == null) {
+            skus = new LinkedHashMap<>();
+            mSkus.put(product, skus);
+        }
+        final int start = skus.size();
+        try {
+            for (int i = start; i < start + count; i++) {
+                final String sku = "sku_" + i;
+                final long micros = (1 + mRandom.nextInt(100)) * 990000L;
+                final JSONObject json = new JSONObject();
+                json.put("productId", sku);
+                json.put("type", product);
+                json.put("price", "$" + micros / 1000000 + "." + micros / 10000 % 100);
+                json.put("price_amount_micros", micros);
+                json.put("price_currency_code", "USD");
+                json.put("title", "Product " + sku);
+                json.put("description", "Description of " + sku);
+                skus.put(sku, json.toString());
+            }
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+        return this;
+    }
+
+    /**
+     * Adds <var>count</var> purchases of random SKUs of <var>product</var> to the history. Most
+     * of them are purchased, the rest are cancelled or refunded. The signatures are computed
+     * when the purchases are returned for the first time.
+     */
+    @Nonnull
+    synchronized FakeBillingService addPurchases(@Nonnull String product, int count) {
+        final Map<String, String> skus = mSkus.get(product);
+        final int skuCount = skus == null || skus.isEmpty() ? count : skus.size();
+        for (int i = 0; i < count; i++) {
+            final int state = mRandom.nextInt(10);
+            addPurchase(product, "sku_" + mRandom.nextInt(skuCount), state < 8 ? Purchase.State.PURCHASED : state == 8 ? Purchase.State.CANCELLED : Purchase.State.REFUNDED);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a purchase to the history as if it was done by the user
+     *
+     * @return token of the purchase
+     */
+    @Nonnull
+    synchronized String addPurchase(@Nonnull String product, @Nonnull String sku, @Nonnull Purchase.State state) {
+        List<Entry> purchases = mPurchases.get(product);
+        if (purchases == null) {
+            purchases = new ArrayList<>();
+            mPurchases.put(product, purchases);
+        }
+        final int order = mOrders++;
+        mTime += 1 + mRandom.nextInt(1000000);
+        final String token = "token_" + product + "_" + order;
+        try {
+            final JSONObject json = new JSONObject();
+            json.put("orderId", "GPA.1234-5678-9012-" + order);
+            json.put("packageName", PACKAGE_NAME);
+            json.put("productId", sku);
+            json.put("purchaseTime", mTime);
+            json.put("purchaseState", state.id);
+            json.put("developerPayload", "payload_" + order);
+            json.put("purchaseToken", token);
+            purchases.add(new Entry(sku, token, state, json.toString()));
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+        return token;
+    }
+
+    /**
+     * @return number of purchases of <var>product</var> in the history
+     */
+    synchronized int getPurchasesCount(@Nonnull String product) {
+        final List<Entry> purchases = mPurchases.get(product);
+        return purchases == null ? 0 : purchases.size();
+    }
+
+    @Nonnull
+    synchronized FakeBillingService setPageSize(int pageSize) {
+        Check.isTrue(pageSize > 0, "Page size must be positive");
+        mPageSize = pageSize;
+        return this;
+    }
+
+    @Nonnull
+    synchronized FakeBillingService setSupported(@Nonnull String product, boolean supported) {
+        if (supported) {
+            mUnsupported.remove(product);
+        } else {
+            mUnsupported.add(product);
+        }
+        return this;
+    }
+
+    @Nonnull
+    synchronized FakeBillingService setLatency(@Nonnull Latency latency) {
+        for (Call call : Call.values()) {
+            mLatencies.put(call, latency);
+        }
+        return this;
+    }
+
+    @Nonnull
+    synchronized FakeBillingService setLatency(@Nonnull Call call, @Nonnull Latency latency) {
+        mLatencies.put(call, latency);
+        return this;
+    }
+
+    /**
+     * Makes <var>call</var> return <var>response</var> with the given <var>probability</var>
+     */
+    @Nonnull
+    synchronized FakeBillingService setFailure(@Nonnull Call call, int response, double probability) {
+        mFailures.put(call, new Failure(response, probability));
+        return this;
+    }
+
+    /**
+     * Makes <var>call</var> throw {@link DeadObjectException} (as if the Billing service process
+     * died) with the given <var>probability</var>
+     */
+    @Nonnull
+    synchronized FakeBillingService setDeadObject(@Nonnull Call call, double probability) {
+        mFailures.put(call, new Failure(-1, probability));
+        return this;
+    }
+
+    @Nonnull
+    synchronized FakeBillingService clearFailures() {
+        mFailures.clear();
+        return this;
+    }
+
+    /**
+     * @return number of times <var>call</var> was made
+     */
+    int getCalls(@Nonnull Call call) {
+        return mCalls.get(call.ordinal());
+    }
+
+    /**
+     * Counts the call, waits for its latency and decides whether it fails
+     *
+     * @return response code of the failure or {@link ResponseCodes#OK}
+     */
+    private int onCall(@Nonnull Call call) throws RemoteException {
+        mCalls.incrementAndGet(call.ordinal());
+        final long latency;
+        final int response;
+        synchronized (this) {
+            final Latency l = mLatencies.get(call);
+            latency = l == null ? 0 : l.nextNanos(mRandom);
+            final Failure failure = mFailures.get(call);
+            response = failure != null && mRandom.nextDouble() < failure.mProbability ? failure.mResponse : OK;
+        }
+        if (latency > 0) {
+            LockSupport.parkNanos(latency);
+        }
+        if (response < 0) {
+            throw new DeadObjectException();
+        }
+        return response;
+    }
+
+    @Nonnull
+    private static Bundle newBundle(int response) {
+        final Bundle bundle = new Bundle();
+        bundle.putInt("RESPONSE_CODE", response);
+        return bundle;
+    }
+
+    @Override
+    public int isBillingSupported(int apiVersion, String packageName, String type) throws RemoteException {
+        final int response = onCall(Call.IS_BILLING_SUPPORTED);
+        if (response != OK) {
+            return response;
+        }
+        synchronized (this) {
+            return mUnsupported.contains(type) ? BILLING_UNAVAILABLE : OK;
+        }
+    }
+
+    @Override
+    public Bundle getSkuDetails(int apiVersion, String packageName, String type, Bundle skusBundle) throws RemoteException {
+        final int response = onCall(Call.GET_SKU_DETAILS);
+        if (response != OK) {
+            return newBundle(response);
+        }
+        final List<String> ids = skusBundle.getStringArrayList("ITEM_ID_LIST");
+        if (ids == null || ids.size() > MAX_SKUS_PER_REQUEST) {
+            return newBundle(DEVELOPER_ERROR);
+        }
+        final ArrayList<String> details = new ArrayList<>(ids.size());
+        synchronized (this) {
+            final Map<String, String> skus = mSkus.get(type);
+            if (skus != null) {
+                for (String id : ids) {
+                    final String json = skus.get(id);
+                    if (json != null) {
+                        details.add(json);
+                    }
+                }
+            }
+        }
+        final Bundle bundle = newBundle(OK);
+        bundle.putStringArrayList(Skus.BUNDLE_LIST, details);
+        return bundle;
+    }
+
+    @Override
+    public Bundle getBuyIntent(int apiVersion, String packageName, String sku, String type, String developerPayload) throws RemoteException {
+        final int response = onCall(Call.GET_BUY_INTENT);
+        if (response != OK) {
+            return newBundle(response);
+        }
+        synchronized (this) {
+            final Map<String, String> skus = mSkus.get(type);
+            if (skus == null || !skus.containsKey(sku)) {
+                return newBundle(ITEM_UNAVAILABLE);
+            }
+            if (findPurchased(type, sku) != null) {
+                return newBundle(ITEM_ALREADY_OWNED);
+            }
+        }
+        return newBuyIntentBundle();
+    }
+
+    @Nonnull
+    private Bundle newBuyIntentBundle() {
+        if (mBuyIntents == null) {
+            return newBundle(DEVELOPER_ERROR);
+        }
+        final Bundle bundle = newBundle(OK);
+        bundle.putParcelable("BUY_INTENT", mBuyIntents.create());
+        return bundle;
+    }
+
+    @Nullable
+    private Entry findPurchased(@Nonnull String product, @Nonnull String sku) {
+        Check.isTrue(Thread.holdsLock(this), "Must be synchronized");
+        final List<Entry> purchases = mPurchases.get(product);
+        if (purchases != null) {
+            for (Entry entry : purchases) {
+                if (entry.mSku.equals(sku) && entry.mState == Purchase.State.PURCHASED) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Bundle getPurchases(int apiVersion, String packageName, String type, String continuationToken) throws RemoteException {
+        final int response = onCall(Call.GET_PURCHASES);
+        if (response != OK) {
+            return newBundle(response);
+        }
+        final List<Entry> entries = new ArrayList<>();
+        final int start = continuationToken == null ? 0 : Integer.parseInt(continuationToken);
+        final boolean last;
+        synchronized (this) {
+            final List<Entry> purchases = mPurchases.get(type);
+            final int size = purchases == null ? 0 : purchases.size();
+            final int end = Math.min(size, start + mPageSize);
+            for (int i = start; i < end; i++) {
+                entries.add(purchases.get(i));
+            }
+            last = end >= size;
+        }
+        final ArrayList<String> skus = new ArrayList<>(entries.size());
+        final ArrayList<String> datas = new ArrayList<>(entries.size());
+        final ArrayList<String> signatures = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            skus.add(entry.mSku);
+            datas.add(entry.mData);
+            signatures.add(entry.getSignature());
+        }
+        final Bundle bundle = newBundle(OK);
+        bundle.putStringArrayList("INAPP_PURCHASE_ITEM_LIST", skus);
+        bundle.putStringArrayList(Purchases.BUNDLE_DATA_LIST, datas);
+        bundle.putStringArrayList(Purchases.BUNDLE_SIGNATURE_LIST, signatures);
+        if (!last) {
+            bundle.putString(Purchases.BUNDLE_CONTINUATION_TOKEN, String.valueOf(start + entries.size()));
+        }
+        return bundle;
+    }
+
+    @Override
+    public int consumePurchase(int apiVersion, String packageName, String purchaseToken) throws RemoteException {
+        final int response = onCall(Call.CONSUME_PURCHASE);
+        if (response != OK) {
+            return response;
+        }
+        synchronized (this) {
+            for (List<Entry> purchases : mPurchases.values()) {
+                for (int i = 0; i < purchases.size(); i++) {
+                    if (purchases.get(i).mToken.equals(purchaseToken)) {
+                        purchases.remove(i);
+                        return OK;
+                    }
+                }
+            }
+        }
+        return ITEM_NOT_OWNED;
+    }
+
+    @Override
+    public int stub(int apiVersion, String packageName, String type) throws RemoteException {
+        return OK;
+    }
+
+    @Override
+    public Bundle getBuyIntentToReplaceSkus(int apiVersion, String packageName, List<String> oldSkus, String newSku, String type, String developerPayload) throws RemoteException {
+        final int response = onCall(Call.GET_BUY_INTENT);
+        if (response != OK) {
+            return newBundle(response);
+        }
+        return newBuyIntentBundle();
+    }
+
+    @Override
+    public IBinder asBinder() {
+        return null;
+    }
+
+    /**
+     * Creates the intents which start the purchase flow
+     */
+    interface BuyIntentFactory {
+        @Nonnull
+        PendingIntent create();
+    }
+
+    /**
+     * Distribution of the time a call takes
+     */
+    abstract static class Latency {
+
+        /**
+         * @return next latency in nanoseconds
+         */
+        abstract long nextNanos(@Nonnull Random random);
+
+        @Nonnull
+        static Latency fixed(final long millis) {
+            return new Latency() {
+                @Override
+                long nextNanos(@Nonnull Random random) {
+                    return TimeUnit.MILLISECONDS.toNanos(millis);
+                }
+            };
+        }
+
+        @Nonnull
+        static Latency uniform(final long minMillis, final long maxMillis) {
+            Check.isTrue(minMillis <= maxMillis, "Min must be <= max");
+            return new Latency() {
+                @Override
+                long nextNanos(@Nonnull Random random) {
+                    final long min = TimeUnit.MILLISECONDS.toNanos(minMillis);
+                    final long max = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+                    return min + (long) (random.nextDouble() * (max - min));
+                }
+            };
+        }
+
+        /**
+         * Log-normal distribution: most of the calls are close to the median but there is a long
+         * tail of slow calls, as usual for the IPC
+         *
+         * @param medianMillis median latency
+         * @param sigma        standard deviation of the latency's logarithm, the bigger the
+         *                     longer the tail
+         */
+        @Nonnull
+        static Latency logNormal(final double medianMillis, final double sigma) {
+            return new Latency() {
+                @Override
+                long nextNanos(@Nonnull Random random) {
+                    final double millis = medianMillis * Math.exp(sigma * random.nextGaussian());
+                    return (long) (millis * 1000000d);
+                }
+            };
+        }
+    }
+
+    private static final class Failure {
+        /**
+         * Response code of the failure, -1 for {@link DeadObjectException}
+         */
+        private final int mResponse;
+        private final double mProbability;
+
+        private Failure(int response, double probability) {
+            mResponse = response;
+            mProbability = probability;
+        }
+    }
+
+    private static final class Entry {
+        @Nonnull
+        private final String mSku;
+        @Nonnull
+        private final String mToken;
+        @Nonnull
+        private final Purchase.State mState;
+        @Nonnull
+        private final String mData;
+        @GuardedBy("this")
+        @Nullable
+        private String mSignature;
+
+        private Entry(@Nonnull String sku, @Nonnull String token, @Nonnull Purchase.State state, @Nonnull String data) {
+            mSku = sku;
+            mToken = token;
+            mState = state;
+            mData = data;
+        }
+
+        @Nonnull
+        synchronized String getSignature() {
+            if (mSignature == null) {
+                mSignature = sign(mData);
+            }
+            return mSignature;
+        }
+    }
+}
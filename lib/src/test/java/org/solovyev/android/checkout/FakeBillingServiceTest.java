@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import android.os.Bundle;
+import android.os.DeadObjectException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.solovyev.android.checkout.FakeBillingService.Call.CONSUME_PURCHASE;
+import static org.solovyev.android.checkout.FakeBillingService.Call.GET_PURCHASES;
+import static org.solovyev.android.checkout.FakeBillingService.Call.GET_SKU_DETAILS;
+import static org.solovyev.android.checkout.FakeBillingService.Call.IS_BILLING_SUPPORTED;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ResponseCodes.DEVELOPER_ERROR;
+import static org.solovyev.android.checkout.ResponseCodes.ERROR;
+import static org.solovyev.android.checkout.ResponseCodes.EXCEPTION;
+import static org.solovyev.android.checkout.ResponseCodes.ITEM_NOT_OWNED;
+import static org.solovyev.android.checkout.ResponseCodes.OK;
+
+@SuppressWarnings("unchecked")
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class FakeBillingServiceTest {
+
+    @Nonnull
+    private Billing mBilling;
+    @Nonnull
+    private FakeBillingService mService;
+
+    @Before
+    public void setUp() throws Exception {
+        mBilling = Tests.newSynchronousBilling();
+        mBilling.setPurchaseVerifier(Billing.newPurchaseVerifier(FakeBillingService.getPublicKey()));
+        mService = new FakeBillingService(0, Tests.newBuyIntentFactory());
+        Tests.setService(mBilling, mService);
+    }
+
+    @Test
+    public void testShouldPageSignedPurchases() throws Exception {
+        mService.addSkus(IN_APP, 50).addPurchases(IN_APP, 250).setPageSize(100);
+        // pages are requested from the listener => a same thread executor would run the pending
+        // requests reentrantly
+        final ExecutorService background = Executors.newSingleThreadExecutor();
+        mBilling.setBackground(background);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Purchases> result = new AtomicReference<>();
+        mBilling.getRequests().getAllPurchases(IN_APP, new EmptyRequestListener<Purchases>() {
+            @Override
+            public void onSuccess(@Nonnull Purchases purchases) {
+                result.set(purchases);
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        background.shutdown();
+        // all the signatures are valid => all the purchases are verified
+        assertEquals(250, result.get().list.size());
+        assertEquals(3, mService.getCalls(GET_PURCHASES));
+    }
+
+    @Test
+    public void testShouldReturnSkusFromLargeCatalog() throws Exception {
+        mService.addSkus(IN_APP, 5000);
+        final List<String> skus = new ArrayList<>();
+        for (int i = 0; i < 45; i++) {
+            skus.add("sku_" + i * 100);
+        }
+        skus.add("missing");
+
+        final RequestListener<Skus> l = mock(RequestListener.class);
+        mBilling.getRequests().getSkus(IN_APP, skus, l);
+
+        final ArgumentCaptor<Skus> captor = ArgumentCaptor.forClass(Skus.class);
+        verify(l).onSuccess(captor.capture());
+        assertEquals(45, captor.getValue().list.size());
+        assertEquals(3, mService.getCalls(GET_SKU_DETAILS));
+    }
+
+    @Test
+    public void testShouldInjectErrorCode() throws Exception {
+        mService.setFailure(GET_PURCHASES, ERROR, 1d);
+
+        final RequestListener<Purchases> l = mock(RequestListener.class);
+        mBilling.getRequests().getAllPurchases(IN_APP, l);
+
+        verify(l).onError(eq(ERROR), any(BillingException.class));
+    }
+
+    @Test
+    public void testShouldInjectDeadObject() throws Exception {
+        mService.setDeadObject(IS_BILLING_SUPPORTED, 1d);
+
+        final RequestListener<Object> l = mock(RequestListener.class);
+        mBilling.getRequests().isBillingSupported(IN_APP, l);
+
+        verify(l).onError(eq(EXCEPTION), any(DeadObjectException.class));
+    }
+
+    @Test
+    public void testShouldConsumePurchase() throws Exception {
+        mService.addSkus(IN_APP, 10);
+        final String token = mService.addPurchase(IN_APP, "sku_1", Purchase.State.PURCHASED);
+
+        final RequestListener<Object> l1 = mock(RequestListener.class);
+        mBilling.getRequests().consume(token, l1);
+        verify(l1).onSuccess(any());
+        assertEquals(0, mService.getPurchasesCount(IN_APP));
+
+        final RequestListener<Object> l2 = mock(RequestListener.class);
+        mBilling.getRequests().consume(token, l2);
+        verify(l2).onError(eq(ITEM_NOT_OWNED), any(BillingException.class));
+        assertEquals(2, mService.getCalls(CONSUME_PURCHASE));
+    }
+
+    @Test
+    public void testShouldDelayCalls() throws Exception {
+        mService.setLatency(IS_BILLING_SUPPORTED, FakeBillingService.Latency.fixed(50));
+
+        final long start = System.currentTimeMillis();
+        mBilling.getRequests().isBillingSupported(IN_APP, mock(RequestListener.class));
+
+        assertTrue(System.currentTimeMillis() - start >= 50);
+    }
+
+    @Test
+    public void testLatencyShouldBeReproducible() throws Exception {
+        final FakeBillingService.Latency latency = FakeBillingService.Latency.logNormal(10, 1);
+        final Random r1 = new Random(1);
+        final Random r2 = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            final long nanos = latency.nextNanos(r1);
+            assertEquals(nanos, latency.nextNanos(r2));
+            assertTrue(nanos > 0);
+        }
+    }
+
+    @Test
+    public void testShouldCreateBuyIntent() throws Exception {
+        mService.addSkus(IN_APP, 10);
+
+        final Bundle bundle = mService.getBuyIntent(3, "test", "sku_1", IN_APP, null);
+
+        assertEquals(OK, bundle.getInt("RESPONSE_CODE"));
+        assertNotNull(bundle.getParcelable("BUY_INTENT"));
+    }
+
+    @Test
+    public void testShouldNotCreateBuyIntentWithoutFactory() throws Exception {
+        final FakeBillingService service = new FakeBillingService(0).addSkus(IN_APP, 10);
+
+        final Bundle bundle = service.getBuyIntent(3, "test", "sku_1", IN_APP, null);
+
+        assertEquals(DEVELOPER_ERROR, bundle.getInt("RESPONSE_CODE"));
+        assertNull(bundle.getParcelable("BUY_INTENT"));
+    }
+}
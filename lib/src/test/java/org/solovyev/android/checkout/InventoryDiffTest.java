@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+import static org.solovyev.android.checkout.Purchase.State.CANCELLED;
+import static org.solovyev.android.checkout.Purchase.State.PURCHASED;
+import static org.solovyev.android.checkout.Purchase.State.REFUNDED;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class InventoryDiffTest {
+
+    @Test
+    public void testShouldBeEmptyForSameSnapshots() throws Exception {
+        final Purchases from = newPurchases(newPurchase("1", "t1", PURCHASED), newPurchase("2", "t2", CANCELLED));
+        final Purchases to = newPurchases(newPurchase("2", "t2", CANCELLED), newPurchase("1", "t1", PURCHASED));
+
+        assertTrue(InventoryDiff.between(from, to).isEmpty());
+        assertTrue(InventoryDiff.between(from, from).isEmpty());
+    }
+
+    @Test
+    public void testShouldFindAddedAndRemovedPurchases() throws Exception {
+        final Purchase p1 = newPurchase("1", "t1", PURCHASED);
+        final Purchase p2 = newPurchase("2", "t2", PURCHASED);
+        final Purchase p3 = newPurchase("3", "t3", PURCHASED);
+        final Purchases from = newPurchases(p1, p2);
+        final Purchases to = newPurchases(p2, p3);
+
+        final InventoryDiff diff = InventoryDiff.between(from, to);
+
+        assertEquals(Collections.singletonList(p3), diff.added);
+        assertEquals(Collections.singletonList(p1), diff.removed);
+        assertTrue(diff.stateChanged.isEmpty());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    public void testShouldTreatPurchaseWithNewTokenAsNew() throws Exception {
+        final Purchase old = newPurchase("1", "t1", PURCHASED);
+        final Purchase repurchased = newPurchase("1", "t2", PURCHASED);
+
+        final InventoryDiff diff = InventoryDiff.between(newPurchases(old), newPurchases(repurchased));
+
+        assertEquals(Collections.singletonList(repurchased), diff.added);
+        assertEquals(Collections.singletonList(old), diff.removed);
+    }
+
+    @Test
+    public void testShouldFindStateChanges() throws Exception {
+        final Purchase before = newPurchase("1", "t1", PURCHASED);
+        final Purchase after = newPurchase("1", "t1", REFUNDED);
+
+        final InventoryDiff diff = InventoryDiff.between(newPurchases(before, newPurchase("2", "t2", PURCHASED)),
+                newPurchases(newPurchase("2", "t2", PURCHASED), after));
+
+        assertTrue(diff.added.isEmpty());
+        assertTrue(diff.removed.isEmpty());
+        assertEquals(1, diff.stateChanged.size());
+        assertSame(before, diff.stateChanged.get(0).before);
+        assertSame(after, diff.stateChanged.get(0).after);
+    }
+
+    @Test
+    public void testShouldReportDuplicatesOnce() throws Exception {
+        final Purchase p1 = newPurchase("1", "t1", PURCHASED);
+        final Purchases from = newPurchases(p1, newPurchase("1", "t1", PURCHASED));
+        final Purchases to = newPurchases(newPurchase("2", "t2", PURCHASED), newPurchase("2", "t2", PURCHASED));
+
+        final InventoryDiff diff = InventoryDiff.between(from, to);
+
+        assertEquals(1, diff.added.size());
+        assertEquals(Collections.singletonList(p1), diff.removed);
+    }
+
+    @Test
+    public void testShouldReportDuplicatesOnceIfNothingWasPurchased() throws Exception {
+        final Purchase p = newPurchase("1", "t1", PURCHASED);
+        final Purchases to = newPurchases(p, newPurchase("1", "t1", PURCHASED));
+
+        final InventoryDiff diff = InventoryDiff.between(newPurchases(), to);
+
+        assertEquals(Collections.singletonList(p), diff.added);
+        assertTrue(diff.removed.isEmpty());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testShouldNotCompareDifferentProducts() throws Exception {
+        InventoryDiff.between(new Purchases(IN_APP, Collections.<Purchase>emptyList(), null),
+                new Purchases(SUBSCRIPTION, Collections.<Purchase>emptyList(), null));
+    }
+
+    @Test
+    public void testShouldCompareProducts() throws Exception {
+        final Purchase added = newPurchase("sub", "t", PURCHASED);
+        final Sku before = newSku(IN_APP, "1", "$1", 1000000);
+        final Sku after = newSku(IN_APP, "1", "$2", 2000000);
+
+        final Inventory.Products from = new Inventory.Products();
+        final Inventory.Product inApp = new Inventory.Product(IN_APP, true);
+        inApp.setPurchases(Collections.singletonList(newPurchase("1", "t1", PURCHASED)));
+        inApp.setSkus(asList(before, newSku(IN_APP, "2", "$1", 1000000)));
+        from.add(inApp);
+
+        final Inventory.Products to = new Inventory.Products();
+        final Inventory.Product newInApp = new Inventory.Product(IN_APP, true);
+        newInApp.setPurchases(Collections.singletonList(newPurchase("1", "t1", PURCHASED)));
+        newInApp.setSkus(asList(newSku(IN_APP, "2", "$1", 1000000), after, newSku(IN_APP, "3", "$3", 3000000)));
+        to.add(newInApp);
+        final Inventory.Product newSub = new Inventory.Product(SUBSCRIPTION, true);
+        newSub.setPurchases(Collections.singletonList(added));
+        to.add(newSub);
+
+        final InventoryDiff diff = InventoryDiff.between(from, to);
+
+        assertEquals(Collections.singletonList(added), diff.added);
+        assertTrue(diff.removed.isEmpty());
+        assertTrue(diff.stateChanged.isEmpty());
+        assertEquals(1, diff.priceChanged.size());
+        assertSame(before, diff.priceChanged.get(0).before);
+        assertSame(after, diff.priceChanged.get(0).after);
+    }
+
+    @Nonnull
+    private static Purchases newPurchases(@Nonnull Purchase... purchases) {
+        return new Purchases(IN_APP, asList(purchases), null);
+    }
+
+    @Nonnull
+    private static Purchase newPurchase(@Nonnull String sku, @Nonnull String token, @Nonnull Purchase.State state) {
+        return new Purchase(sku, "", "", 0, state.id, "", token, false, "", "");
+    }
+
+    @Nonnull
+    private static Sku newSku(@Nonnull String product, @Nonnull String code, @Nonnull String price, long amount) {
+        return new Sku(product, code, price, Sku.Price.valueOf(amount, "USD"), code, code);
+    }
+}
@@ -27,6 +27,8 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.Collections;
+
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.solovyev.android.checkout.Purchase.State.CANCELLED;
@@ -47,4 +49,14 @@ public class InventoryProductTest {
         assertFalse(product.hasPurchaseInState("0", REFUNDED));
         assertFalse(product.hasPurchaseInState("1", REFUNDED));
     }
+
+    @Test
+    public void testShouldFindPurchasesAfterTheyAreSet() throws Exception {
+        final Inventory.Product product = new Inventory.Product(ProductTypes.IN_APP, true);
+        assertFalse(product.isPurchased("0"));
+
+        product.setPurchases(Collections.singletonList(Purchase.fromJson(PurchaseTest.newJson(0, Purchase.State.PURCHASED), null)));
+
+        assertTrue(product.isPurchased("0"));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Collections;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+import static org.solovyev.android.checkout.Purchase.State.PURCHASED;
+
+@SuppressWarnings("unchecked")
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class InventoryStoreTest {
+
+    @Nonnull
+    private Billing mBilling;
+    @Nonnull
+    private IInAppBillingService mService;
+    @Nonnull
+    private ManualExecutor mBackground;
+    @Nonnull
+    private InventoryStore mStore;
+    @Nonnull
+    private Inventory.Request mRequest;
+
+    @Before
+    public void setUp() throws Exception {
+        mBilling = Tests.newBilling(false);
+        mBackground = new ManualExecutor();
+        mBilling.setBackground(mBackground);
+        mBilling.setMainThread(Tests.sameThreadExecutor());
+        mService = ((TestServiceConnector) mBilling.getConnector()).mService;
+        Tests.mockGetPurchases(mBilling, IN_APP, asList(Purchase.fromJson(PurchaseTest.newJson(1, PURCHASED), "")));
+        Tests.mockGetPurchases(mBilling, SUBSCRIPTION, Collections.<Purchase>emptyList());
+        mStore = mBilling.getInventoryStore();
+        mStore.setFreshnessPolicy(InventoryStore.maxAge(Long.MAX_VALUE - 1));
+        mRequest = Inventory.Request.create().loadAllPurchases();
+    }
+
+    @Test
+    public void testShouldHaveSameFingerprintForSameData() throws Exception {
+        final Inventory.Request r1 = Inventory.Request.create().loadSkus(IN_APP, "1", "2").loadPurchases(SUBSCRIPTION);
+        final Inventory.Request r2 = Inventory.Request.create().loadPurchases(SUBSCRIPTION).loadSkus(IN_APP, "2", "1");
+        final Inventory.Request r3 = Inventory.Request.create().loadSkus(IN_APP, "1").loadPurchases(SUBSCRIPTION);
+
+        assertEquals(r1.getFingerprint(), r2.getFingerprint());
+        assertFalse(r1.getFingerprint().equals(r3.getFingerprint()));
+    }
+
+    @Test
+    public void testShouldLoadInBackground() throws Exception {
+        assertTrue(mStore.isEmpty());
+        assertNull(mStore.get(mRequest));
+        assertNull(mStore.get(mRequest));
+        assertFalse(mStore.isEmpty());
+
+        mBackground.runAll();
+
+        final Inventory.Products products = mStore.get(mRequest);
+        assertNotNull(products);
+        assertTrue(products.get(IN_APP).isPurchased("1"));
+        verifyPurchasesLoaded(1);
+    }
+
+    @Test
+    public void testShouldShareEntryBetweenEqualRequests() throws Exception {
+        mStore.get(mRequest);
+        mBackground.runAll();
+
+        final Inventory.Products products = mStore.get(Inventory.Request.create().loadPurchases(SUBSCRIPTION).loadPurchases(IN_APP));
+        assertSame(mStore.get(mRequest), products);
+        assertTrue(mBackground.isEmpty());
+    }
+
+    @Test
+    public void testShouldNotReloadFreshProducts() throws Exception {
+        mStore.get(mRequest);
+        mBackground.runAll();
+
+        mStore.get(mRequest);
+        mStore.get(mRequest);
+
+        assertTrue(mBackground.isEmpty());
+        verifyPurchasesLoaded(1);
+    }
+
+    @Test
+    public void testShouldReturnStaleProductsWhileReloading() throws Exception {
+        mStore.get(mRequest);
+        mBackground.runAll();
+        final Inventory.Products old = mStore.get(mRequest);
+
+        mStore.setFreshnessPolicy(new InventoryStore.FreshnessPolicy() {
+            @Override
+            public boolean isStale(@Nonnull Inventory.Products products, long age) {
+                return true;
+            }
+        });
+        Tests.mockGetPurchases(mBilling, IN_APP, Collections.<Purchase>emptyList());
+        assertSame(old, mStore.get(mRequest));
+        assertSame(old, mStore.get(mRequest));
+        mBackground.runAll();
+
+        verifyPurchasesLoaded(2);
+        assertFalse(mStore.get(mRequest).get(IN_APP).isPurchased("1"));
+    }
+
+    @Test
+    public void testShouldReloadAfterConsumption() throws Exception {
+        mStore.get(mRequest);
+        mBackground.runAll();
+
+        when(mService.consumePurchase(anyInt(), anyString(), anyString())).thenReturn(ResponseCodes.OK);
+        Tests.mockGetPurchases(mBilling, IN_APP, Collections.<Purchase>emptyList());
+        mBilling.getRequests().consume("token", mock(RequestListener.class));
+        mBackground.runAll();
+
+        assertTrue(mStore.get(mRequest).get(IN_APP).isPurchased("1"));
+        mBackground.runAll();
+
+        assertFalse(mStore.get(mRequest).get(IN_APP).isPurchased("1"));
+        verifyPurchasesLoaded(2);
+    }
+
+    @Test
+    public void testShouldNotTrustLoadFinishedAfterInvalidation() throws Exception {
+        mStore.get(mRequest);
+        // the load is queued but not done yet
+        mStore.invalidate();
+        mBackground.runAll();
+
+        assertNotNull(mStore.get(mRequest));
+        // the loaded products are stale => reloaded
+        mBackground.runAll();
+        verifyPurchasesLoaded(2);
+        mStore.get(mRequest);
+        assertTrue(mBackground.isEmpty());
+    }
+
+    @Test
+    public void testShouldKeepLoaderBetweenLoads() throws Exception {
+        mStore.get(mRequest);
+        mBackground.runAll();
+        assertTrue(mStore.isLoaderStarted());
+
+        ShadowLooper.idleMainLooper(InventoryStore.KEEP_ALIVE_MILLIS / 2);
+        mStore.refresh(mRequest);
+        mBackground.runAll();
+        ShadowLooper.idleMainLooper(InventoryStore.KEEP_ALIVE_MILLIS / 2);
+        assertTrue(mStore.isLoaderStarted());
+
+        ShadowLooper.idleMainLooper(InventoryStore.KEEP_ALIVE_MILLIS / 2);
+        assertFalse(mStore.isLoaderStarted());
+    }
+
+    @Test
+    public void testShouldNotWrapListenersOfReadRequests() throws Exception {
+        mStore.get(mRequest);
+        assertFalse(mStore.isEmpty());
+
+        final RequestListener<Skus> skusListener = mock(RequestListener.class);
+        final GetSkuDetailsRequest skusRequest = new GetSkuDetailsRequest(IN_APP, asList("1"));
+        mBilling.runWhenConnected(skusRequest, skusListener, null);
+        assertSame(skusListener, skusRequest.getListener());
+
+        final RequestListener<Object> consumeListener = mock(RequestListener.class);
+        final ConsumePurchaseRequest consumeRequest = new ConsumePurchaseRequest("token");
+        mBilling.runWhenConnected(consumeRequest, consumeListener, null);
+        assertNotSame(consumeListener, consumeRequest.getListener());
+    }
+
+    @Test
+    public void testShouldRemoveProductsOnClear() throws Exception {
+        mStore.get(mRequest);
+        mBackground.runAll();
+
+        mStore.clear();
+
+        assertTrue(mStore.isEmpty());
+        assertNull(mStore.get(mRequest));
+    }
+
+    @Test
+    public void testShouldShareProductsWithObservableInventory() throws Exception {
+        final ObservableInventory inventory = mBilling.getObservableInventory();
+        final Inventory.Callback callback = mock(Inventory.Callback.class);
+        inventory.subscribe(mRequest, callback);
+        mBackground.runAll();
+
+        final Inventory.Products products = mStore.get(mRequest);
+        assertSame(inventory.getProducts(), products);
+        assertTrue(mBackground.isEmpty());
+        verifyPurchasesLoaded(1);
+        inventory.unsubscribe(callback);
+    }
+
+    @Test
+    public void testShouldDeliverStoredProductsToObservableInventory() throws Exception {
+        mStore.get(mRequest);
+        mBackground.runAll();
+        final Inventory.Products products = mStore.get(mRequest);
+
+        final ObservableInventory inventory = mBilling.getObservableInventory();
+        final Inventory.Callback callback = mock(Inventory.Callback.class);
+        inventory.subscribe(mRequest, callback);
+
+        verify(callback).onLoaded(products);
+        inventory.unsubscribe(callback);
+    }
+
+    @Test
+    public void testShouldEvictLeastRecentlyReadEntry() throws Exception {
+        for (int i = 0; i <= InventoryStore.MAX_ENTRIES; i++) {
+            mStore.get(newSkusRequest(i));
+            mBackground.runAll();
+            if (i == 1) {
+                // the first entry is read again and is not the eldest anymore
+                mStore.get(newSkusRequest(0));
+            }
+        }
+
+        assertNotNull(mStore.peek(newSkusRequest(0)));
+        assertNull(mStore.peek(newSkusRequest(1)));
+        assertNotNull(mStore.peek(newSkusRequest(InventoryStore.MAX_ENTRIES)));
+    }
+
+    @Nonnull
+    private static Inventory.Request newSkusRequest(int i) {
+        return Inventory.Request.create().loadSkus(IN_APP, String.valueOf(i));
+    }
+
+    private void verifyPurchasesLoaded(int times) throws Exception {
+        verify(mService, times(times)).getPurchases(anyInt(), anyString(), eq(IN_APP), isNull(String.class));
+    }
+}
@@ -29,9 +29,13 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
@@ -170,6 +174,8 @@ public abstract class InventoryTestBase {
 
     @Test
     public void testShouldCancelTaskById() throws Exception {
+        final PausedExecutor background = new PausedExecutor();
+        mBilling.setBackground(background);
         mCheckout.start();
         final int task1 = mInventory.load(mRequest, mock(Inventory.Callback.class));
         final int task2 = mInventory.load(mRequest, mock(Inventory.Callback.class));
@@ -178,6 +184,7 @@ public abstract class InventoryTestBase {
         Assert.assertTrue(mInventory.isLoading());
         mInventory.cancel(task2);
         Assert.assertFalse(mInventory.isLoading());
+        background.resume();
     }
 
     @Test
@@ -192,6 +199,8 @@ public abstract class InventoryTestBase {
 
     @Test
     public void testCanceledCallbackShouldNotGetCalled() throws Exception {
+        final PausedExecutor background = new PausedExecutor();
+        mBilling.setBackground(background);
         mCheckout.start();
         final Inventory.Callback c1 = mock(Inventory.Callback.class);
         final Inventory.Callback c2 = mock(Inventory.Callback.class);
@@ -199,6 +208,7 @@ public abstract class InventoryTestBase {
         mInventory.load(mRequest, c2);
 
         mInventory.cancel(task1);
+        background.resume();
 
         Tests.waitWhileLoading(mInventory);
         verify(c1, never()).onLoaded(anyProducts());
@@ -258,4 +268,41 @@ public abstract class InventoryTestBase {
             this.mProducts = products;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Holds the background work until {@link #resume()} is called so that the tasks can't finish
+     * before they are cancelled.
+     */
+    private static final class PausedExecutor implements Executor {
+        @Nonnull
+        private final Executor mExecutor = Executors.newSingleThreadExecutor();
+        @GuardedBy("this")
+        @Nonnull
+        private final List<Runnable> mPaused = new ArrayList<>();
+        @GuardedBy("this")
+        private boolean mResumed;
+
+        @Override
+        public void execute(@Nonnull Runnable command) {
+            synchronized (this) {
+                if (!mResumed) {
+                    mPaused.add(command);
+                    return;
+                }
+            }
+            mExecutor.execute(command);
+        }
+
+        void resume() {
+            final List<Runnable> paused;
+            synchronized (this) {
+                mResumed = true;
+                paused = new ArrayList<>(mPaused);
+                mPaused.clear();
+            }
+            for (Runnable command : paused) {
+                mExecutor.execute(command);
+            }
+        }
+    }
+}
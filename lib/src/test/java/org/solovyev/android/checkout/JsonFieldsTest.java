@@ -0,0 +1,295 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link Purchase#fromJson(String, String)} and {@link Sku#fromJson(String, String)}
+ * (which use {@link JsonFields}) give the same results as {@link org.json.JSONObject}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class JsonFieldsTest {
+
+    private static final String[] PURCHASES = {
+            "{\"orderId\":\"GPA.1234-5678-9012-34567\",\"packageName\":\"com.example.app\",\"productId\":\"premium\",\"purchaseTime\":1345678900000,\"purchaseState\":0,\"developerPayload\":\"bGoa+V7g/yqDXvKRqq+JTFn4uQZbPiQJo4pf9RzJ\",\"purchaseToken\":\"opaque-token-up-to-1000-characters\"}",
+            "{\"orderId\":\"GPA.3312-2355-8819-14025..0\",\"packageName\":\"com.example.app\",\"productId\":\"monthly\",\"purchaseTime\":1476802496321,\"purchaseState\":0,\"purchaseToken\":\"mbjbdokfggfbmbpjkldnbcaj.AO-J1OyJzBN4C0sAZZUvK\",\"autoRenewing\":true}",
+            "{\"orderId\":\"GPA.3312-2355-8819-14025..1\",\"packageName\":\"com.example.app\",\"productId\":\"monthly\",\"purchaseTime\":1479480896321,\"purchaseState\":0,\"purchaseToken\":\"mbjbdokfggfbmbpjkldnbcaj.AO-J1OyJzBN4C0sAZZUvK\",\"autoRenewing\":false}",
+            "{\"packageName\":\"com.example.app\",\"productId\":\"android.test.purchased\",\"purchaseTime\":0,\"purchaseState\":0,\"developerPayload\":\"\",\"purchaseToken\":\"inapp:com.example.app:android.test.purchased\"}",
+            "{\"orderId\":\"12999763169054705758.1371079406387615\",\"packageName\":\"com.example.app\",\"productId\":\"coins_100\",\"purchaseTime\":1376485423000,\"purchaseState\":2,\"developerPayload\":\"{\\\"user\\\":\\\"42\\\",\\\"nonce\\\":\\\"a\\/b\\\"}\",\"token\":\"token_1\",\"purchaseToken\":\"purchaseToken_1\"}",
+            "{\n  \"orderId\": \"GPA.0000\",\n  \"productId\": \"caf\\u00e9\",\n  \"purchaseTime\": 42,\n  \"purchaseState\": 1,\n  \"extra\": {\"nested\": [1, 2.5e3, -0.1, true, null, \"x\"]},\n  \"acknowledged\": false\n}",
+            "{\"productId\":\"sku\",\"purchaseTime\":-1,\"purchaseState\":3,\"quantity\":1,\"obfuscatedAccountId\":\"\\ud83d\\ude00\"}",
+            // the following are parsed by org.json
+            "{\"productId\":\"sku\",\"purchaseTime\":\"1345678900000\"}",
+            "{\"productId\":\"sku\",\"purchaseTime\":1.345678900000E12}",
+            "{\"productId\":\"sku\",\"purchaseTime\":1,\"orderId\":null}",
+            "{\"productId\":123,\"purchaseTime\":1}",
+            "{\"productId\":\"sku\",\"purchaseTime\":1,\"purchaseState\":\"1\"}",
+            "{\"productId\":\"sku\",\"purchaseTime\":1,\"autoRenewing\":\"true\"}",
+            "{\"productId\":\"sku\",\"purchaseTime\":1,\"productId\":\"other\"}",
+            "{\"product\\u0049d\":\"sku\",\"purchaseTime\":1}",
+            "{\"productId\":\"sku\",\"purchaseTime\":010}",
+            "{productId:'sku',purchaseTime:1,}",
+            "{\"productId\":\"sku\",\"purchaseTime\":1} trailing",
+            "{\"productId\":\"sku\",\"purchaseTime\":99999999999999999999}",
+            // invalid
+            "{\"productId\":\"sku\"}",
+            "{\"productId\":\"sku\",\"purchaseTime\":1,\"purchaseState\":7}",
+            "[\"productId\",\"sku\"]",
+            "{\"productId\":\"sku\",\"purchaseTime\":1",
+            "",
+    };
+
+    /**
+     * Number of the payloads in {@link #PURCHASES} which are read by {@link JsonFields}
+     */
+    private static final int PURCHASES_READ = 7;
+
+    private static final String[] SKUS = {
+            "{\"productId\":\"premium\",\"type\":\"inapp\",\"price\":\"$2.99\",\"price_amount_micros\":2990000,\"price_currency_code\":\"USD\",\"title\":\"Premium (Example App)\",\"description\":\"Unlocks everything\"}",
+            "{\"productId\":\"monthly\",\"type\":\"subs\",\"price\":\"\\u20ac4,99\",\"price_amount_micros\":4990000,\"price_currency_code\":\"EUR\",\"subscriptionPeriod\":\"P1M\",\"freeTrialPeriod\":\"P1W\",\"introductoryPrice\":\"\\u20ac0,99\",\"introductoryPriceAmountMicros\":990000,\"introductoryPricePeriod\":\"P1M\",\"introductoryPriceCycles\":1,\"title\":\"\\u041f\\u043e\\u0434\\u043f\\u0438\\u0441\\u043a\\u0430 (\\u041f\\u0440\\u0438\\u043c\\u0435\\u0440)\",\"description\":\"Line 1\\nLine 2\\t\\\"quoted\\\"\"}",
+            "{\"productId\":\"old\",\"type\":\"inapp\",\"price\":\"1,00 z\\u0142\",\"title\":\"Old\",\"description\":\"\"}",
+            "{\"productId\":\"nodescription\",\"price\":\"\\u00a5100\",\"price_amount_micros\":100000000,\"price_currency_code\":\"JPY\",\"title\":\"No description\"}",
+            // the following are parsed by org.json
+            "{\"productId\":\"sku\",\"price\":\"1\",\"price_amount_micros\":\"1000000\",\"price_currency_code\":\"USD\",\"title\":\"t\"}",
+            "{\"productId\":\"sku\",\"price\":\"1\",\"price_amount_micros\":1.5E6,\"price_currency_code\":\"USD\",\"title\":\"t\"}",
+            "{\"productId\":\"sku\",\"price\":\"1\",\"title\":\"t\",\"description\":null}",
+            "{\"productId\":\"sku\",\"price\":2,\"title\":\"t\"}",
+            // invalid
+            "{\"productId\":\"sku\",\"price\":\"1\"}",
+            "{\"productId\":\"sku\",\"price\":\"1\",\"title\":\"t\"",
+    };
+
+    /**
+     * Number of the payloads in {@link #SKUS} which are read by {@link JsonFields}
+     */
+    private static final int SKUS_READ = 4;
+
+    @Test
+    public void testShouldReadRequestedFields() throws Exception {
+        final JsonFields fields = new JsonFields("a", "b", "c", "d");
+
+        assertTrue(fields.read(" {\"x\": [1, {\"a\": 2}], \"a\": \"s\\n\", \"b\": -12, \"c\": true} "));
+
+        assertEquals(JsonFields.STRING, fields.getType(0));
+        assertEquals("s\n", fields.getString(0));
+        assertEquals(JsonFields.LONG, fields.getType(1));
+        assertEquals(-12, fields.getLong(1));
+        assertEquals(JsonFields.BOOLEAN, fields.getType(2));
+        assertTrue(fields.getBoolean(2));
+        assertEquals(JsonFields.MISSING, fields.getType(3));
+
+        // previous values must be cleared
+        assertTrue(fields.read("{}"));
+        assertEquals(JsonFields.MISSING, fields.getType(0));
+    }
+
+    @Test
+    public void testShouldShareInternedValues() throws Exception {
+        final JsonFields fields = new JsonFields("a", "b");
+        fields.intern(0);
+
+        assertTrue(fields.read("{\"a\": \"value\", \"b\": \"value\"}"));
+        final String a = fields.getString(0);
+        final String b = fields.getString(1);
+        assertTrue(fields.read("{\"a\": \"other\", \"b\": \"value\"}"));
+        assertEquals("other", fields.getString(0));
+        assertTrue(fields.read("{\"b\": \"value\", \"a\": \"value\"}"));
+
+        assertSame(a, fields.getString(0));
+        assertNotSame(b, fields.getString(1));
+        assertEquals(b, fields.getString(1));
+    }
+
+    @Test
+    public void testShouldReadJsonLongerThanBuffer() throws Exception {
+        final JsonFields fields = new JsonFields("a");
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+
+        assertTrue(fields.read("{\"a\": \"" + value + "\"}"));
+        assertEquals(value.toString(), fields.getString(0));
+        assertTrue(fields.read("{\"a\": \"short\"}"));
+        assertEquals("short", fields.getString(0));
+    }
+
+    @Test
+    public void testShouldRejectUnsupportedInput() throws Exception {
+        final JsonFields fields = new JsonFields("a");
+
+        assertFalse(fields.read("{\"a\": 1.5}"));
+        assertFalse(fields.read("{\"a\": null}"));
+        assertFalse(fields.read("{\"a\": [1]}"));
+        assertFalse(fields.read("{\"a\": 01}"));
+        assertFalse(fields.read("{\"b\": 1,}"));
+        assertFalse(fields.read("{\"b\": \"\\x\"}"));
+        assertFalse(fields.read("{\"b\": tru}"));
+        assertFalse(fields.read("{} {}"));
+        assertFalse(fields.read("[]"));
+    }
+
+    @Test
+    public void testShouldReadRealPayloads() throws Exception {
+        final JsonFields fields = new JsonFields("productId", "purchaseTime", "price");
+        for (int i = 0; i < PURCHASES_READ; i++) {
+            assertTrue(PURCHASES[i], fields.read(PURCHASES[i]));
+        }
+        for (int i = 0; i < SKUS_READ; i++) {
+            assertTrue(SKUS[i], fields.read(SKUS[i]));
+        }
+    }
+
+    @Test
+    public void testPurchasesShouldBeSameAsWithJsonObject() throws Exception {
+        for (String json : PURCHASES) {
+            assertSamePurchase(json);
+        }
+    }
+
+    @Test
+    public void testSkusShouldBeSameAsWithJsonObject() throws Exception {
+        for (String json : SKUS) {
+            assertSameSku(json);
+        }
+    }
+
+    @Test
+    public void testMutatedPurchasesShouldBeSameAsWithJsonObject() throws Exception {
+        final Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            assertSamePurchase(mutate(random, PURCHASES[random.nextInt(PURCHASES.length)]));
+        }
+    }
+
+    @Test
+    public void testMutatedSkusShouldBeSameAsWithJsonObject() throws Exception {
+        final Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            assertSameSku(mutate(random, SKUS[random.nextInt(SKUS.length)]));
+        }
+    }
+
+    @Nonnull
+    private static String mutate(@Nonnull Random random, @Nonnull String json) {
+        final String alphabet = "{}[]:,\"\\ \n0123456789-.eEtrufalsn/u";
+        final StringBuilder sb = new StringBuilder(json);
+        final int mutations = 1 + random.nextInt(3);
+        for (int i = 0; i < mutations && sb.length() > 0; i++) {
+            final int position = random.nextInt(sb.length());
+            final char c = alphabet.charAt(random.nextInt(alphabet.length()));
+            switch (random.nextInt(3)) {
+                case 0:
+                    sb.deleteCharAt(position);
+                    break;
+                case 1:
+                    sb.insert(position, c);
+                    break;
+                default:
+                    sb.setCharAt(position, c);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void assertSamePurchase(@Nonnull String json) {
+        Purchase expected = null;
+        Exception expectedException = null;
+        try {
+            expected = new Purchase(json, "signature");
+        } catch (JSONException | RuntimeException e) {
+            expectedException = e;
+        }
+        Purchase actual = null;
+        Exception actualException = null;
+        try {
+            actual = Purchase.fromJson(json, "signature");
+        } catch (JSONException | RuntimeException e) {
+            actualException = e;
+        }
+        assertSameException(json, expectedException, actualException);
+        if (expected == null || actual == null) {
+            return;
+        }
+        assertEquals(json, expected.sku, actual.sku);
+        assertEquals(json, expected.orderId, actual.orderId);
+        assertEquals(json, expected.packageName, actual.packageName);
+        assertEquals(json, expected.time, actual.time);
+        assertEquals(json, expected.state, actual.state);
+        assertEquals(json, expected.payload, actual.payload);
+        assertEquals(json, expected.token, actual.token);
+        assertEquals(json, expected.autoRenewing, actual.autoRenewing);
+        assertEquals(json, expected.data, actual.data);
+        assertEquals(json, expected.signature, actual.signature);
+    }
+
+    private static void assertSameSku(@Nonnull String json) {
+        Sku expected = null;
+        Exception expectedException = null;
+        try {
+            expected = new Sku(json, ProductTypes.IN_APP);
+        } catch (JSONException | RuntimeException e) {
+            expectedException = e;
+        }
+        Sku actual = null;
+        Exception actualException = null;
+        try {
+            actual = Sku.fromJson(json, ProductTypes.IN_APP);
+        } catch (JSONException | RuntimeException e) {
+            actualException = e;
+        }
+        assertSameException(json, expectedException, actualException);
+        if (expected == null || actual == null) {
+            return;
+        }
+        assertEquals(json, expected.id.product, actual.id.product);
+        assertEquals(json, expected.id.code, actual.id.code);
+        assertEquals(json, expected.price, actual.price);
+        assertEquals(json, expected.detailedPrice.amount, actual.detailedPrice.amount);
+        assertEquals(json, expected.detailedPrice.currency, actual.detailedPrice.currency);
+        assertEquals(json, expected.title, actual.title);
+        assertEquals(json, expected.description, actual.description);
+    }
+
+    private static void assertSameException(@Nonnull String json, @Nullable Exception expected, @Nullable Exception actual) {
+        assertEquals(json, expected == null ? null : expected.getClass(), actual == null ? null : actual.getClass());
+    }
+}
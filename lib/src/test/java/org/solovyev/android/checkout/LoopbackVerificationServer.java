@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Verification server for {@link RemotePurchaseVerifier} listening on the loopback interface.
+ * Purchases are verified with the key of {@link FakeBillingService}. The server can be made to
+ * fail ({@link #setFailing(boolean)}) or to hold the requests until released
+ * ({@link #hold()}/{@link #release()}).
+ */
+final class LoopbackVerificationServer {
+
+    @Nonnull
+    private final HttpServer mServer;
+    @Nonnull
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    @Nonnull
+    private final SignatureVerifier mVerifier = new SignatureVerifier(FakeBillingService.getPublicKey());
+    @Nonnull
+    private final AtomicInteger mRequests = new AtomicInteger();
+    @Nonnull
+    private final AtomicInteger mPurchases = new AtomicInteger();
+    private volatile boolean mFailing;
+    @Nullable
+    private volatile CountDownLatch mHold;
+    @Nonnull
+    private volatile CountDownLatch mReceived = new CountDownLatch(1);
+
+    LoopbackVerificationServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/verify", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    onRequest(exchange);
+                } catch (Exception e) {
+                    respond(exchange, 500, e.toString());
+                }
+            }
+        });
+        mServer.setExecutor(mExecutor);
+    }
+
+    void start() {
+        mServer.start();
+    }
+
+    void stop() {
+        release();
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    @Nonnull
+    URL getUrl() throws IOException {
+        return new URL("http", mServer.getAddress().getHostString(), mServer.getAddress().getPort(), "/verify");
+    }
+
+    void setFailing(boolean failing) {
+        mFailing = failing;
+    }
+
+    /**
+     * Makes the server wait for {@link #release()} before replying
+     */
+    void hold() {
+        mHold = new CountDownLatch(1);
+        mReceived = new CountDownLatch(1);
+    }
+
+    void release() {
+        final CountDownLatch hold = mHold;
+        mHold = null;
+        if (hold != null) {
+            hold.countDown();
+        }
+    }
+
+    /**
+     * Waits for a request after {@link #hold()}
+     */
+    boolean awaitRequest() throws InterruptedException {
+        return mReceived.await(5, TimeUnit.SECONDS);
+    }
+
+    int getRequests() {
+        return mRequests.get();
+    }
+
+    int getPurchases() {
+        return mPurchases.get();
+    }
+
+    private void onRequest(@Nonnull HttpExchange exchange) throws Exception {
+        final JSONArray purchases = new JSONObject(read(exchange.getRequestBody())).getJSONArray("purchases");
+        mRequests.incrementAndGet();
+        mPurchases.addAndGet(purchases.length());
+        mReceived.countDown();
+        final CountDownLatch hold = mHold;
+        if (hold != null) {
+            hold.await(5, TimeUnit.SECONDS);
+        }
+        if (mFailing) {
+            respond(exchange, 503, "Unavailable");
+            return;
+        }
+        final JSONArray verified = new JSONArray();
+        for (int i = 0; i < purchases.length(); i++) {
+            final JSONObject purchase = purchases.getJSONObject(i);
+            verified.put(mVerifier.verify(purchase.getString("data"), purchase.getString("signature")));
+        }
+        final JSONObject response = new JSONObject();
+        response.put("verified", verified);
+        respond(exchange, 200, response.toString());
+    }
+
+    private static void respond(@Nonnull HttpExchange exchange, int code, @Nonnull String body) throws IOException {
+        final byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Nonnull
+    private static String read(@Nonnull InputStream in) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
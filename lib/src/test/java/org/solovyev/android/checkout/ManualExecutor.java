@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Runs the background work on the test thread when asked to
+ */
+final class ManualExecutor implements Executor {
+    @Nonnull
+    private final List<Runnable> mCommands = new ArrayList<>();
+
+    @Override
+    public void execute(@Nonnull Runnable command) {
+        mCommands.add(command);
+    }
+
+    boolean isEmpty() {
+        return mCommands.isEmpty();
+    }
+
+    void runAll() {
+        while (!mCommands.isEmpty()) {
+            mCommands.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.annotation.Nonnull;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.checkout.Metrics.Timing.EXECUTION;
+import static org.solovyev.android.checkout.Metrics.Timing.QUEUE;
+import static org.solovyev.android.checkout.Metrics.Timing.VERIFICATION;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.RequestType.BILLING_SUPPORTED;
+import static org.solovyev.android.checkout.RequestType.GET_PURCHASES;
+import static org.solovyev.android.checkout.RequestType.GET_SKU_DETAILS;
+import static org.solovyev.android.checkout.ResponseCodes.OK;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MemoryMetricsTest {
+
+    @Nonnull
+    private MemoryMetrics mMetrics;
+
+    @Before
+    public void setUp() throws Exception {
+        mMetrics = Billing.newMetrics();
+    }
+
+    @Test
+    public void testShouldAggregateTimings() throws Exception {
+        mMetrics.onTiming(GET_PURCHASES, EXECUTION, 10);
+        mMetrics.onTiming(GET_PURCHASES, EXECUTION, 30);
+        mMetrics.onTiming(GET_PURCHASES, EXECUTION, 20);
+        mMetrics.onTiming(GET_PURCHASES, QUEUE, 100);
+
+        final MemoryMetrics.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(3, snapshot.getCount(GET_PURCHASES, EXECUTION));
+        assertEquals(60, snapshot.getTotalNanos(GET_PURCHASES, EXECUTION));
+        assertEquals(30, snapshot.getMaxNanos(GET_PURCHASES, EXECUTION));
+        assertEquals(20, snapshot.getAverageNanos(GET_PURCHASES, EXECUTION));
+        assertEquals(1, snapshot.getCount(GET_PURCHASES, QUEUE));
+        assertEquals(0, snapshot.getCount(BILLING_SUPPORTED, EXECUTION));
+        assertEquals(0, snapshot.getAverageNanos(BILLING_SUPPORTED, EXECUTION));
+    }
+
+    @Test
+    public void testSnapshotShouldNotChange() throws Exception {
+        mMetrics.onCache(GET_PURCHASES, true);
+        final MemoryMetrics.Snapshot snapshot = mMetrics.snapshot();
+        mMetrics.onCache(GET_PURCHASES, true);
+
+        assertEquals(1, snapshot.getCacheHits(GET_PURCHASES));
+        assertEquals(2, mMetrics.snapshot().getCacheHits(GET_PURCHASES));
+    }
+
+    @Test
+    public void testShouldCalculateCacheHitRatio() throws Exception {
+        mMetrics.onCache(GET_PURCHASES, true);
+        mMetrics.onCache(GET_PURCHASES, true);
+        mMetrics.onCache(GET_PURCHASES, true);
+        mMetrics.onCache(GET_PURCHASES, false);
+
+        final MemoryMetrics.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(3, snapshot.getCacheHits(GET_PURCHASES));
+        assertEquals(1, snapshot.getCacheMisses(GET_PURCHASES));
+        assertEquals(0.75f, snapshot.getCacheHitRatio(GET_PURCHASES), 0.0001f);
+        assertEquals(0f, snapshot.getCacheHitRatio(BILLING_SUPPORTED), 0.0001f);
+    }
+
+    @Test
+    public void testShouldKeepMaxQueueSize() throws Exception {
+        mMetrics.onQueued(GET_PURCHASES, 2);
+        mMetrics.onQueued(GET_PURCHASES, 5);
+        mMetrics.onQueued(GET_PURCHASES, 1);
+
+        assertEquals(5, mMetrics.snapshot().getMaxQueueSize());
+    }
+
+    @Test
+    public void testShouldKeepMaxQueueSizePerType() throws Exception {
+        mMetrics.onQueued(GET_PURCHASES, 2);
+        mMetrics.onQueued(GET_SKU_DETAILS, 7);
+        mMetrics.onQueued(GET_PURCHASES, 3);
+
+        final MemoryMetrics.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(3, snapshot.getMaxQueueSize(GET_PURCHASES));
+        assertEquals(7, snapshot.getMaxQueueSize(GET_SKU_DETAILS));
+        assertEquals(0, snapshot.getMaxQueueSize(BILLING_SUPPORTED));
+        assertEquals(7, snapshot.getMaxQueueSize());
+    }
+
+    @Test
+    public void testShouldSeparateFailedConnections() throws Exception {
+        mMetrics.onConnection(true, 10);
+        mMetrics.onConnection(true, 20);
+        mMetrics.onConnection(false, 100);
+
+        final MemoryMetrics.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(2, snapshot.getConnections(true));
+        assertEquals(15, snapshot.getAverageConnectionNanos(true));
+        assertEquals(20, snapshot.getMaxConnectionNanos(true));
+        assertEquals(1, snapshot.getConnections(false));
+        assertEquals(100, snapshot.getMaxConnectionNanos(false));
+    }
+
+    @Test
+    public void testShouldNotLoseConcurrentMeasurements() throws Exception {
+        final int threadCount = 4;
+        final int count = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final int thread = i;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    for (int j = 0; j < count; j++) {
+                        mMetrics.onTiming(GET_PURCHASES, EXECUTION, thread * count + j);
+                        mMetrics.onCache(GET_PURCHASES, j % 2 == 0);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        final MemoryMetrics.Snapshot snapshot = mMetrics.snapshot();
+        final long total = (long) threadCount * count;
+        assertEquals(total, snapshot.getCount(GET_PURCHASES, EXECUTION));
+        assertEquals(total * (total - 1) / 2, snapshot.getTotalNanos(GET_PURCHASES, EXECUTION));
+        assertEquals(total - 1, snapshot.getMaxNanos(GET_PURCHASES, EXECUTION));
+        assertEquals(total / 2, snapshot.getCacheHits(GET_PURCHASES));
+        assertEquals(total / 2, snapshot.getCacheMisses(GET_PURCHASES));
+    }
+
+    @Test
+    public void testShouldMeasureBillingRequests() throws Exception {
+        final Billing billing = Tests.newSynchronousBilling();
+        billing.setMetrics(mMetrics);
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        when(service.getPurchases(anyInt(), anyString(), eq(IN_APP), anyString())).thenReturn(BillingTest.newPurchasesBundle(0, false));
+        Tests.setService(billing, service);
+
+        final BillingRequests requests = billing.getRequests();
+        requests.getPurchases(IN_APP, null, mock(RequestListener.class));
+        requests.getPurchases(IN_APP, null, mock(RequestListener.class));
+
+        final MemoryMetrics.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(1, snapshot.getConnections(true));
+        assertEquals(0, snapshot.getConnections(false));
+        assertEquals(2, snapshot.getCount(GET_PURCHASES, QUEUE));
+        assertEquals(1, snapshot.getCount(GET_PURCHASES, EXECUTION));
+        assertEquals(1, snapshot.getCount(GET_PURCHASES, VERIFICATION));
+        assertEquals(1, snapshot.getCacheMisses(GET_PURCHASES));
+        assertEquals(1, snapshot.getCacheHits(GET_PURCHASES));
+        assertTrue(snapshot.getMaxQueueSize() >= 1);
+    }
+
+    @Test
+    public void testShouldMeasureBlockingVerification() throws Exception {
+        final Billing billing = Tests.newBilling();
+        billing.setMetrics(mMetrics);
+        billing.connect();
+        final IInAppBillingService service = ((TestServiceConnector) billing.getConnector()).mService;
+        when(service.getPurchases(anyInt(), anyString(), eq(IN_APP), anyString())).thenReturn(BillingTest.newPurchasesBundle(0, false));
+
+        final BlockingBillingRequests requests = billing.newBlockingRequests(1, SECONDS);
+        requests.getPurchases(IN_APP, null);
+        requests.isPurchased(IN_APP, "0");
+
+        final MemoryMetrics.Snapshot snapshot = mMetrics.snapshot();
+        assertEquals(1, snapshot.getCount(GET_PURCHASES, VERIFICATION));
+        assertEquals(1, snapshot.getCount(GET_PURCHASES, EXECUTION));
+        assertEquals(1, snapshot.getCacheHits(GET_PURCHASES));
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import javax.annotation.Nonnull;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+import static org.solovyev.android.checkout.Purchase.State.PURCHASED;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ObservableInventoryTest {
+
+    @Nonnull
+    private Billing mBilling;
+    @Nonnull
+    private IInAppBillingService mService;
+    @Nonnull
+    private ManualExecutor mBackground;
+    @Nonnull
+    private ObservableInventory mInventory;
+
+    @Before
+    public void setUp() throws Exception {
+        mBilling = Tests.newBilling(false);
+        mBackground = new ManualExecutor();
+        mBilling.setBackground(mBackground);
+        mBilling.setMainThread(Tests.sameThreadExecutor());
+        mService = ((TestServiceConnector) mBilling.getConnector()).mService;
+        Tests.mockGetPurchases(mBilling, IN_APP, asList(Purchase.fromJson(PurchaseTest.newJson(1, PURCHASED), "")));
+        Tests.mockGetPurchases(mBilling, SUBSCRIPTION, Collections.<Purchase>emptyList());
+        Tests.mockGetSkuDetails(mBilling, IN_APP, asList(Sku.fromJson(SkuTest.newJson("1"), IN_APP), Sku.fromJson(SkuTest.newJson("2"), IN_APP)));
+        mInventory = mBilling.getObservableInventory();
+    }
+
+    @Test
+    public void testShouldNotifySubscribers() throws Exception {
+        final CountingCallback c1 = new CountingCallback();
+        final CountingCallback c2 = new CountingCallback();
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), c1);
+        mInventory.subscribe(Inventory.Request.create().loadPurchases(IN_APP), c2);
+        mBackground.runAll();
+
+        assertEquals(1, c1.mCount);
+        assertEquals(1, c2.mCount);
+        assertSame(c1.mProducts, c2.mProducts);
+        assertTrue(c1.mProducts.get(IN_APP).isPurchased("1"));
+        verifyPurchasesLoaded(1);
+    }
+
+    @Test
+    public void testShouldDeliverLoadedProductsImmediately() throws Exception {
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), new CountingCallback());
+        mBackground.runAll();
+
+        final CountingCallback c = new CountingCallback();
+        mInventory.subscribe(Inventory.Request.create().loadPurchases(IN_APP), c);
+
+        assertEquals(1, c.mCount);
+        assertSame(mInventory.getProducts(), c.mProducts);
+        // the request is not wider than the loaded one => no new load
+        assertTrue(mBackground.isEmpty());
+    }
+
+    @Test
+    public void testShouldReloadForWiderRequest() throws Exception {
+        final CountingCallback c = new CountingCallback();
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), c);
+        mBackground.runAll();
+
+        mInventory.subscribe(Inventory.Request.create().loadSkus(IN_APP, "1", "2"), new CountingCallback());
+        mBackground.runAll();
+
+        assertEquals(2, c.mCount);
+        assertEquals(2, c.mProducts.get(IN_APP).getSkus().size());
+        assertTrue(c.mProducts.get(IN_APP).isPurchased("1"));
+    }
+
+    @Test
+    public void testShouldMergeReloads() throws Exception {
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), new CountingCallback());
+        mInventory.reload();
+        mInventory.reload();
+        mInventory.reload();
+        mBackground.runAll();
+
+        // initial load + one merged reload
+        verifyPurchasesLoaded(2);
+    }
+
+    @Test
+    public void testShouldNotNotifyIfNothingChanged() throws Exception {
+        final CountingCallback c = new CountingCallback();
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), c);
+        mBackground.runAll();
+
+        mInventory.reload();
+        mBackground.runAll();
+
+        verifyPurchasesLoaded(2);
+        assertEquals(1, c.mCount);
+    }
+
+    @Test
+    public void testShouldReloadAfterConsumption() throws Exception {
+        final CountingCallback c = new CountingCallback();
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), c);
+        mBackground.runAll();
+        assertTrue(c.mProducts.get(IN_APP).isPurchased("1"));
+
+        when(mService.consumePurchase(anyInt(), anyString(), anyString())).thenReturn(ResponseCodes.OK);
+        Tests.mockGetPurchases(mBilling, IN_APP, Collections.<Purchase>emptyList());
+        mBilling.getRequests().consume("token", mock(RequestListener.class));
+        mBackground.runAll();
+
+        assertEquals(2, c.mCount);
+        assertFalse(c.mProducts.get(IN_APP).isPurchased("1"));
+    }
+
+    @Test
+    public void testShouldStopLoadingWithoutSubscribers() throws Exception {
+        final CountingCallback c = new CountingCallback();
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), c);
+        mInventory.unsubscribe(c);
+        mBackground.runAll();
+
+        assertFalse(mInventory.isObserved());
+        assertEquals(0, c.mCount);
+
+        mInventory.onPurchasesChanged();
+        mInventory.reload();
+        assertTrue(mBackground.isEmpty());
+    }
+
+    @Test
+    public void testShouldKeepProductsForNextSubscriber() throws Exception {
+        final CountingCallback c1 = new CountingCallback();
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), c1);
+        mBackground.runAll();
+        mInventory.unsubscribe(c1);
+
+        final CountingCallback c2 = new CountingCallback();
+        mInventory.subscribe(Inventory.Request.create().loadAllPurchases(), c2);
+        assertEquals(1, c2.mCount);
+        assertNotNull(c2.mProducts);
+        mBackground.runAll();
+
+        assertEquals(1, c2.mCount);
+    }
+
+    private void verifyPurchasesLoaded(int times) throws Exception {
+        verify(mService, times(times)).getPurchases(anyInt(), anyString(), eq(IN_APP), isNull(String.class));
+    }
+
+    private static final class CountingCallback implements Inventory.Callback {
+        int mCount;
+        Inventory.Products mProducts;
+
+        @Override
+        public void onLoaded(@Nonnull Inventory.Products products) {
+            mCount++;
+            mProducts = products;
+        }
+    }
+}
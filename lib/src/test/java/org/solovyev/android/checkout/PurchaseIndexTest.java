@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+
+package org.solovyev.android.checkout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class PurchaseIndexTest {
+
+    @Test
+    public void testShouldReturnNothingForEmptyList() throws Exception {
+        final PurchaseIndex index = PurchaseIndex.create(Collections.<Purchase>emptyList());
+        assertSame(PurchaseIndex.EMPTY, index);
+        assertNull(index.get("0"));
+        assertNull(index.get("0", Purchase.State.PURCHASED));
+    }
+
+    @Test
+    public void testShouldFindSameAsLinearSearch() throws Exception {
+        final Random r = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final List<Purchase> purchases = newPurchases(r, r.nextInt(30), 1 + r.nextInt(10));
+            final Purchases p = new Purchases(ProductTypes.IN_APP, purchases, null);
+            for (int sku = 0; sku < 11; sku++) {
+                final String code = String.valueOf(sku);
+                assertSame(find(purchases, code, null), p.getPurchase(code));
+                for (Purchase.State state : Purchase.State.values()) {
+                    assertSame(find(purchases, code, state), p.getPurchaseInState(code, state));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShouldBeSafeToBuildFromSeveralThreads() throws Exception {
+        final List<Purchase> purchases = newPurchases(new Random(42), 1000, 100);
+        final Purchases p = new Purchases(ProductTypes.IN_APP, purchases, null);
+        final int threads = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger errors = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int sku = 0; sku < 100; sku++) {
+                            final String code = String.valueOf(sku);
+                            if (p.getPurchaseInState(code, Purchase.State.PURCHASED) != find(purchases, code, Purchase.State.PURCHASED)) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        assertEquals(0, errors.get());
+    }
+
+    @Nullable
+    private static Purchase find(@Nonnull List<Purchase> purchases, @Nonnull String sku, @Nullable Purchase.State state) {
+        for (Purchase purchase : purchases) {
+            if (purchase.sku.equals(sku) && (state == null || purchase.state == state)) {
+                return purchase;
+            }
+        }
+        return null;
+    }
+
+    @Nonnull
+    private static List<Purchase> newPurchases(@Nonnull Random r, int count, int skus) {
+        final List<Purchase> purchases = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Purchase.State state = Purchase.State.valueOf(r.nextInt(4));
+            purchases.add(new Purchase(String.valueOf(r.nextInt(skus)), "", "", i, state.id, "", "", false, "", ""));
+        }
+        return purchases;
+    }
+}
@@ -28,6 +28,7 @@ import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.skyscreamer.jsonassert.JSONAssert;
@@ -37,6 +38,7 @@ import android.os.Bundle;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -49,7 +51,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.solovyev.android.checkout.Purchase.State.CANCELLED;
 import static org.solovyev.android.checkout.Purchase.State.EXPIRED;
 import static org.solovyev.android.checkout.Purchase.State.PURCHASED;
@@ -85,6 +92,23 @@ public class PurchasesTest {
         verifyPurchase(purchases.list.get(2), 3, Purchase.State.PURCHASED);
     }
 
+    @Test
+    public void testShouldCollectPurchasedOverPages() throws Exception {
+        final List<String> skus = asList("4", "3", "1");
+        final Map<String, Boolean> purchased = new HashMap<>();
+        final Purchases first = Purchases.fromBundle(prepareBundle(), "test");
+        final Purchases second = new Purchases("test", asList(Purchase.fromJson(PurchaseTest.newJson(1, PURCHASED), ""),
+                Purchase.fromJson(PurchaseTest.newJson(4, PURCHASED), "")), null);
+
+        assertFalse(first.collectPurchased(skus, purchased));
+        assertTrue(second.collectPurchased(skus, purchased));
+
+        final Map<String, Boolean> result = Purchases.toPurchased(skus, purchased);
+        assertEquals(skus, new ArrayList<>(result.keySet()));
+        // "1" is refunded on the first page
+        assertEquals(asList(true, true, false), new ArrayList<>(result.values()));
+    }
+
     @Nonnull
     private Bundle prepareBundle() throws JSONException {
         final ArrayList<String> list = new ArrayList<String>();
@@ -332,6 +356,112 @@ public class PurchasesTest {
         }
     }
 
+    @Test
+    public void testShouldNeutralizeAsReference() throws Exception {
+        final Random r = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            final int size = r.nextInt(60);
+            final int skus = 1 + r.nextInt(8);
+            final int times = 1 + r.nextInt(3 * size + 1);
+            final List<Purchase> purchases = new ArrayList<>(size);
+            for (int j = 0; j < size; j++) {
+                // few SKUs and times so that there are long chains and equal times
+                purchases.add(newPurchase(String.valueOf(r.nextInt(skus)), r.nextInt(times), Purchase.State.valueOf(r.nextInt(4))));
+            }
+            final List<Purchase> copy = new ArrayList<>(purchases);
+
+            final Logger expectedLogger = mock(Logger.class);
+            Billing.setLogger(expectedLogger);
+            final List<Purchase> expected = neutralizeReference(purchases);
+            final Logger actualLogger = mock(Logger.class);
+            Billing.setLogger(actualLogger);
+            final List<Purchase> actual = Purchases.neutralize(purchases);
+            Billing.setLogger(new DefaultLogger());
+
+            assertSameElements(expected, actual);
+            assertEquals(getWarnings(expectedLogger), getWarnings(actualLogger));
+            assertSameElements(copy, purchases);
+        }
+    }
+
+    private static void assertSameElements(@Nonnull List<Purchase> expected, @Nonnull List<Purchase> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Nonnull
+    private static List<String> getWarnings(@Nonnull Logger logger) {
+        final ArgumentCaptor<String> messages = ArgumentCaptor.forClass(String.class);
+        verify(logger, atLeast(0)).w(anyString(), messages.capture());
+        return messages.getAllValues();
+    }
+
+    /**
+     * Previous (quadratic) implementation of {@link Purchases#neutralize(List)}
+     */
+    @Nonnull
+    private static List<Purchase> neutralizeReference(@Nonnull List<Purchase> purchases) {
+        purchases = new LinkedList<>(purchases);
+
+        final List<Purchase> result = new ArrayList<>(purchases.size());
+
+        Collections.sort(purchases, PurchaseComparator.earliestFirst());
+        while (!purchases.isEmpty()) {
+            final Purchase purchase = purchases.get(0);
+            switch (purchase.state) {
+                case PURCHASED:
+                    if (!isNeutralizedReference(purchases, purchase)) {
+                        result.add(purchase);
+                    }
+                    break;
+                case CANCELLED:
+                case REFUNDED:
+                case EXPIRED:
+                    if (!isDanglingReference(purchases, purchase)) {
+                        result.add(purchase);
+                    }
+                    break;
+            }
+            purchases.remove(0);
+        }
+
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static boolean isDanglingReference(@Nonnull List<Purchase> purchases, @Nonnull Purchase purchase) {
+        for (int i = 1; i < purchases.size(); i++) {
+            if (purchases.get(i).sku.equals(purchase.sku)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNeutralizedReference(@Nonnull List<Purchase> purchases, @Nonnull Purchase purchase) {
+        for (int i = 1; i < purchases.size(); i++) {
+            final Purchase same = purchases.get(i);
+            if (same.sku.equals(purchase.sku)) {
+                switch (same.state) {
+                    case PURCHASED:
+                        if (Billing.isWarningLoggable()) {
+                            Billing.warning("Two purchases with same SKU found: " + purchase + " and " + same);
+                        }
+                        break;
+                    case CANCELLED:
+                    case REFUNDED:
+                    case EXPIRED:
+                        purchases.remove(i);
+                        break;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Nonnull
     private Purchase newPurchase(@Nonnull String sku, long time, @Nonnull Purchase.State state) {
         return new Purchase(sku, "", "", time, state.id, "", "", false, "", "");
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.annotation.Config;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.checkout.RequestTestBase.newBundle;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RemotePurchaseVerifierTest {
+
+    @Nonnull
+    private LoopbackVerificationServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new LoopbackVerificationServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.stop();
+    }
+
+    @Test
+    public void testShouldVerifyOnServer() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(null, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+        final List<Purchase> purchases = newPurchases(0, 10);
+
+        assertEquals(getExpected(purchases), verify(verifier, purchases).await());
+        assertEquals(1, mServer.getRequests());
+    }
+
+    @Test
+    public void testShouldBatchConcurrentCalls() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(null, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+        final List<Purchase> first = newPurchases(0, 3);
+        final List<Purchase> second = newPurchases(3, 2);
+        final List<Purchase> third = newPurchases(5, 2);
+
+        mServer.hold();
+        final Result firstResult = verify(verifier, first);
+        assertTrue(mServer.awaitRequest());
+        // these calls must be queued while the first request is in flight
+        final Result secondResult = verify(verifier, second);
+        final Result thirdResult = verify(verifier, third);
+        awaitPending(verifier, 4);
+        mServer.release();
+
+        assertEquals(getExpected(first), firstResult.await());
+        assertEquals(getExpected(second), secondResult.await());
+        assertEquals(getExpected(third), thirdResult.await());
+        assertEquals(2, mServer.getRequests());
+        assertEquals(7, mServer.getPurchases());
+    }
+
+    @Test
+    public void testShouldSplitLongLists() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(null, 4);
+        final List<Purchase> purchases = newPurchases(0, 10);
+
+        assertEquals(getExpected(purchases), verify(verifier, purchases).await());
+        assertEquals(3, mServer.getRequests());
+    }
+
+    @Test
+    public void testShouldNotSendVerifiedPurchasesAgain() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(null, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+        final List<Purchase> purchases = newPurchases(0, 10);
+
+        verify(verifier, purchases).await();
+        assertEquals(getExpected(purchases), verify(verifier, purchases).await());
+
+        assertEquals(2, mServer.getRequests());
+        // only the purchases with the wrong signatures are sent again
+        assertEquals(10 + 4, mServer.getPurchases());
+    }
+
+    @Test
+    public void testShouldSendPurchaseWithChangedDataAgain() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(null, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+        final List<Purchase> purchases = newPurchases(1, 1);
+        final Purchase purchase = purchases.get(0);
+        assertEquals(purchases, verify(verifier, purchases).await());
+
+        // same order id and signature, different product
+        final JSONObject json = PurchaseTest.newJsonObject(1, Purchase.State.PURCHASED);
+        json.put("productId", "2");
+        final Purchase tampered = Purchase.fromJson(json.toString(), purchase.signature);
+        assertEquals(purchase.orderId, tampered.orderId);
+
+        assertEquals(Collections.emptyList(), verify(verifier, Collections.singletonList(tampered)).await());
+        assertEquals(2, mServer.getRequests());
+        // the original purchase is still remembered
+        assertEquals(purchases, verify(verifier, purchases).await());
+        assertEquals(2, mServer.getRequests());
+    }
+
+    @Test
+    public void testShouldFailIfFallbackDoesNotCallListener() throws Exception {
+        final PurchaseVerifier fallback = mock(PurchaseVerifier.class);
+        final RemotePurchaseVerifier verifier = newVerifier(fallback, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+
+        mServer.setFailing(true);
+        final Result result = verify(verifier, newPurchases(0, 3));
+        result.await();
+
+        assertEquals(ResponseCodes.EXCEPTION, result.mResponse);
+        assertEquals(0, verifier.getPendingCount());
+    }
+
+    @Test
+    public void testShouldFallBackToLocalVerification() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(new DefaultPurchaseVerifier(FakeBillingService.getPublicKey()),
+                RemotePurchaseVerifier.MAX_BATCH_SIZE);
+        final List<Purchase> purchases = newPurchases(0, 10);
+
+        mServer.setFailing(true);
+        assertEquals(getExpected(purchases), verify(verifier, purchases).await());
+
+        // locally verified purchases are not remembered
+        mServer.setFailing(false);
+        assertEquals(getExpected(purchases), verify(verifier, purchases).await());
+        assertEquals(20, mServer.getPurchases());
+    }
+
+    @Test
+    public void testShouldFailWithoutFallback() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(null, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+
+        mServer.setFailing(true);
+        final Result result = verify(verifier, newPurchases(0, 3));
+        result.await();
+
+        assertEquals(ResponseCodes.EXCEPTION, result.mResponse);
+    }
+
+    @Test
+    public void testShouldVerifyConcurrentGetPurchasesRequests() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(null, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+        final Billing billing = Tests.newBilling(false);
+        billing.setPurchaseVerifier(verifier);
+        billing.connect();
+        final IInAppBillingService service = ((TestServiceConnector) billing.getConnector()).mService;
+        // each thread gets its own purchases
+        when(service.getPurchases(anyInt(), anyString(), eq(ProductTypes.IN_APP), isNull(String.class))).thenAnswer(new Answer<Bundle>() {
+            @Override
+            public Bundle answer(InvocationOnMock invocation) throws Throwable {
+                return newPurchasesBundle(newPurchases(10 * Integer.parseInt(Thread.currentThread().getName()), 3));
+            }
+        });
+        final BlockingBillingRequests requests = billing.newBlockingRequests(5, TimeUnit.SECONDS);
+
+        mServer.hold();
+        final GetPurchases first = new GetPurchases(requests, 0);
+        assertTrue(mServer.awaitRequest());
+        final GetPurchases second = new GetPurchases(requests, 1);
+        final GetPurchases third = new GetPurchases(requests, 2);
+        awaitPending(verifier, 4);
+        mServer.release();
+
+        assertEquals(getSkus(getExpected(newPurchases(0, 3))), getSkus(first.await()));
+        assertEquals(getSkus(getExpected(newPurchases(10, 3))), getSkus(second.await()));
+        assertEquals(getSkus(getExpected(newPurchases(20, 3))), getSkus(third.await()));
+        assertEquals(2, mServer.getRequests());
+    }
+
+    @Test
+    public void testShouldRecoverAfterSenderFailure() throws Exception {
+        final PurchaseVerifier fallback = mock(PurchaseVerifier.class);
+        doThrow(new IllegalStateException()).when(fallback).verify(anyList(), any(RequestListener.class));
+        final RemotePurchaseVerifier verifier = newVerifier(fallback, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+
+        mServer.setFailing(true);
+        final Result failed = verify(verifier, newPurchases(0, 3));
+        failed.await();
+        assertEquals(ResponseCodes.EXCEPTION, failed.mResponse);
+
+        mServer.setFailing(false);
+        final List<Purchase> purchases = newPurchases(3, 3);
+        assertEquals(getExpected(purchases), verify(verifier, purchases).await());
+    }
+
+    @Test
+    public void testShouldNotSendPurchasesOfInterruptedCall() throws Exception {
+        final RemotePurchaseVerifier verifier = newVerifier(null, RemotePurchaseVerifier.MAX_BATCH_SIZE);
+        final List<Purchase> first = newPurchases(0, 3);
+
+        mServer.hold();
+        final Result firstResult = verify(verifier, first);
+        assertTrue(mServer.awaitRequest());
+        final Result interrupted = verify(verifier, newPurchases(3, 2));
+        awaitPending(verifier, 2);
+        interrupted.mThread.interrupt();
+        interrupted.await();
+        assertEquals(ResponseCodes.EXCEPTION, interrupted.mResponse);
+        assertEquals(0, verifier.getPendingCount());
+        mServer.release();
+
+        assertEquals(getExpected(first), firstResult.await());
+        assertEquals(1, mServer.getRequests());
+        assertEquals(3, mServer.getPurchases());
+    }
+
+    @Nonnull
+    private RemotePurchaseVerifier newVerifier(@Nullable PurchaseVerifier fallback, int maxBatchSize) throws Exception {
+        return new RemotePurchaseVerifier(mServer.getUrl(), fallback, new Handler(Looper.getMainLooper()),
+                SameThreadExecutor.INSTANCE, maxBatchSize, 100);
+    }
+
+    /**
+     * Starts the verification on a background thread (the calls from the main thread are
+     * delivered through the main looper)
+     */
+    @Nonnull
+    private static Result verify(@Nonnull final RemotePurchaseVerifier verifier, @Nonnull final List<Purchase> purchases) {
+        final Result result = new Result();
+        result.mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                verifier.verify(purchases, result);
+            }
+        });
+        result.mThread.start();
+        return result;
+    }
+
+    private static void awaitPending(@Nonnull RemotePurchaseVerifier verifier, int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (verifier.getPendingCount() < count) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Nonnull
+    private static Bundle newPurchasesBundle(@Nonnull List<Purchase> purchases) {
+        final Bundle bundle = newBundle(ResponseCodes.OK);
+        final ArrayList<String> data = new ArrayList<>();
+        final ArrayList<String> signatures = new ArrayList<>();
+        for (Purchase purchase : purchases) {
+            data.add(purchase.data);
+            signatures.add(purchase.signature);
+        }
+        bundle.putStringArrayList(Purchases.BUNDLE_DATA_LIST, data);
+        bundle.putStringArrayList(Purchases.BUNDLE_SIGNATURE_LIST, signatures);
+        return bundle;
+    }
+
+    /**
+     * @return purchases where every third purchase has a wrong signature
+     */
+    @Nonnull
+    private static List<Purchase> newPurchases(int from, int count) throws Exception {
+        final List<Purchase> purchases = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            final String data = PurchaseTest.newJson(i, Purchase.State.PURCHASED);
+            final String signature = FakeBillingService.sign(i % 3 == 0 ? data + " " : data);
+            purchases.add(Purchase.fromJson(data, signature));
+        }
+        return purchases;
+    }
+
+    @Nonnull
+    private static List<Purchase> getExpected(@Nonnull List<Purchase> purchases) {
+        final List<Purchase> expected = new ArrayList<>();
+        for (Purchase purchase : purchases) {
+            if (Long.parseLong(purchase.sku) % 3 != 0) {
+                expected.add(purchase);
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Loads the purchases with the blocking requests on a background thread named after
+     * <var>index</var>
+     */
+    @Nonnull
+    private static List<String> getSkus(@Nonnull List<Purchase> purchases) {
+        final List<String> skus = new ArrayList<>(purchases.size());
+        for (Purchase purchase : purchases) {
+            skus.add(purchase.sku);
+        }
+        return skus;
+    }
+
+    private static final class GetPurchases implements Runnable {
+        @Nonnull
+        private final BlockingBillingRequests mRequests;
+        @Nonnull
+        private final Thread mThread;
+        @Nullable
+        private volatile Purchases mPurchases;
+
+        GetPurchases(@Nonnull BlockingBillingRequests requests, int index) {
+            mRequests = requests;
+            mThread = new Thread(this, String.valueOf(index));
+            mThread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                mPurchases = mRequests.getPurchases(ProductTypes.IN_APP, null);
+            } catch (BillingException e) {
+                // checked in await()
+            }
+        }
+
+        @Nonnull
+        List<Purchase> await() throws InterruptedException {
+            mThread.join(5000);
+            final Purchases purchases = mPurchases;
+            assertNotNull(purchases);
+            return purchases.list;
+        }
+    }
+
+    private static final class Result implements RequestListener<List<Purchase>> {
+        @Nonnull
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        @Nonnull
+        private Thread mThread;
+        @Nullable
+        private volatile List<Purchase> mVerified;
+        private volatile int mResponse = -1;
+
+        @Override
+        public void onSuccess(@Nonnull List<Purchase> verified) {
+            mVerified = verified;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onError(int response, @Nonnull Exception e) {
+            mResponse = response;
+            mLatch.countDown();
+        }
+
+        @Nullable
+        List<Purchase> await() throws InterruptedException {
+            assertTrue(mLatch.await(5, TimeUnit.SECONDS));
+            return mVerified;
+        }
+    }
+}
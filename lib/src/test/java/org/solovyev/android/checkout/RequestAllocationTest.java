@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.checkout.ResponseCodes.OK;
+
+/**
+ * Pins the number of bytes allocated by a request which is served from the cache, i.e. the
+ * allocations done by the library itself on the request/delivery path.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RequestAllocationTest {
+
+    private static final int WARM_UP = 2000;
+    private static final int REQUESTS = 1000;
+    /**
+     * Maximum number of bytes allowed to be allocated per request
+     */
+    private static final long BUDGET = 512L;
+
+    @Nonnull
+    private Billing mBilling;
+    @Nonnull
+    private com.sun.management.ThreadMXBean mThreadBean;
+
+    @Before
+    public void setUp() throws Exception {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        mThreadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(mThreadBean.isThreadAllocatedMemorySupported());
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+
+        Billing.setLogger(null);
+        mBilling = Tests.newSynchronousBilling();
+        mBilling.connect();
+        when(((TestServiceConnector) mBilling.getConnector()).mService.isBillingSupported(anyInt(), anyString(), anyString())).thenReturn(OK);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Billing.setLogger(new DefaultLogger());
+    }
+
+    @Test
+    public void testCachedRequestShouldFitAllocationBudget() throws Exception {
+        final BillingRequests requests = mBilling.newRequestsBuilder().onMainThread().create();
+        final RequestListener<Object> listener = new EmptyRequestListener<>();
+        for (int i = 0; i < WARM_UP; i++) {
+            requests.isBillingSupported(ProductTypes.IN_APP, listener);
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long before = mThreadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < REQUESTS; i++) {
+            requests.isBillingSupported(ProductTypes.IN_APP, listener);
+        }
+        final long perRequest = (mThreadBean.getThreadAllocatedBytes(threadId) - before) / REQUESTS;
+
+        assertTrue("Allocated per request: " + perRequest + " bytes", perRequest <= BUDGET);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.solovyev.android.checkout.ResponseCodes.ITEM_NOT_OWNED;
+
+@SuppressWarnings("unchecked")
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RequestDispatcherTest {
+
+    @Nonnull
+    private ConcurrentCache mCache;
+    @Nonnull
+    private TestExecutor mExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        mCache = new ConcurrentCache(new MapCache());
+        mExecutor = new TestExecutor();
+    }
+
+    @Test
+    public void testShouldCallOnSuccess() throws Exception {
+        final RequestListener l = mock(RequestListener.class);
+        final RequestDispatcher d = new RequestDispatcher(new BillingSupportedRequest("test"), l, Tests.sameThreadExecutor(), null, null);
+
+        final Object o = new Object();
+        d.onSuccess(o);
+
+        verify(l).onSuccess(eq(o));
+    }
+
+    @Test
+    public void testShouldCallOnError() throws Exception {
+        final RequestListener l = mock(RequestListener.class);
+        final RequestDispatcher d = new RequestDispatcher(new BillingSupportedRequest("test"), l, Tests.sameThreadExecutor(), null, null);
+
+        final Exception e = new Exception();
+        d.onError(3, e);
+
+        verify(l).onError(eq(3), eq(e));
+    }
+
+    @Test
+    public void testShouldCallListenerDirectlyWithoutExecutor() throws Exception {
+        final RequestListener l = mock(RequestListener.class);
+        final RequestDispatcher d = new RequestDispatcher(new BillingSupportedRequest("test"), l, null, null, null);
+
+        final Object o = new Object();
+        d.onSuccess(o);
+
+        verify(l).onSuccess(eq(o));
+    }
+
+    @Test
+    public void testShouldDeliverOnExecutor() throws Exception {
+        final RequestListener l = mock(RequestListener.class);
+        final RequestDispatcher d = new RequestDispatcher(new BillingSupportedRequest("test"), l, mExecutor, null, null);
+
+        final Object o = new Object();
+        d.onSuccess(o);
+        verify(l, never()).onSuccess(anyObject());
+
+        assertSame(d, mExecutor.mExecuting.get(0));
+        mExecutor.runAll();
+        verify(l).onSuccess(eq(o));
+    }
+
+    @Test
+    public void testShouldReportDeliveryDelay() throws Exception {
+        final Metrics metrics = mock(Metrics.class);
+        final RequestDispatcher d = new RequestDispatcher(new BillingSupportedRequest("test"), mock(RequestListener.class), mExecutor, null, metrics);
+
+        d.onSuccess(new Object());
+        verify(metrics, never()).onTiming(any(RequestType.class), any(Metrics.Timing.class), anyLong());
+
+        mExecutor.runAll();
+        verify(metrics).onTiming(eq(RequestType.BILLING_SUPPORTED), eq(Metrics.Timing.DELIVERY), anyLong());
+    }
+
+    @Test
+    public void testShouldCancelDelivery() throws Exception {
+        final RequestListener l = mock(RequestListener.class);
+        final RequestDispatcher d = new RequestDispatcher(new BillingSupportedRequest("test"), l, mExecutor, null, null);
+
+        d.onError(3, new Exception());
+        d.cancel();
+
+        assertEquals(0, mExecutor.mExecuting.size());
+        verify(l, never()).onError(anyInt(), (Exception) anyObject());
+    }
+
+    @Test
+    public void testShouldBeReusedForSubsequentResults() throws Exception {
+        final RequestListener l = mock(RequestListener.class);
+        final RequestDispatcher d = new RequestDispatcher(new BillingSupportedRequest("test"), l, mExecutor, null, null);
+
+        final Object first = new Object();
+        d.onSuccess(first);
+        mExecutor.runAll();
+        final Object second = new Object();
+        d.onSuccess(second);
+        mExecutor.runAll();
+
+        verify(l).onSuccess(eq(first));
+        verify(l).onSuccess(eq(second));
+    }
+
+    @Test
+    public void testShouldCacheResult() throws Exception {
+        final BillingSupportedRequest request = new BillingSupportedRequest("test");
+        final RequestDispatcher d = new RequestDispatcher(request, mock(RequestListener.class), null, mCache, null);
+
+        final Object o = new Object();
+        d.onSuccess(o);
+
+        final Cache.Entry entry = mCache.get(request.getCacheEntryKey());
+        assertNotNull(entry);
+        assertSame(o, entry.data);
+    }
+
+    @Test
+    public void testShouldInvalidatePurchasesIfItemIsNotOwned() throws Exception {
+        final Cache.Key key = RequestType.GET_PURCHASES.getCacheKey("test");
+        mCache.put(key, new Cache.Entry(new Object(), Long.MAX_VALUE));
+        final RequestDispatcher d = new RequestDispatcher(new ConsumePurchaseRequest("token"), mock(RequestListener.class), null, mCache, null);
+
+        d.onError(ITEM_NOT_OWNED, new BillingException(ITEM_NOT_OWNED));
+
+        assertNull(mCache.get(key));
+    }
+
+    private static class TestExecutor implements CancellableExecutor {
+
+        @Nonnull
+        private final List<Runnable> mExecuting = new ArrayList<>();
+
+        @Override
+        public void execute(@Nonnull Runnable runnable) {
+            mExecuting.add(runnable);
+        }
+
+        @Override
+        public void cancel(@Nonnull Runnable runnable) {
+            mExecuting.remove(runnable);
+        }
+
+        void runAll() {
+            while (!mExecuting.isEmpty()) {
+                mExecuting.remove(0).run();
+            }
+        }
+    }
+}
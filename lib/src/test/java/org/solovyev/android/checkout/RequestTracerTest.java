@@ -0,0 +1,232 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import com.android.vending.billing.IInAppBillingService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.solovyev.android.checkout.ProductTypes.IN_APP;
+import static org.solovyev.android.checkout.ProductTypes.SUBSCRIPTION;
+import static org.solovyev.android.checkout.RequestTracer.Event.BINDER_RETURNED;
+import static org.solovyev.android.checkout.RequestTracer.Event.CACHE_HIT;
+import static org.solovyev.android.checkout.RequestTracer.Event.CANCELLED;
+import static org.solovyev.android.checkout.RequestTracer.Event.DELIVERED;
+import static org.solovyev.android.checkout.RequestTracer.Event.ENQUEUED;
+import static org.solovyev.android.checkout.RequestTracer.Event.STARTED;
+import static org.solovyev.android.checkout.RequestTracer.Event.VERIFICATION_FINISHED;
+import static org.solovyev.android.checkout.RequestTracer.Event.VERIFICATION_STARTED;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RequestTracerTest {
+
+    @Nonnull
+    private Billing mBilling;
+    @Nonnull
+    private TestTracer mTracer;
+
+    @Before
+    public void setUp() throws Exception {
+        mBilling = Tests.newSynchronousBilling();
+        mTracer = new TestTracer();
+        mBilling.setRequestTracer(mTracer);
+    }
+
+    @Test
+    public void testShouldTraceExecutedRequest() throws Exception {
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        when(service.getPurchases(anyInt(), anyString(), eq(IN_APP), anyString())).thenReturn(BillingTest.newPurchasesBundle(0, false));
+        Tests.setService(mBilling, service);
+
+        final Object tag = new Object();
+        final int id = mBilling.newRequestsBuilder().withTag(tag).create().getPurchases(IN_APP, null, mock(RequestListener.class));
+
+        assertEquals(asList(ENQUEUED, STARTED, BINDER_RETURNED, VERIFICATION_STARTED, VERIFICATION_FINISHED, DELIVERED), mTracer.mEvents);
+        for (int i = 0; i < mTracer.mEvents.size(); i++) {
+            assertEquals(id, (int) mTracer.mIds.get(i));
+            assertSame(tag, mTracer.mTags.get(i));
+            assertEquals(RequestType.GET_PURCHASES, mTracer.mTypes.get(i));
+            if (i > 0) {
+                assertTrue(mTracer.mTimes.get(i - 1) <= mTracer.mTimes.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testShouldTraceCacheHit() throws Exception {
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        when(service.getPurchases(anyInt(), anyString(), eq(IN_APP), anyString())).thenReturn(BillingTest.newPurchasesBundle(0, false));
+        Tests.setService(mBilling, service);
+
+        mBilling.getRequests().getPurchases(IN_APP, null, mock(RequestListener.class));
+        mTracer.mEvents.clear();
+        mBilling.getRequests().getPurchases(IN_APP, null, mock(RequestListener.class));
+
+        assertEquals(asList(ENQUEUED, CACHE_HIT, DELIVERED), mTracer.mEvents);
+    }
+
+    @Test
+    public void testShouldTraceCancelledRequest() throws Exception {
+        final Billing.ServiceConnector connector = mock(Billing.ServiceConnector.class);
+        // connection is never established
+        when(connector.connect()).thenReturn(true);
+        mBilling.setConnector(connector);
+
+        final int id = mBilling.getRequests().isBillingSupported(IN_APP, mock(RequestListener.class));
+        mBilling.cancel(id);
+
+        assertEquals(asList(ENQUEUED, CANCELLED), mTracer.mEvents);
+    }
+
+    @Test
+    public void testShouldNotTraceAfterTracerIsRemoved() throws Exception {
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        when(service.isBillingSupported(anyInt(), anyString(), anyString())).thenReturn(ResponseCodes.OK);
+        Tests.setService(mBilling, service);
+        mBilling.setRequestTracer(null);
+
+        mBilling.getRequests().isBillingSupported(IN_APP, mock(RequestListener.class));
+
+        assertTrue(mTracer.mEvents.isEmpty());
+    }
+
+    @Test
+    public void testShouldTraceEnqueuedBeforeRequestCanStart() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        final IInAppBillingService service = mock(IInAppBillingService.class);
+        when(service.isBillingSupported(anyInt(), anyString(), anyString())).thenAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                // the first request keeps the drain running until the second one is enqueued
+                released.await(5, TimeUnit.SECONDS);
+                return ResponseCodes.OK;
+            }
+        });
+        Tests.setService(mBilling, service);
+        final ExecutorService background = Executors.newSingleThreadExecutor();
+        mBilling.setBackground(background);
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AtomicInteger queued = new AtomicInteger();
+        mBilling.setMetrics(new Metrics() {
+            @Override
+            public void onQueued(@Nonnull RequestType type, int queueSize) {
+                if (queued.incrementAndGet() == 2) {
+                    released.countDown();
+                    // the running drain must not be able to deliver the second request yet
+                    try {
+                        delivered.await(200, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+
+            @Override
+            public void onTiming(@Nonnull RequestType type, @Nonnull Timing timing, long nanos) {
+            }
+
+            @Override
+            public void onCache(@Nonnull RequestType type, boolean hit) {
+            }
+
+            @Override
+            public void onConnection(boolean connected, long nanos) {
+            }
+        });
+
+        mBilling.getRequests().isBillingSupported(IN_APP, mock(RequestListener.class));
+        final int id = mBilling.getRequests().isBillingSupported(SUBSCRIPTION, new EmptyRequestListener<Object>() {
+            @Override
+            public void onSuccess(@Nonnull Object result) {
+                delivered.countDown();
+            }
+        });
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        background.shutdown();
+        assertTrue(background.awaitTermination(5, TimeUnit.SECONDS));
+        final List<RequestTracer.Event> events = mTracer.getEvents(id);
+        assertEquals(ENQUEUED, events.get(0));
+        assertEquals(DELIVERED, events.get(events.size() - 1));
+    }
+
+    private static final class TestTracer implements RequestTracer {
+        @Nonnull
+        private final List<Event> mEvents = new ArrayList<>();
+        @Nonnull
+        private final List<Integer> mIds = new ArrayList<>();
+        @Nonnull
+        private final List<RequestType> mTypes = new ArrayList<>();
+        @Nonnull
+        private final List<Object> mTags = new ArrayList<>();
+        @Nonnull
+        private final List<Long> mTimes = new ArrayList<>();
+
+        @Override
+        public synchronized void onEvent(@Nonnull Event event, int requestId, @Nonnull RequestType type, @Nullable Object tag, long nanos) {
+            mEvents.add(event);
+            mIds.add(requestId);
+            mTypes.add(type);
+            mTags.add(tag);
+            mTimes.add(nanos);
+        }
+
+        @Nonnull
+        synchronized List<Event> getEvents(int requestId) {
+            final List<Event> events = new ArrayList<>();
+            for (int i = 0; i < mEvents.size(); i++) {
+                if (mIds.get(i) == requestId) {
+                    events.add(mEvents.get(i));
+                }
+            }
+            return events;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SignatureMemoTest {
+
+    @Test
+    public void testShouldRememberOutcomes() throws Exception {
+        final SignatureMemo memo = new SignatureMemo(10);
+        memo.put(newDigest(1), true);
+        memo.put(newDigest(2), false);
+
+        assertEquals(Boolean.TRUE, memo.get(newDigest(1)));
+        assertEquals(Boolean.FALSE, memo.get(newDigest(2)));
+        assertNull(memo.get(newDigest(3)));
+    }
+
+    @Test
+    public void testShouldEvictLeastRecentlyUsed() throws Exception {
+        final SignatureMemo memo = new SignatureMemo(2);
+        memo.put(newDigest(1), true);
+        memo.put(newDigest(2), true);
+        memo.get(newDigest(1));
+        memo.put(newDigest(3), true);
+
+        assertEquals(2, memo.size());
+        assertEquals(Boolean.TRUE, memo.get(newDigest(1)));
+        assertNull(memo.get(newDigest(2)));
+        assertEquals(Boolean.TRUE, memo.get(newDigest(3)));
+    }
+
+    @Test
+    public void testShouldSaveOnlyVerified() throws Exception {
+        final SignatureMemo memo = new SignatureMemo(10);
+        memo.put(newDigest(1), true);
+        memo.put(newDigest(2), false);
+        memo.put(newDigest(3), true);
+        assertEquals(2, memo.getChanges());
+
+        final String saved = memo.save();
+        assertEquals(0, memo.getChanges());
+
+        final SignatureMemo loaded = new SignatureMemo(10);
+        loaded.put(newDigest(4), false);
+        loaded.load(saved);
+        assertEquals(3, loaded.size());
+        assertEquals(Boolean.TRUE, loaded.get(newDigest(1)));
+        assertNull(loaded.get(newDigest(2)));
+        assertEquals(Boolean.TRUE, loaded.get(newDigest(3)));
+        assertEquals(Boolean.FALSE, loaded.get(newDigest(4)));
+    }
+
+    @Test
+    public void testShouldNotBeChangedByFailedVerification() throws Exception {
+        final SignatureMemo memo = new SignatureMemo(10);
+        memo.put(newDigest(1), false);
+
+        assertEquals(0, memo.getChanges());
+    }
+
+    @Test
+    public void testShouldIgnoreMalformedData() throws Exception {
+        final SignatureMemo memo = new SignatureMemo(10);
+        memo.put(newDigest(1), true);
+
+        memo.load("not a base64 string");
+        memo.load(Base64.encode(new byte[SignatureMemo.DIGEST_LENGTH + 1]));
+
+        assertEquals(1, memo.size());
+    }
+
+    @Nonnull
+    private static byte[] newDigest(int value) {
+        final byte[] digest = new byte[SignatureMemo.DIGEST_LENGTH];
+        Arrays.fill(digest, (byte) value);
+        return digest;
+    }
+}
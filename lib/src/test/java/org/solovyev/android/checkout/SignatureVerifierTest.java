@@ -0,0 +1,247 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SignatureVerifierTest {
+
+    @Nonnull
+    private SignatureVerifier mVerifier;
+
+    @Before
+    public void setUp() throws Exception {
+        mVerifier = new SignatureVerifier(FakeBillingService.getPublicKey());
+    }
+
+    @Test
+    public void testShouldVerifyValidSignature() throws Exception {
+        final String data = "{\"productId\":\"sku\"}";
+
+        assertTrue(mVerifier.verify(data, FakeBillingService.sign(data)));
+    }
+
+    @Test
+    public void testShouldNotVerifyWrongSignature() throws Exception {
+        final String data = "{\"productId\":\"sku\"}";
+        final String signature = FakeBillingService.sign("{\"productId\":\"other\"}");
+
+        assertFalse(mVerifier.verify(data, signature));
+        // verifier should be still usable
+        assertTrue(mVerifier.verify(data, FakeBillingService.sign(data)));
+    }
+
+    @Test
+    public void testShouldNotVerifyInvalidSignature() throws Exception {
+        final String data = "{\"productId\":\"sku\"}";
+
+        assertFalse(mVerifier.verify(data, ""));
+        assertFalse(mVerifier.verify(data, "not a base64 ☺"));
+        assertFalse(mVerifier.verify(data, "AAAA"));
+        assertTrue(mVerifier.verify(data, FakeBillingService.sign(data)));
+    }
+
+    @Test
+    public void testShouldNotVerifyWithEmptyKey() throws Exception {
+        final String data = "{\"productId\":\"sku\"}";
+
+        assertFalse(new SignatureVerifier("").verify(data, FakeBillingService.sign(data)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShouldThrowExceptionForInvalidKey() throws Exception {
+        final String data = "{\"productId\":\"sku\"}";
+
+        new SignatureVerifier("test").verify(data, FakeBillingService.sign(data));
+    }
+
+    @Test
+    public void testShouldRememberOutcomes() throws Exception {
+        final String data = "{\"productId\":\"sku\"}";
+        final String signature = FakeBillingService.sign(data);
+
+        assertTrue(mVerifier.verify(data, signature));
+        assertTrue(mVerifier.verify(data, signature));
+        assertFalse(mVerifier.verify(data + " ", signature));
+        assertFalse(mVerifier.verify(data + " ", signature));
+
+        assertEquals(2, mVerifier.getMemo().size());
+    }
+
+    @Test
+    public void testShouldLoadOutcomesFromCache() throws Exception {
+        final Cache cache = new MapCache();
+        mVerifier.setCache(cache);
+        final String data1 = "{\"productId\":\"sku1\"}";
+        final String data2 = "{\"productId\":\"sku2\"}";
+        assertTrue(mVerifier.verify(data1, FakeBillingService.sign(data1)));
+        mVerifier.save();
+
+        final SignatureVerifier verifier = new SignatureVerifier(FakeBillingService.getPublicKey());
+        verifier.setCache(cache);
+        assertTrue(verifier.verify(data2, FakeBillingService.sign(data2)));
+
+        // first outcome was loaded from the cache
+        assertEquals(2, verifier.getMemo().size());
+    }
+
+    @Test
+    public void testShouldNotLoadOutcomesOfOtherKey() throws Exception {
+        final Cache cache = new MapCache();
+        mVerifier.setCache(cache);
+        final String data = "{\"productId\":\"sku\"}";
+        assertTrue(mVerifier.verify(data, FakeBillingService.sign(data)));
+        mVerifier.save();
+
+        final SignatureVerifier verifier = new SignatureVerifier(Base64.encode(newKeyPair().getPublic().getEncoded()));
+        verifier.setCache(cache);
+
+        assertFalse(verifier.verify(data, FakeBillingService.sign(data)));
+        assertEquals(1, verifier.getMemo().size());
+    }
+
+    @Test
+    public void testShouldSaveAgainIfRemovedFromCache() throws Exception {
+        final Cache cache = new MapCache();
+        mVerifier.setCache(cache);
+        final String data = "{\"productId\":\"sku\"}";
+        assertTrue(mVerifier.verify(data, FakeBillingService.sign(data)));
+        mVerifier.save();
+
+        cache.clear();
+        mVerifier.save();
+
+        final SignatureVerifier verifier = new SignatureVerifier(FakeBillingService.getPublicKey());
+        verifier.setCache(cache);
+        verifier.verify("{}", FakeBillingService.sign("{}"));
+        assertEquals(2, verifier.getMemo().size());
+    }
+
+    @Test
+    public void testShouldKeepOutcomesWhenPurchasesAreInvalidated() throws Exception {
+        final Cache cache = spy(new MapCache());
+        mVerifier.setCache(cache);
+        final String data = "{\"productId\":\"sku\"}";
+        assertTrue(mVerifier.verify(data, FakeBillingService.sign(data)));
+        mVerifier.save();
+
+        cache.removeAll(RequestType.GET_PURCHASES.getCacheKeyType());
+        assertTrue(mVerifier.verify(data, FakeBillingService.sign(data)));
+        mVerifier.save();
+
+        // nothing new is verified => the entry is not rewritten
+        verify(cache).put(any(Cache.Key.class), any(Cache.Entry.class));
+        final SignatureVerifier verifier = new SignatureVerifier(FakeBillingService.getPublicKey());
+        verifier.setCache(cache);
+        verifier.verify("{}", FakeBillingService.sign("{}"));
+        assertEquals(2, verifier.getMemo().size());
+    }
+
+    @Test
+    public void testShouldSaveNewOutcomesInBatches() throws Exception {
+        final Cache cache = spy(new MapCache());
+        mVerifier.setCache(cache);
+        final String data = "{\"productId\":\"sku\"}";
+        assertTrue(mVerifier.verify(data, FakeBillingService.sign(data)));
+        mVerifier.save();
+
+        for (int i = 0; i < SignatureVerifier.SAVE_BATCH_SIZE - 1; i++) {
+            final String newData = "{\"productId\":\"sku_" + i + "\"}";
+            assertTrue(mVerifier.verify(newData, FakeBillingService.sign(newData)));
+            mVerifier.save();
+        }
+        // first save only
+        verify(cache).put(any(Cache.Key.class), any(Cache.Entry.class));
+
+        final String last = "{\"productId\":\"sku_last\"}";
+        assertTrue(mVerifier.verify(last, FakeBillingService.sign(last)));
+        mVerifier.save();
+        verify(cache, times(2)).put(any(Cache.Key.class), any(Cache.Entry.class));
+    }
+
+    @Test
+    public void testShouldVerifyOnSeveralThreads() throws Exception {
+        final List<String> datas = new ArrayList<>();
+        final List<String> signatures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final String data = "{\"productId\":\"sku_" + i + "\"}";
+            datas.add(data);
+            // every third signature is wrong
+            signatures.add(FakeBillingService.sign(i % 3 == 0 ? data + " " : data));
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<Boolean>> results = new ArrayList<>();
+        for (int j = 0; j < 10; j++) {
+            for (int i = 0; i < datas.size(); i++) {
+                final int index = i;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return mVerifier.verify(datas.get(index), signatures.get(index));
+                    }
+                }));
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            final boolean verified = results.get(i).get();
+            if (i % datas.size() % 3 == 0) {
+                assertFalse(verified);
+            } else {
+                assertTrue(verified);
+            }
+        }
+        executor.shutdown();
+    }
+
+    @Nonnull
+    private static KeyPair newKeyPair() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        return generator.generateKeyPair();
+    }
+}
@@ -39,6 +39,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
@@ -63,6 +64,13 @@ public class SkusTest {
         assertNull(mSkus.getSku("4"));
     }
 
+    @Test
+    public void testShouldReturnFirstSkuWithSameId() throws Exception {
+        final Sku first = newSku("2");
+        final Skus skus = new Skus("test", asList(newSku("1"), first, newSku("2")));
+        assertSame(first, skus.getSku("2"));
+    }
+
     @Test
     public void testShouldHaveSku() throws Exception {
         assertTrue(mSkus.hasSku("2"));
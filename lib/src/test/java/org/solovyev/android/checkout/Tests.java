@@ -28,6 +28,8 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.robolectric.RuntimeEnvironment;
 
+import android.app.PendingIntent;
+import android.content.Intent;
 import android.os.Bundle;
 import android.os.RemoteException;
 
@@ -65,6 +67,17 @@ public final class Tests {
         return SameThreadExecutor.INSTANCE;
     }
 
+    @Nonnull
+    static FakeBillingService.BuyIntentFactory newBuyIntentFactory() {
+        return new FakeBillingService.BuyIntentFactory() {
+            @Nonnull
+            @Override
+            public PendingIntent create() {
+                return PendingIntent.getActivity(RuntimeEnvironment.application, 0, new Intent(), 0);
+            }
+        };
+    }
+
     @Nonnull
     static Billing newBilling() {
         return newBilling(true);
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 serso aka se.solovyev
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ * Contact details
+ *
+ * Email: se.solovyev@gmail.com
+ * Site:  http://se.solovyev.org
+ */
+
+package org.solovyev.android.checkout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class VerifierExecutorTest {
+
+    @Nonnull
+    private VerifierExecutor mExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        mExecutor = new VerifierExecutor(2);
+        mExecutor.acquire();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mExecutor.release();
+    }
+
+    @Test
+    public void testShouldStartLazily() throws Exception {
+        assertFalse(mExecutor.isStarted());
+
+        await(mExecutor, 1);
+
+        assertTrue(mExecutor.isStarted());
+    }
+
+    @Test
+    public void testShouldBoundNumberOfThreads() throws Exception {
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        final int tasks = 100;
+        final CountDownLatch latch = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    threads.add(Thread.currentThread());
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(threads.size() <= mExecutor.getThreads());
+        for (Thread thread : threads) {
+            assertTrue(thread.isDaemon());
+        }
+    }
+
+    @Test
+    public void testShouldShutdownWhenReleasedByLastUser() throws Exception {
+        mExecutor.acquire();
+        await(mExecutor, 1);
+
+        mExecutor.release();
+        assertTrue(mExecutor.isStarted());
+
+        mExecutor.release();
+        assertFalse(mExecutor.isStarted());
+
+        // the executor must be restarted on demand
+        await(mExecutor, 1);
+        assertTrue(mExecutor.isStarted());
+        mExecutor.acquire();
+    }
+
+    @Test
+    public void testShouldUseInjectedExecutor() throws Exception {
+        await(mExecutor, 1);
+        final AtomicInteger executed = new AtomicInteger();
+        mExecutor.setExecutor(new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable command) {
+                executed.incrementAndGet();
+                command.run();
+            }
+        });
+        assertFalse(mExecutor.isStarted());
+
+        await(mExecutor, 3);
+
+        assertEquals(3, executed.get());
+        assertFalse(mExecutor.isStarted());
+
+        mExecutor.setExecutor(null);
+        await(mExecutor, 1);
+        assertEquals(3, executed.get());
+        assertTrue(mExecutor.isStarted());
+    }
+
+    @Test
+    public void testShouldNotHoldLockWhileExecuting() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        mExecutor.setExecutor(new Executor() {
+            @Override
+            public void execute(@Nonnull Runnable command) {
+                // another Billing connects and disconnects while the task is being submitted
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mExecutor.acquire();
+                        mExecutor.release();
+                        released.countDown();
+                    }
+                }).start();
+                try {
+                    assertTrue(released.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                command.run();
+            }
+        });
+
+        await(mExecutor, 1);
+    }
+
+    private static void await(@Nonnull Executor executor, int tasks) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+}